@@ -0,0 +1,50 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк построения {@link AccessRuleStorage} из схемы {@link SyntheticSchemaGenerator},
+ * в которой у каждого поля есть директива @auth.
+ * Схема разбирается один раз, измеряется только построение хранилища
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessRuleStorageBuildBenchmark {
+    private static final int FIELDS_PER_TYPE = 10;
+
+    /**
+     * Число полей с директивой @auth
+     */
+    @Param({"100", "1000", "10000"})
+    private int fieldCount;
+
+    private TypeDefinitionRegistry registry;
+
+    @Setup
+    public void setup() {
+        registry = new SchemaParser().parse(SyntheticSchemaGenerator.newGenerator()
+                .typeCount(Math.max(1, fieldCount / FIELDS_PER_TYPE))
+                .fieldsPerType(FIELDS_PER_TYPE)
+                .argumentsPerField(1)
+                .inputObjectCount(fieldCount / 50)
+                .nestingDepth(3)
+                .build()
+                .generate());
+    }
+
+    @Benchmark
+    public AccessRuleStorage build() {
+        return AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+    }
+}
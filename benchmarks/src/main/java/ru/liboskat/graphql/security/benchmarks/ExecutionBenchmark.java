@@ -0,0 +1,280 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.liboskat.graphql.security.execution.SecurityContext;
+import ru.liboskat.graphql.security.execution.SecurityInstrumentation;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
+
+/**
+ * Бенчмарк выполнения запросов GraphQL без инструментации и с {@link SecurityInstrumentation}.
+ * Разница между результатами с instrumented = false и true - стоимость проверок доступа на запрос.
+ * Разобранные и проверенные документы запросов кешируются, чтобы измерялось только выполнение
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionBenchmark {
+    private static final int WIDE_FIELD_COUNT = 50;
+    private static final int DEPTH = 30;
+    private static final int MUTATION_INPUT_COUNT = 100;
+
+    /**
+     * Вид запроса
+     */
+    public enum Shape {
+        /**
+         * Один объект с {@value WIDE_FIELD_COUNT} полями
+         */
+        WIDE,
+        /**
+         * Вложенные объекты глубиной {@value DEPTH}
+         */
+        DEEP,
+        LIST_1K,
+        LIST_10K,
+        LIST_100K,
+        /**
+         * Запрос, составленный из фрагментов, в том числе вложенных
+         */
+        FRAGMENTS,
+        /**
+         * Мутация со списком из {@value MUTATION_INPUT_COUNT} входных объектов
+         */
+        MUTATION
+    }
+
+    @Param
+    private Shape shape;
+
+    @Param({"false", "true"})
+    private boolean instrumented;
+
+    private GraphQL graphQL;
+    private ExecutionInput executionInput;
+    /**
+     * Данные создаются один раз, чтобы не измерять их создание
+     */
+    private final Map<String, Object> wide = wideObject();
+    private final Map<String, Object> deep = node(DEPTH);
+    private final Map<Integer, List<Map<String, Object>>> itemLists = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setup() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(schema());
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder
+                        .dataFetcher("wide", env -> wide)
+                        .dataFetcher("deep", env -> deep)
+                        .dataFetcher("items", env -> itemLists.computeIfAbsent(env.getArgument("size"),
+                                ExecutionBenchmark::items)))
+                .type("Mutation", builder -> builder
+                        .dataFetcher("update", env -> item(0)))
+                .build());
+        GraphQL.Builder builder = GraphQL.newGraphQL(schema)
+                .preparsedDocumentProvider(new CachingDocumentProvider());
+        if (instrumented) {
+            builder.instrumentation(SecurityInstrumentation.newSecurityInstrumentation(
+                    AccessRuleStorage.newAccessRuleStorage()
+                            .fromTypeDefinitionRegistry(registry)
+                            .build())
+                    .build());
+        }
+        graphQL = builder.build();
+        executionInput = executionInput();
+        //проверяем, что запрос выполняется без ошибок
+        ExecutionResult result = graphQL.execute(executionInput);
+        if (!result.getErrors().isEmpty()) {
+            throw new IllegalStateException(result.getErrors().toString());
+        }
+    }
+
+    @Benchmark
+    public ExecutionResult execute() {
+        return graphQL.execute(executionInput);
+    }
+
+    private ExecutionInput executionInput() {
+        SecurityContext context = SecurityContext.newSecurityContext()
+                .field("role", "ADMIN")
+                .field("level", 5L)
+                .field("department", "sales")
+                .build();
+        ExecutionInput.Builder input = ExecutionInput.newExecutionInput().context(context);
+        switch (shape) {
+            case WIDE:
+                return input.query(wideQuery()).build();
+            case DEEP:
+                return input.query(deepQuery()).build();
+            case LIST_1K:
+                return input.query(listQuery(1_000)).build();
+            case LIST_10K:
+                return input.query(listQuery(10_000)).build();
+            case LIST_100K:
+                return input.query(listQuery(100_000)).build();
+            case FRAGMENTS:
+                return input.query(fragmentQuery()).build();
+            default:
+                return input.query("mutation update($input: UpdateInput) { update(input: $input) { id name } }")
+                        .variables(Collections.singletonMap("input", mutationInput()))
+                        .build();
+        }
+    }
+
+    private static String schema() {
+        StringBuilder sdl = new StringBuilder("directive @auth(rw : String, r : String, w : String) on SCHEMA | " +
+                "OBJECT | FIELD_DEFINITION | ARGUMENT_DEFINITION | INPUT_OBJECT | INPUT_FIELD_DEFINITION\n" +
+                "schema @auth(rw: \"role IN ('ADMIN', 'USER')\") { query: Query mutation: Mutation }\n" +
+                "type Query {\n" +
+                "  wide: Wide @auth(r: \"role = 'ADMIN' | level > {3}\")\n" +
+                "  deep: Node\n" +
+                "  items(size: Int @auth(r: \"role = 'ADMIN' | $size < {1000}\")): [Item]\n" +
+                "}\n" +
+                "type Mutation {\n" +
+                "  update(input: UpdateInput): Item @auth(w: \"role = 'ADMIN'\")\n" +
+                "}\n" +
+                "type Wide @auth(r: \"department = 'sales' | role = 'ADMIN'\") {\n");
+        for (int i = 0; i < WIDE_FIELD_COUNT; i++) {
+            sdl.append("  f").append(i).append(": String @auth(r: \"level >= {").append(i % 5)
+                    .append("} | role = 'ADMIN'\")\n");
+        }
+        sdl.append("}\n" +
+                "type Node @auth(r: \"level > {0}\") {\n" +
+                "  value: String @auth(r: \"role = 'ADMIN' & department = 'sales'\")\n" +
+                "  child: Node\n" +
+                "}\n" +
+                "type Item @auth(rw: \"role IN ('ADMIN', 'USER')\") {\n" +
+                "  id: ID\n" +
+                "  name: String @auth(rw: \"role = 'ADMIN' | department = 'sales'\")\n" +
+                "  owner: Owner\n" +
+                "}\n" +
+                "type Owner @auth(r: \"role = 'ADMIN'\") {\n" +
+                "  name: String\n" +
+                "  department: String @auth(r: \"department = 'sales'\")\n" +
+                "}\n" +
+                "input UpdateInput @auth(w: \"role = 'ADMIN'\") {\n" +
+                "  id: ID @auth(w: \"level > {1}\")\n" +
+                "  name: String\n" +
+                "  attributes: [AttributeInput]\n" +
+                "}\n" +
+                "input AttributeInput @auth(w: \"department = 'sales'\") {\n" +
+                "  key: String @auth(w: \"role = 'ADMIN'\")\n" +
+                "  value: String\n" +
+                "}\n");
+        return sdl.toString();
+    }
+
+    private static String wideQuery() {
+        StringBuilder query = new StringBuilder("{ wide { ");
+        for (int i = 0; i < WIDE_FIELD_COUNT; i++) {
+            query.append("f").append(i).append(" ");
+        }
+        return query.append("} }").toString();
+    }
+
+    private static String deepQuery() {
+        StringBuilder query = new StringBuilder("{ deep { ");
+        for (int i = 0; i < DEPTH; i++) {
+            query.append("value child { ");
+        }
+        query.append("value ");
+        for (int i = 0; i <= DEPTH; i++) {
+            query.append("} ");
+        }
+        return query.append("}").toString();
+    }
+
+    private static String listQuery(int size) {
+        return "{ items(size: " + size + ") { id name owner { name department } } }";
+    }
+
+    private static String fragmentQuery() {
+        return "query { wide { ...wideFields } items(size: 100) { ...itemFields } deep { ...nodeFields } }\n" +
+                "fragment wideFields on Wide { f0 f1 f2 f3 f4 ...moreWideFields }\n" +
+                "fragment moreWideFields on Wide { f5 f6 f7 f8 f9 }\n" +
+                "fragment itemFields on Item { id ...itemName owner { ...ownerFields } }\n" +
+                "fragment itemName on Item { name }\n" +
+                "fragment ownerFields on Owner { name department }\n" +
+                "fragment nodeFields on Node { value child { value child { value } } }";
+    }
+
+    private static Map<String, Object> mutationInput() {
+        List<Map<String, Object>> attributes = new ArrayList<>();
+        for (int i = 0; i < MUTATION_INPUT_COUNT; i++) {
+            Map<String, Object> attribute = new HashMap<>();
+            attribute.put("key", "key" + i);
+            attribute.put("value", "value" + i);
+            attributes.add(attribute);
+        }
+        Map<String, Object> input = new HashMap<>();
+        input.put("id", "1");
+        input.put("name", "name");
+        input.put("attributes", attributes);
+        return input;
+    }
+
+    private static Map<String, Object> wideObject() {
+        Map<String, Object> wide = new HashMap<>();
+        for (int i = 0; i < WIDE_FIELD_COUNT; i++) {
+            wide.put("f" + i, "value" + i);
+        }
+        return wide;
+    }
+
+    private static Map<String, Object> node(int depth) {
+        Map<String, Object> node = new HashMap<>();
+        node.put("value", "value" + depth);
+        node.put("child", depth > 0 ? node(depth - 1) : null);
+        return node;
+    }
+
+    private static List<Map<String, Object>> items(int size) {
+        List<Map<String, Object>> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(item(i));
+        }
+        return items;
+    }
+
+    private static Map<String, Object> item(int index) {
+        Map<String, Object> owner = new HashMap<>();
+        owner.put("name", "owner" + index % 10);
+        owner.put("department", "sales");
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", String.valueOf(index));
+        item.put("name", "item" + index);
+        item.put("owner", owner);
+        return item;
+    }
+
+    /**
+     * Кеширует разобранные и проверенные документы запросов
+     */
+    private static class CachingDocumentProvider implements PreparsedDocumentProvider {
+        private final Map<String, PreparsedDocumentEntry> documents = new ConcurrentHashMap<>();
+
+        @Override
+        public PreparsedDocumentEntry getDocument(ExecutionInput executionInput,
+                                                  Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidate) {
+            return documents.computeIfAbsent(executionInput.getQuery(), query -> parseAndValidate.apply(executionInput));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.liboskat.graphql.security.expression.parsing.SimpleExpressionParser;
+import ru.liboskat.graphql.security.expression.transforming.QuineMcCluskeyExpressionSimplifier;
+import ru.liboskat.graphql.security.expression.transforming.ShuntingYardExpressionConverter;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк этапов компиляции правила: разбора строки, преобразования в обратную польскую запись и минимизации.
+ * Выражение - дизъюнкция пар сравнений в скобках, сравнения повторяются по кругу среди заданного числа
+ * различных сравнений. Минимизация не выполняется для выражений с более чем 10 различными сравнениями
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionPipelineBenchmark {
+    /**
+     * Число сравнений в выражении
+     */
+    @Param({"4", "12", "32"})
+    private int comparisonCount;
+
+    /**
+     * Число различных сравнений в выражении
+     */
+    @Param({"2", "6", "10", "12"})
+    private int variableCount;
+
+    private SimpleExpressionParser parser;
+    private ShuntingYardExpressionConverter converter;
+    private QuineMcCluskeyExpressionSimplifier simplifier;
+    private String rule;
+    private TokenExpression infixExpression;
+    private TokenExpression rpnExpression;
+
+    @Setup
+    public void setup() {
+        parser = new SimpleExpressionParser();
+        converter = new ShuntingYardExpressionConverter();
+        simplifier = new QuineMcCluskeyExpressionSimplifier();
+        rule = generateRule(comparisonCount, variableCount);
+        infixExpression = parser.parse(rule);
+        rpnExpression = converter.convertToRpn(infixExpression);
+    }
+
+    /**
+     * @param comparisonCount число сравнений
+     * @param variableCount   число различных сравнений
+     * @return правило вида (v0 = 'v0' & !(v1 = 'v1')) | (v2 = 'v2' & ...) ...
+     */
+    static String generateRule(int comparisonCount, int variableCount) {
+        StringBuilder rule = new StringBuilder();
+        for (int i = 0; i < comparisonCount; i++) {
+            if (i % 2 == 0) {
+                rule.append(i > 0 ? " | (" : "(");
+            } else {
+                rule.append(" & ");
+            }
+            String name = "v" + i % variableCount;
+            String comparison = name + " = '" + name + "'";
+            rule.append(i % 4 == 3 ? "!(" + comparison + ")" : comparison);
+            if (i % 2 == 1 || i == comparisonCount - 1) {
+                rule.append(")");
+            }
+        }
+        return rule.toString();
+    }
+
+    @Benchmark
+    public TokenExpression parse() {
+        return parser.parse(rule);
+    }
+
+    @Benchmark
+    public TokenExpression convertToRpn() {
+        return converter.convertToRpn(infixExpression);
+    }
+
+    @Benchmark
+    public TokenExpression simplify() {
+        return simplifier.simplify(rpnExpression);
+    }
+}
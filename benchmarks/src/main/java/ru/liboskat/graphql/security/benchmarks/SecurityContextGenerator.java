@@ -0,0 +1,59 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import ru.liboskat.graphql.security.execution.SecurityContext;
+import ru.liboskat.graphql.security.storage.ContextKeyLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static ru.liboskat.graphql.security.benchmarks.SyntheticSchemaGenerator.*;
+
+/**
+ * Генератор контекстов безопасности с переменными, используемыми в правилах {@link SyntheticSchemaGenerator}:
+ * role, department, managedDepartment, level, registeredAt и userId.
+ * При одинаковом seed контексты одинаковы
+ */
+public final class SecurityContextGenerator {
+    private final Random random;
+    private final ContextKeyLayout layout;
+
+    /**
+     * @param seed   начальное значение генератора случайных чисел
+     * @param layout раскладка переменных контекста хранилища, может быть null
+     */
+    public SecurityContextGenerator(long seed, ContextKeyLayout layout) {
+        this.random = new Random(seed);
+        this.layout = layout;
+    }
+
+    /**
+     * @return следующий случайный контекст
+     */
+    public SecurityContext next() {
+        SecurityContext.Builder builder = layout != null ?
+                SecurityContext.newSecurityContext(layout) : SecurityContext.newSecurityContext();
+        String department = DEPARTMENTS[random.nextInt(DEPARTMENTS.length)];
+        return builder
+                .field("role", ROLES[random.nextInt(ROLES.length)])
+                .field("department", department)
+                .field("managedDepartment", random.nextBoolean() ?
+                        department : DEPARTMENTS[random.nextInt(DEPARTMENTS.length)])
+                .field("level", (long) random.nextInt(MAX_LEVEL))
+                .field("registeredAt", FIRST_REGISTRATION_DATE.plusDays(random.nextInt(REGISTRATION_DAYS)))
+                .field("userId", "user" + random.nextInt(1000))
+                .build();
+    }
+
+    /**
+     * @param count число контекстов
+     * @return список случайных контекстов
+     */
+    public List<SecurityContext> next(int count) {
+        List<SecurityContext> contexts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contexts.add(next());
+        }
+        return contexts;
+    }
+}
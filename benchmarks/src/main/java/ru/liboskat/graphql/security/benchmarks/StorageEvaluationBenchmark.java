@@ -0,0 +1,76 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import graphql.schema.idl.SchemaParser;
+import org.openjdk.jmh.annotations.*;
+import ru.liboskat.graphql.security.execution.SecurityContext;
+import ru.liboskat.graphql.security.execution.TokenExpressionSolverImpl;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк проверки всех правил чтения полей хранилища, построенного по схеме {@link SyntheticSchemaGenerator},
+ * для контекстов {@link SecurityContextGenerator}. Одна операция - проверка всех правил для следующего контекста
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageEvaluationBenchmark {
+    private static final int CONTEXT_COUNT = 1024;
+    private static final int FIELDS_PER_TYPE = 10;
+
+    @Param({"100", "1000"})
+    private int fieldCount;
+
+    @Param({"1", "3", "6"})
+    private int comparisonsPerRule;
+
+    private TokenExpressionSolverImpl solver;
+    private List<TokenExpression> expressions;
+    private List<SecurityContext> contexts;
+    private Map<String, String> arguments;
+    private int next;
+
+    @Setup
+    public void setup() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(new SchemaParser().parse(SyntheticSchemaGenerator.newGenerator()
+                        .typeCount(Math.max(1, fieldCount / FIELDS_PER_TYPE))
+                        .fieldsPerType(FIELDS_PER_TYPE)
+                        .argumentsPerField(1)
+                        .comparisonsPerRule(comparisonsPerRule)
+                        .build()
+                        .generate()))
+                .build();
+        expressions = new ArrayList<>();
+        for (int type = 0; type < Math.max(1, fieldCount / FIELDS_PER_TYPE); type++) {
+            for (int field = 0; field < FIELDS_PER_TYPE; field++) {
+                storage.getFieldRule("Type" + type, "field" + field)
+                        .ifPresent(rule -> expressions.add(rule.getReadRule()));
+            }
+        }
+        solver = new TokenExpressionSolverImpl();
+        contexts = new SecurityContextGenerator(0, storage.getContextKeyLayout()).next(CONTEXT_COUNT);
+        arguments = Collections.singletonMap("arg0", "user1");
+    }
+
+    @Benchmark
+    public int solveAllRules() {
+        SecurityContext context = contexts.get(next++ & (CONTEXT_COUNT - 1));
+        int allowed = 0;
+        for (TokenExpression expression : expressions) {
+            if (solver.solve(expression, context, arguments)) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,353 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Генератор схемы GraphQL (SDL) с директивами @auth для нагрузочного тестирования.
+ * Типы образуют цепочки вложенности заданной глубины, каждая цепочка доступна из поля Query,
+ * входные объекты образуют такие же цепочки и передаются в мутации.
+ * Правила составляются из сравнений заданных видов над переменными контекста, которые создает
+ * {@link SecurityContextGenerator}. При одинаковых параметрах и seed схема одинакова
+ */
+public final class SyntheticSchemaGenerator {
+    static final String[] ROLES = {"ADMIN", "MANAGER", "USER", "GUEST"};
+    static final String[] DEPARTMENTS = {"sales", "support", "engineering", "finance", "legal"};
+    static final int MAX_LEVEL = 10;
+    static final LocalDate FIRST_REGISTRATION_DATE = LocalDate.of(2015, 1, 1);
+    static final int REGISTRATION_DAYS = 3650;
+
+    /**
+     * Вид сравнения в правиле
+     */
+    public enum RuleKind {
+        /**
+         * role = 'USER'
+         */
+        EQUALITY,
+        /**
+         * role IN ('ADMIN', 'MANAGER')
+         */
+        IN_LIST,
+        /**
+         * level > {3}
+         */
+        NUMBER,
+        /**
+         * registeredAt < {2020-01-01}
+         */
+        DATE,
+        /**
+         * $arg0 = userId, только для полей и аргументов с аргументами, иначе заменяется на {@link #EQUALITY}
+         */
+        ARGUMENT,
+        /**
+         * department = managedDepartment
+         */
+        CONTEXT
+    }
+
+    private final Random random;
+    private final int typeCount;
+    private final int fieldsPerType;
+    private final int argumentsPerField;
+    private final int inputObjectCount;
+    private final int inputFieldsPerObject;
+    private final int nestingDepth;
+    private final double authProbability;
+    private final int comparisonsPerRule;
+    private final RuleKind[] ruleKinds;
+
+    private SyntheticSchemaGenerator(Builder builder) {
+        this.random = new Random(builder.seed);
+        this.typeCount = builder.typeCount;
+        this.fieldsPerType = builder.fieldsPerType;
+        this.argumentsPerField = builder.argumentsPerField;
+        this.inputObjectCount = builder.inputObjectCount;
+        this.inputFieldsPerObject = builder.inputFieldsPerObject;
+        this.nestingDepth = builder.nestingDepth;
+        this.authProbability = builder.authProbability;
+        this.comparisonsPerRule = builder.comparisonsPerRule;
+        this.ruleKinds = builder.ruleKinds.toArray(new RuleKind[0]);
+    }
+
+    /**
+     * @return {@link Builder} этого класса
+     */
+    public static Builder newGenerator() {
+        return new Builder();
+    }
+
+    /**
+     * @return сгенерированная схема в SDL
+     */
+    public String generate() {
+        StringBuilder sdl = new StringBuilder("directive @auth(rw : String, r : String, w : String) on SCHEMA | " +
+                "OBJECT | FIELD_DEFINITION | ARGUMENT_DEFINITION | INPUT_OBJECT | INPUT_FIELD_DEFINITION\n");
+        sdl.append("schema").append(auth("rw", false)).append(" { query: Query")
+                .append(inputObjectCount > 0 ? " mutation: Mutation" : "").append(" }\n");
+        appendQuery(sdl);
+        appendMutation(sdl);
+        for (int type = 0; type < typeCount; type++) {
+            appendType(sdl, type);
+        }
+        for (int input = 0; input < inputObjectCount; input++) {
+            appendInputObject(sdl, input);
+        }
+        return sdl.toString();
+    }
+
+    private void appendQuery(StringBuilder sdl) {
+        sdl.append("type Query {\n");
+        for (int type = 0; type < typeCount; type += nestingDepth) {
+            sdl.append("  type").append(type).append(arguments(true)).append(": Type").append(type)
+                    .append(auth("r", argumentsPerField > 0)).append("\n");
+        }
+        sdl.append("}\n");
+    }
+
+    private void appendMutation(StringBuilder sdl) {
+        if (inputObjectCount == 0) {
+            return;
+        }
+        sdl.append("type Mutation {\n");
+        for (int input = 0; input < inputObjectCount; input += nestingDepth) {
+            sdl.append("  update").append(input).append("(input: Input").append(input).append("): ")
+                    .append("Type0").append(auth("w", false)).append("\n");
+        }
+        sdl.append("}\n");
+    }
+
+    private void appendType(StringBuilder sdl, int type) {
+        sdl.append("type Type").append(type).append(auth("rw", false)).append(" {\n");
+        for (int field = 0; field < fieldsPerType; field++) {
+            sdl.append("  field").append(field).append(arguments(true)).append(": String")
+                    .append(auth("rw", argumentsPerField > 0)).append("\n");
+        }
+        //следующий тип цепочки вложенности
+        if ((type + 1) % nestingDepth != 0 && type + 1 < typeCount) {
+            sdl.append("  next: Type").append(type + 1).append(auth("rw", false)).append("\n");
+        }
+        sdl.append("}\n");
+    }
+
+    private void appendInputObject(StringBuilder sdl, int input) {
+        sdl.append("input Input").append(input).append(auth("w", false)).append(" {\n");
+        for (int field = 0; field < inputFieldsPerObject; field++) {
+            sdl.append("  field").append(field).append(": String").append(auth("w", false)).append("\n");
+        }
+        if ((input + 1) % nestingDepth != 0 && input + 1 < inputObjectCount) {
+            sdl.append("  next: Input").append(input + 1).append(auth("w", false)).append("\n");
+        }
+        sdl.append("}\n");
+    }
+
+    /**
+     * @param withRules добавлять ли директивы @auth к аргументам
+     * @return определения аргументов поля или пустая строка, если аргументов нет
+     */
+    private String arguments(boolean withRules) {
+        if (argumentsPerField == 0) {
+            return "";
+        }
+        StringJoiner arguments = new StringJoiner(", ", "(", ")");
+        for (int argument = 0; argument < argumentsPerField; argument++) {
+            arguments.add("arg" + argument + ": String" + (withRules ? auth("r", true) : ""));
+        }
+        return arguments.toString();
+    }
+
+    /**
+     * @param type          тип правила: rw, r или w
+     * @param withArguments можно ли ссылаться на аргументы поля
+     * @return директива @auth со случайным правилом или пустая строка с вероятностью 1 - authProbability
+     */
+    private String auth(String type, boolean withArguments) {
+        if (random.nextDouble() >= authProbability) {
+            return "";
+        }
+        StringBuilder rule = new StringBuilder();
+        for (int i = 0; i < comparisonsPerRule; i++) {
+            if (i > 0) {
+                rule.append(random.nextBoolean() ? " & " : " | ");
+            }
+            rule.append(comparison(ruleKinds[random.nextInt(ruleKinds.length)], withArguments));
+        }
+        return " @auth(" + type + ": \"" + rule + "\")";
+    }
+
+    private String comparison(RuleKind kind, boolean withArguments) {
+        switch (kind) {
+            case IN_LIST:
+                StringJoiner roles = new StringJoiner(", ", "role IN (", ")");
+                int count = 1 + random.nextInt(ROLES.length - 1);
+                for (int i = 0; i < count; i++) {
+                    roles.add("'" + ROLES[(i + random.nextInt(ROLES.length)) % ROLES.length] + "'");
+                }
+                return roles.toString();
+            case NUMBER:
+                return "level > {" + random.nextInt(MAX_LEVEL) + "}";
+            case DATE:
+                return "registeredAt < {" + FIRST_REGISTRATION_DATE.plusDays(random.nextInt(REGISTRATION_DAYS)) + "}";
+            case ARGUMENT:
+                if (withArguments) {
+                    return "$arg" + random.nextInt(argumentsPerField) + " = userId";
+                }
+                return comparison(RuleKind.EQUALITY, false);
+            case CONTEXT:
+                return "department = managedDepartment";
+            default:
+                return "department = '" + DEPARTMENTS[random.nextInt(DEPARTMENTS.length)] + "'";
+        }
+    }
+
+    /**
+     * Класс, используемый для создания {@link SyntheticSchemaGenerator}
+     */
+    public static class Builder {
+        private long seed;
+        private int typeCount;
+        private int fieldsPerType;
+        private int argumentsPerField;
+        private int inputObjectCount;
+        private int inputFieldsPerObject;
+        private int nestingDepth;
+        private double authProbability;
+        private int comparisonsPerRule;
+        private Set<RuleKind> ruleKinds;
+
+        private Builder() {
+            this.typeCount = 10;
+            this.fieldsPerType = 10;
+            this.inputFieldsPerObject = 5;
+            this.nestingDepth = 1;
+            this.authProbability = 1;
+            this.comparisonsPerRule = 2;
+            this.ruleKinds = EnumSet.allOf(RuleKind.class);
+        }
+
+        /**
+         * @param seed начальное значение генератора случайных чисел, по умолчанию 0
+         * @return текущий {@link Builder}
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param typeCount число типов, по умолчанию 10
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число не положительное
+         */
+        public Builder typeCount(int typeCount) {
+            if (typeCount <= 0) {
+                throw new IllegalArgumentException("Type count must be positive");
+            }
+            this.typeCount = typeCount;
+            return this;
+        }
+
+        /**
+         * @param fieldsPerType число полей в типе, по умолчанию 10
+         * @return текущий {@link Builder}
+         */
+        public Builder fieldsPerType(int fieldsPerType) {
+            this.fieldsPerType = requireNotNegative(fieldsPerType, "Fields per type");
+            return this;
+        }
+
+        /**
+         * @param argumentsPerField число аргументов поля, по умолчанию 0
+         * @return текущий {@link Builder}
+         */
+        public Builder argumentsPerField(int argumentsPerField) {
+            this.argumentsPerField = requireNotNegative(argumentsPerField, "Arguments per field");
+            return this;
+        }
+
+        /**
+         * @param inputObjectCount число входных объектов, по умолчанию 0
+         * @return текущий {@link Builder}
+         */
+        public Builder inputObjectCount(int inputObjectCount) {
+            this.inputObjectCount = requireNotNegative(inputObjectCount, "Input object count");
+            return this;
+        }
+
+        /**
+         * @param inputFieldsPerObject число полей входного объекта, по умолчанию 5
+         * @return текущий {@link Builder}
+         */
+        public Builder inputFieldsPerObject(int inputFieldsPerObject) {
+            this.inputFieldsPerObject = requireNotNegative(inputFieldsPerObject, "Input fields per object");
+            return this;
+        }
+
+        /**
+         * @param nestingDepth длина цепочек вложенных типов и входных объектов, по умолчанию 1
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если длина не положительная
+         */
+        public Builder nestingDepth(int nestingDepth) {
+            if (nestingDepth <= 0) {
+                throw new IllegalArgumentException("Nesting depth must be positive");
+            }
+            this.nestingDepth = nestingDepth;
+            return this;
+        }
+
+        /**
+         * @param authProbability доля определений с директивой @auth от 0 до 1, по умолчанию 1
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если доля вне [0, 1]
+         */
+        public Builder authProbability(double authProbability) {
+            if (authProbability < 0 || authProbability > 1) {
+                throw new IllegalArgumentException("Auth probability must be in [0, 1]");
+            }
+            this.authProbability = authProbability;
+            return this;
+        }
+
+        /**
+         * @param comparisonsPerRule число сравнений в правиле, по умолчанию 2
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число не положительное
+         */
+        public Builder comparisonsPerRule(int comparisonsPerRule) {
+            if (comparisonsPerRule <= 0) {
+                throw new IllegalArgumentException("Comparisons per rule must be positive");
+            }
+            this.comparisonsPerRule = comparisonsPerRule;
+            return this;
+        }
+
+        /**
+         * @param ruleKinds виды сравнений в правилах, по умолчанию все
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если видов нет
+         */
+        public Builder ruleKinds(RuleKind... ruleKinds) {
+            if (ruleKinds == null || ruleKinds.length == 0) {
+                throw new IllegalArgumentException("Rule kinds can't be empty");
+            }
+            this.ruleKinds = EnumSet.copyOf(Arrays.asList(ruleKinds));
+            return this;
+        }
+
+        private static int requireNotNegative(int value, String name) {
+            if (value < 0) {
+                throw new IllegalArgumentException(name + " can't be negative");
+            }
+            return value;
+        }
+
+        /**
+         * @return сконструированный {@link SyntheticSchemaGenerator}
+         */
+        public SyntheticSchemaGenerator build() {
+            return new SyntheticSchemaGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.liboskat.graphql.security.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.liboskat.graphql.security.execution.SecurityContext;
+import ru.liboskat.graphql.security.execution.TokenExpressionSolverImpl;
+import ru.liboskat.graphql.security.expression.parsing.SimpleExpressionParser;
+import ru.liboskat.graphql.security.expression.transforming.ShuntingYardExpressionConverter;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк {@link TokenExpressionSolverImpl#solve(TokenExpression, SecurityContext, Map)}.
+ * Выражение - конъюнкция сравнений одного вида, получаемая разбором и преобразованием в обратную польскую
+ * запись без минимизации. При результате HIT все сравнения истинны, при MISS все ложны
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenExpressionSolverBenchmark {
+    /**
+     * Вид операндов сравнений
+     */
+    public enum OperandKind {
+        /**
+         * Переменная контекста и строка
+         */
+        STRING,
+        /**
+         * Переменная контекста и целое число
+         */
+        NUMBER,
+        /**
+         * Переменная контекста и дата
+         */
+        TEMPORAL,
+        /**
+         * Аргумент поля и строка
+         */
+        ARGUMENT,
+        /**
+         * Две переменные контекста
+         */
+        CONTEXT
+    }
+
+    /**
+     * Результат решения выражения
+     */
+    public enum Outcome {
+        HIT,
+        MISS
+    }
+
+    @Param({"1", "5", "10", "30"})
+    private int comparisonCount;
+
+    @Param
+    private OperandKind operandKind;
+
+    @Param
+    private Outcome outcome;
+
+    private TokenExpressionSolverImpl solver;
+    private TokenExpression expression;
+    private SecurityContext context;
+    private Map<String, String> arguments;
+
+    @Setup
+    public void setup() {
+        solver = new TokenExpressionSolverImpl();
+        StringBuilder rule = new StringBuilder();
+        SecurityContext.Builder contextBuilder = SecurityContext.newSecurityContext();
+        arguments = new HashMap<>();
+        boolean hit = outcome == Outcome.HIT;
+        for (int i = 0; i < comparisonCount; i++) {
+            if (i > 0) {
+                rule.append(" & ");
+            }
+            rule.append(comparison(i, contextBuilder, hit));
+        }
+        expression = new ShuntingYardExpressionConverter()
+                .convertToRpn(new SimpleExpressionParser().parse(rule.toString()));
+        context = contextBuilder.build();
+    }
+
+    /**
+     * Возвращает сравнение и добавляет значения его операндов в контекст или аргументы
+     *
+     * @param index          номер сравнения
+     * @param contextBuilder контекст
+     * @param hit            должно ли сравнение быть истинным
+     * @return строковое сравнение
+     */
+    private String comparison(int index, SecurityContext.Builder contextBuilder, boolean hit) {
+        String name = "v" + index;
+        switch (operandKind) {
+            case STRING:
+                contextBuilder.field(name, hit ? name : name + "!");
+                return String.format("%s = '%s'", name, name);
+            case NUMBER:
+                contextBuilder.field(name, hit ? (long) index : index + 1L);
+                return String.format("%s = {%d}", name, index);
+            case TEMPORAL:
+                LocalDate date = LocalDate.of(2020, 1, 1).plusDays(index);
+                contextBuilder.field(name, hit ? date : date.plusDays(1));
+                return String.format("%s = {%s}", name, date);
+            case ARGUMENT:
+                arguments.put(name, hit ? name : name + "!");
+                return String.format("$%s = '%s'", name, name);
+            default:
+                contextBuilder.field(name, name);
+                contextBuilder.field("other" + index, hit ? name : name + "!");
+                return String.format("%s = other%d", name, index);
+        }
+    }
+
+    @Benchmark
+    public boolean solve() {
+        return solver.solve(expression, context, arguments);
+    }
+}
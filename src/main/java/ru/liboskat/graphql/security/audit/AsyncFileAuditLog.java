@@ -0,0 +1,472 @@
+package ru.liboskat.graphql.security.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liboskat.graphql.security.execution.DecisionListener;
+import ru.liboskat.graphql.security.execution.SecurityInstrumentation.OperationType;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный журнал аудита решений о доступе в локальный файл.
+ * Поток выполнения запроса только помещает запись решения в ограниченный неблокирующий кольцевой буфер,
+ * фоновый поток забирает записи пачками и дописывает их в файл. Если буфер заполнен, запись отбрасывается
+ * и учитывается в {@link #getDroppedCount()}. Решения выбираются для записи с заданными долями отдельно
+ * для запретов и разрешений. Когда файл превышает заданный размер, он переименовывается в file.1,
+ * предыдущие файлы сдвигаются (file.1 -> file.2, ...), самые старые удаляются.
+ * Строка журнала: момент решения, отпечаток пользователя, название операции, тип операции, ALLOW или DENY
+ * и объект применения правила через табуляцию, отсутствующие отпечаток и название записываются как "-"
+ */
+public class AsyncFileAuditLog implements DecisionListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileAuditLog.class);
+
+    private final Path file;
+    private final DecisionRingBuffer<AuditRecord> buffer;
+    private final int batchSize;
+    private final double denialSampleRate;
+    private final double grantSampleRate;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final long idleWaitNanos;
+    private final LongAdder dropped;
+    private final LongAdder written;
+    private final LongAdder failed;
+    private final Thread writerThread;
+    private final StringBuilder line;
+    private volatile boolean running;
+    /**
+     * Завершил ли фоновый поток работу. После этого решения, попавшие в буфер, отбрасываются
+     */
+    private volatile boolean closed;
+    /**
+     * Поток текущего файла и его размер, используются только фоновым потоком
+     */
+    private OutputStream out;
+    private long fileSize;
+    /**
+     * Число решений, записанных в поток, но еще не сброшенных в файл
+     */
+    private int pendingCount;
+
+    private AsyncFileAuditLog(Path file, int bufferCapacity, int batchSize, double denialSampleRate,
+                              double grantSampleRate, long maxFileSize, int maxFiles, Duration idleWait) {
+        this.file = file;
+        this.buffer = new DecisionRingBuffer<>(bufferCapacity);
+        this.batchSize = batchSize;
+        this.denialSampleRate = denialSampleRate;
+        this.grantSampleRate = grantSampleRate;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.idleWaitNanos = idleWait.toNanos();
+        this.dropped = new LongAdder();
+        this.written = new LongAdder();
+        this.failed = new LongAdder();
+        this.line = new StringBuilder();
+        this.writerThread = new Thread(this::run, "graphql-security-audit-log");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * Помещает решение в буфер, если оно выбрано для записи. Не блокирует
+     *
+     * @param target        объект применения правила
+     * @param operationType тип операции
+     * @param allowed       разрешен ли доступ
+     * @param fingerprint   отпечаток пользователя, может быть null
+     * @param operationName название операции, может быть null
+     */
+    @Override
+    public void onDecision(RuleTargetInfo target, OperationType operationType, boolean allowed,
+                           Object fingerprint, String operationName) {
+        if (!isSampled(allowed ? grantSampleRate : denialSampleRate)) {
+            return;
+        }
+        if (!running || !buffer.offer(new AuditRecord(System.currentTimeMillis(), target, operationType, allowed,
+                fingerprint, operationName))) {
+            dropped.increment();
+        } else if (closed) {
+            //журнал закрылся между проверкой и добавлением, фоновый поток уже не заберет решение
+            discardRemaining();
+        }
+    }
+
+    /**
+     * @return число решений, отброшенных из-за заполненного буфера или после закрытия журнала
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return число записанных в файл решений
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * @return число решений, потерянных из-за ошибок записи в файл
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Останавливает фоновый поток, дописав находящиеся в буфере решения, и закрывает файл
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isSampled(double rate) {
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * Цикл фонового потока: забирает пачки решений из буфера и записывает их, пока журнал не закрыт
+     */
+    private void run() {
+        while (true) {
+            int count = buffer.drain(this::write, batchSize);
+            if (count > 0) {
+                flush();
+            } else if (running) {
+                LockSupport.parkNanos(this, idleWaitNanos);
+            } else {
+                break;
+            }
+        }
+        closeFile();
+        //решения, добавленные после последнего чтения буфера, учитываются как отброшенные
+        closed = true;
+        discardRemaining();
+    }
+
+    /**
+     * Отбрасывает находящиеся в буфере решения после завершения фонового потока
+     */
+    private synchronized void discardRemaining() {
+        buffer.drain(record -> dropped.increment(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Записывает решение в буферизованный поток файла, при необходимости переходя к новому файлу
+     *
+     * @param record запись решения
+     */
+    private void write(AuditRecord record) {
+        try {
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(record.timestamp)).append('\t')
+                    .append(record.fingerprint != null ? record.fingerprint : "-").append('\t')
+                    .append(record.operationName != null ? record.operationName : "-").append('\t')
+                    .append(record.operationType).append('\t')
+                    .append(record.allowed ? "ALLOW" : "DENY").append('\t')
+                    .append(record.target).append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            if (out != null && fileSize > 0 && fileSize + bytes.length > maxFileSize) {
+                roll();
+            }
+            if (out == null) {
+                openFile();
+            }
+            out.write(bytes);
+            fileSize += bytes.length;
+            pendingCount++;
+        } catch (IOException e) {
+            logger.warn("Failed to write audit record to {}", file, e);
+            failed.add(pendingCount + 1);
+            pendingCount = 0;
+            closeFile();
+        } catch (RuntimeException e) {
+            //ошибка форматирования одного решения не должна останавливать фоновый поток
+            logger.warn("Failed to format audit record", e);
+            failed.increment();
+        }
+    }
+
+    /**
+     * Сбрасывает записанные решения в файл
+     */
+    private void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+            written.add(pendingCount);
+        } catch (IOException e) {
+            logger.warn("Failed to flush audit log {}", file, e);
+            failed.add(pendingCount);
+            closeFile();
+        }
+        pendingCount = 0;
+    }
+
+    private void openFile() throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        fileSize = Files.size(file);
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close audit log {}", file, e);
+        }
+        out = null;
+    }
+
+    /**
+     * Сдвигает предыдущие файлы журнала и переименовывает текущий файл в file.1
+     *
+     * @throws IOException при ошибке переименования
+     */
+    private void roll() throws IOException {
+        flush();
+        closeFile();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path rolled = rolledFile(i);
+            if (Files.exists(rolled)) {
+                Files.move(rolled, rolledFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file, rolledFile(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+    }
+
+    private Path rolledFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    /**
+     * @param file путь к текущему файлу журнала
+     * @return {@link Builder} этого класса
+     */
+    public static AsyncFileAuditLog.Builder newAsyncFileAuditLog(Path file) {
+        return new Builder(file);
+    }
+
+    /**
+     * @param file путь к текущему файлу журнала
+     * @return {@link Builder} этого класса
+     */
+    public static AsyncFileAuditLog.Builder newAsyncFileAuditLog(String file) {
+        return new Builder(file == null ? null : Paths.get(file));
+    }
+
+    /**
+     * Запись решения о доступе
+     */
+    private static class AuditRecord {
+        private final long timestamp;
+        private final RuleTargetInfo target;
+        private final OperationType operationType;
+        private final boolean allowed;
+        private final Object fingerprint;
+        private final String operationName;
+
+        AuditRecord(long timestamp, RuleTargetInfo target, OperationType operationType, boolean allowed,
+                    Object fingerprint, String operationName) {
+            this.timestamp = timestamp;
+            this.target = target;
+            this.operationType = operationType;
+            this.allowed = allowed;
+            this.fingerprint = fingerprint;
+            this.operationName = operationName;
+        }
+    }
+
+    /**
+     * Класс, используемый для создания {@link AsyncFileAuditLog}
+     */
+    public static class Builder {
+        private final Path file;
+        private int bufferCapacity;
+        private int batchSize;
+        private double denialSampleRate;
+        private double grantSampleRate;
+        private long maxFileSize;
+        private int maxFiles;
+        private Duration idleWait;
+
+        private Builder(Path file) {
+            if (file == null) {
+                throw new IllegalArgumentException("Audit log file can't be null");
+            }
+            this.file = file;
+            this.bufferCapacity = 8192;
+            this.batchSize = 512;
+            this.denialSampleRate = 1;
+            this.grantSampleRate = 0;
+            this.maxFileSize = 10L * 1024 * 1024;
+            this.maxFiles = 5;
+            this.idleWait = Duration.ofMillis(100);
+        }
+
+        /**
+         * Устанавливает вместимость буфера решений, округляется вверх до степени двойки. По умолчанию 8192
+         *
+         * @param bufferCapacity вместимость буфера
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если вместимость не положительная или больше 2^30
+         */
+        public Builder bufferCapacity(int bufferCapacity) {
+            if (bufferCapacity <= 0 || bufferCapacity > 1 << 30) {
+                throw new IllegalArgumentException("Buffer capacity must be in [1, 2^30]");
+            }
+            this.bufferCapacity = bufferCapacity;
+            return this;
+        }
+
+        /**
+         * Устанавливает максимальное число решений, записываемых в файл за один сброс. По умолчанию 512
+         *
+         * @param batchSize размер пачки
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если размер не положительный
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Устанавливает долю записываемых запретов доступа. По умолчанию записываются все запреты
+         *
+         * @param denialSampleRate доля от 0 до 1
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если доля вне [0, 1]
+         */
+        public Builder denialSampleRate(double denialSampleRate) {
+            this.denialSampleRate = checkSampleRate(denialSampleRate);
+            return this;
+        }
+
+        /**
+         * Устанавливает долю записываемых разрешений доступа. По умолчанию разрешения не записываются
+         *
+         * @param grantSampleRate доля от 0 до 1
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если доля вне [0, 1]
+         */
+        public Builder grantSampleRate(double grantSampleRate) {
+            this.grantSampleRate = checkSampleRate(grantSampleRate);
+            return this;
+        }
+
+        /**
+         * Устанавливает размер файла в байтах, после превышения которого начинается новый файл. По умолчанию 10 МБ
+         *
+         * @param maxFileSize максимальный размер файла
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если размер не положительный
+         */
+        public Builder maxFileSize(long maxFileSize) {
+            if (maxFileSize <= 0) {
+                throw new IllegalArgumentException("Max file size must be positive");
+            }
+            this.maxFileSize = maxFileSize;
+            return this;
+        }
+
+        /**
+         * Устанавливает число хранимых предыдущих файлов журнала. По умолчанию 5
+         *
+         * @param maxFiles число предыдущих файлов, 0 - предыдущие файлы удаляются
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число отрицательное
+         */
+        public Builder maxFiles(int maxFiles) {
+            if (maxFiles < 0) {
+                throw new IllegalArgumentException("Max files can't be negative");
+            }
+            this.maxFiles = maxFiles;
+            return this;
+        }
+
+        /**
+         * Устанавливает время ожидания фонового потока, когда буфер пуст. По умолчанию 100 мс
+         *
+         * @param idleWait время ожидания
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если время null или не положительное
+         */
+        public Builder idleWait(Duration idleWait) {
+            if (idleWait == null || idleWait.isZero() || idleWait.isNegative()) {
+                throw new IllegalArgumentException("Idle wait must be positive");
+            }
+            this.idleWait = idleWait;
+            return this;
+        }
+
+        private double checkSampleRate(double rate) {
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("Sample rate must be in [0, 1]");
+            }
+            return rate;
+        }
+
+        /**
+         * Создает каталог журнала, если его нет, и запускает фоновый поток
+         *
+         * @return сконструированный {@link AsyncFileAuditLog}
+         * @throws UncheckedIOException если каталог журнала не удалось создать
+         */
+        public AsyncFileAuditLog build() {
+            Path directory = file.toAbsolutePath().getParent();
+            try {
+                if (directory != null) {
+                    Files.createDirectories(directory);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            AsyncFileAuditLog auditLog = new AsyncFileAuditLog(file, bufferCapacity, batchSize, denialSampleRate,
+                    grantSampleRate, maxFileSize, maxFiles, idleWait);
+            auditLog.start();
+            return auditLog;
+        }
+    }
+}
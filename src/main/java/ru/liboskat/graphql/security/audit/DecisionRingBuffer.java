@@ -0,0 +1,102 @@
+package ru.liboskat.graphql.security.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Ограниченный неблокирующий кольцевой буфер для нескольких производителей и одного потребителя.
+ * Производители занимают ячейки сдвигом хвоста через CAS, потребитель читает ячейки по порядку
+ * и освобождает их. Если буфер заполнен, элемент не добавляется
+ *
+ * @param <T> тип элементов
+ */
+class DecisionRingBuffer<T> {
+    private final AtomicReferenceArray<T> elements;
+    private final int capacity;
+    private final int mask;
+    /**
+     * Номер следующей занимаемой производителем ячейки
+     */
+    private final AtomicLong tail;
+    /**
+     * Номер следующей читаемой потребителем ячейки
+     */
+    private final AtomicLong head;
+
+    /**
+     * @param capacity минимальная вместимость, округляется вверх до степени двойки
+     * @throws IllegalArgumentException, если вместимость не положительная или больше 2^30
+     */
+    DecisionRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be in [1, 2^30]");
+        }
+        int rounded = Integer.highestOneBit(capacity);
+        this.capacity = rounded < capacity ? rounded << 1 : rounded;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    /**
+     * Добавляет элемент, может вызываться из любого потока
+     *
+     * @param element элемент, не null
+     * @return добавлен ли элемент, false - если буфер заполнен
+     */
+    boolean offer(T element) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        //запись видна потребителю до последующих проверок производителя (например, закрыт ли потребитель)
+        elements.set((int) (position & mask), element);
+        return true;
+    }
+
+    /**
+     * Передает потребителю добавленные элементы по порядку, вызывается только из потока потребителя.
+     * Чтение останавливается на ячейке, которую производитель занял, но еще не заполнил
+     *
+     * @param consumer    потребитель элементов
+     * @param maxElements максимальное число элементов
+     * @return число переданных элементов
+     */
+    int drain(Consumer<T> consumer, int maxElements) {
+        long position = head.get();
+        int count = 0;
+        while (count < maxElements) {
+            int index = (int) (position & mask);
+            T element = elements.get(index);
+            if (element == null) {
+                break;
+            }
+            elements.lazySet(index, null);
+            position++;
+            count++;
+            consumer.accept(element);
+        }
+        //ячейки освобождаются для производителей только после очистки
+        head.set(position);
+        return count;
+    }
+
+    /**
+     * @return вместимость буфера
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return приблизительное число элементов в буфере
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+}
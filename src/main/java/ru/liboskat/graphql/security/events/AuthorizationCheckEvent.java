@@ -0,0 +1,42 @@
+package ru.liboskat.graphql.security.events;
+
+import jdk.jfr.*;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+/**
+ * Событие JFR проверки правила контроля доступа
+ */
+@Name(AuthorizationCheckEvent.NAME)
+@Label("Authorization Check")
+@Description("Check of an access control rule during GraphQL execution")
+@Category({"GraphQL", "Security"})
+@StackTrace(false)
+class AuthorizationCheckEvent extends Event implements AuthorizationCheckRecording {
+    static final String NAME = "ru.liboskat.graphql.security.AuthorizationCheck";
+
+    @Label("Target")
+    String target;
+
+    @Label("Operation Type")
+    String operationType;
+
+    @Label("Allowed")
+    boolean allowed;
+
+    @Label("Expression Size")
+    @Description("Number of tokens in the checked expression")
+    int expressionSize;
+
+    @Override
+    public void commit(RuleTargetInfo target, String operationType, boolean allowed, int expressionSize) {
+        end();
+        //строковое представление объекта строится, только если событие проходит порог длительности
+        if (shouldCommit()) {
+            this.target = String.valueOf(target);
+            this.operationType = operationType;
+            this.allowed = allowed;
+            this.expressionSize = expressionSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.liboskat.graphql.security.events;
+
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+/**
+ * Начатая запись события проверки правила контроля доступа
+ */
+public interface AuthorizationCheckRecording {
+    /**
+     * Запись, которая ничего не сохраняет
+     */
+    AuthorizationCheckRecording NO_OP = (target, operationType, allowed, expressionSize) -> {
+    };
+
+    /**
+     * Завершает проверку и сохраняет событие
+     *
+     * @param target         объект применения правила
+     * @param operationType  тип операции
+     * @param allowed        разрешен ли доступ
+     * @param expressionSize число токенов проверяемого выражения
+     */
+    void commit(RuleTargetInfo target, String operationType, boolean allowed, int expressionSize);
+}
@@ -0,0 +1,32 @@
+package ru.liboskat.graphql.security.events;
+
+import jdk.jfr.EventType;
+
+/**
+ * Фабрика событий JFR. Загружается {@link SecurityEvents} по названию, только если JFR доступен.
+ * Включенность событий проверяется по их типам, поэтому без записи JFR объекты событий не создаются
+ */
+class JfrSecurityEventFactory implements SecurityEventFactory, SecurityEvents.JfrAvailable {
+    private final EventType authorizationCheckType = EventType.getEventType(AuthorizationCheckEvent.class);
+    private final EventType storageBuildType = EventType.getEventType(StorageBuildEvent.class);
+
+    @Override
+    public AuthorizationCheckRecording beginAuthorizationCheck() {
+        if (!authorizationCheckType.isEnabled()) {
+            return AuthorizationCheckRecording.NO_OP;
+        }
+        AuthorizationCheckEvent event = new AuthorizationCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public StorageBuildRecording beginStorageBuild() {
+        if (!storageBuildType.isEnabled()) {
+            return StorageBuildRecording.NO_OP;
+        }
+        StorageBuildEvent event = new StorageBuildEvent();
+        event.begin();
+        return event;
+    }
+}
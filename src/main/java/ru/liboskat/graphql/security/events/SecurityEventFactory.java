@@ -0,0 +1,10 @@
+package ru.liboskat.graphql.security.events;
+
+/**
+ * Создает записи событий, реализация выбирается {@link SecurityEvents}
+ */
+interface SecurityEventFactory {
+    AuthorizationCheckRecording beginAuthorizationCheck();
+
+    StorageBuildRecording beginStorageBuild();
+}
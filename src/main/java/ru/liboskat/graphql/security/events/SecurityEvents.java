@@ -0,0 +1,80 @@
+package ru.liboskat.graphql.security.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Точка записи событий Java Flight Recorder о проверках доступа и построении хранилища правил.
+ * Классы событий загружаются, только если JFR есть в среде выполнения, иначе записи ничего не сохраняют.
+ * События сохраняются, только если они включены в запущенной записи JFR, например:
+ * {@code -XX:StartFlightRecording:settings=profile}
+ */
+public final class SecurityEvents {
+    private static final Logger logger = LoggerFactory.getLogger(SecurityEvents.class);
+    private static final String JFR_EVENT_CLASS = "jdk.jfr.Event";
+    private static final String JFR_FACTORY_CLASS = "ru.liboskat.graphql.security.events.JfrSecurityEventFactory";
+
+    private static final SecurityEventFactory FACTORY = loadFactory();
+
+    private SecurityEvents() {
+    }
+
+    /**
+     * @return доступен ли Java Flight Recorder
+     */
+    public static boolean isJfrAvailable() {
+        return FACTORY instanceof JfrAvailable;
+    }
+
+    /**
+     * Начинает запись события проверки правила контроля доступа
+     *
+     * @return запись события или {@link AuthorizationCheckRecording#NO_OP}, если событие не сохраняется
+     */
+    public static AuthorizationCheckRecording beginAuthorizationCheck() {
+        return FACTORY.beginAuthorizationCheck();
+    }
+
+    /**
+     * Начинает запись события построения хранилища правил
+     *
+     * @return запись события или {@link StorageBuildRecording#NO_OP}, если событие не сохраняется
+     */
+    public static StorageBuildRecording beginStorageBuild() {
+        return FACTORY.beginStorageBuild();
+    }
+
+    /**
+     * @return фабрика событий JFR, если JFR доступен, иначе фабрика, ничего не сохраняющая
+     */
+    private static SecurityEventFactory loadFactory() {
+        try {
+            Class.forName(JFR_EVENT_CLASS, false, SecurityEvents.class.getClassLoader());
+            return (SecurityEventFactory) Class.forName(JFR_FACTORY_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.debug("Java Flight Recorder is not available, security events are disabled");
+            return new NoOpSecurityEventFactory();
+        }
+    }
+
+    /**
+     * Отметка фабрики событий JFR
+     */
+    interface JfrAvailable {
+    }
+
+    /**
+     * Фабрика, ничего не сохраняющая
+     */
+    private static class NoOpSecurityEventFactory implements SecurityEventFactory {
+        @Override
+        public AuthorizationCheckRecording beginAuthorizationCheck() {
+            return AuthorizationCheckRecording.NO_OP;
+        }
+
+        @Override
+        public StorageBuildRecording beginStorageBuild() {
+            return StorageBuildRecording.NO_OP;
+        }
+    }
+}
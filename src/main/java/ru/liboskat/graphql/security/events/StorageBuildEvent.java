@@ -0,0 +1,38 @@
+package ru.liboskat.graphql.security.events;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR построения хранилища правил
+ */
+@Name(StorageBuildEvent.NAME)
+@Label("Access Rule Storage Build")
+@Description("Compilation of access control rules into an AccessRuleStorage")
+@Category({"GraphQL", "Security"})
+@StackTrace(false)
+class StorageBuildEvent extends Event implements StorageBuildRecording {
+    static final String NAME = "ru.liboskat.graphql.security.StorageBuild";
+
+    @Label("Rule Count")
+    int ruleCount;
+
+    @Label("Comparison Count")
+    @Description("Number of distinct comparisons in the rules")
+    int comparisonCount;
+
+    @Label("Expression Size")
+    @Description("Total number of tokens in the rule expressions")
+    int expressionSize;
+
+    @Label("Successful")
+    boolean successful;
+
+    @Override
+    public void commit(int ruleCount, int comparisonCount, int expressionSize, boolean successful) {
+        this.ruleCount = ruleCount;
+        this.comparisonCount = comparisonCount;
+        this.expressionSize = expressionSize;
+        this.successful = successful;
+        commit();
+    }
+}
@@ -0,0 +1,35 @@
+package ru.liboskat.graphql.security.events;
+
+/**
+ * Начатая запись события построения хранилища правил
+ */
+public interface StorageBuildRecording {
+    /**
+     * Запись, которая ничего не сохраняет
+     */
+    StorageBuildRecording NO_OP = new StorageBuildRecording() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void commit(int ruleCount, int comparisonCount, int expressionSize, boolean successful) {
+        }
+    };
+
+    /**
+     * @return сохраняется ли событие, если нет - значения для него можно не вычислять
+     */
+    boolean isEnabled();
+
+    /**
+     * Завершает построение и сохраняет событие
+     *
+     * @param ruleCount       число правил хранилища
+     * @param comparisonCount число различных сравнений в правилах
+     * @param expressionSize  суммарное число токенов выражений правил
+     * @param successful      построено ли хранилище
+     */
+    void commit(int ruleCount, int comparisonCount, int expressionSize, boolean successful);
+}
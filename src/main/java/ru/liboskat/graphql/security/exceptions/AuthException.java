@@ -14,21 +14,31 @@ import java.util.Map;
 
 /**
  * Выбрасывается в случае остутствия доступа
- * Может быть добавлен в список ошибок запроса GraphQL
+ * Может быть добавлен в список ошибок запроса GraphQL.
+ * Исключения запрета доступа к объекту, создаваемые {@link #accessDenied(RuleTargetInfo)}, не содержат стека вызовов
+ * и неизменяемы, поэтому один экземпляр может использоваться для всех запретов доступа к объекту
  */
 public class AuthException extends RuntimeException implements GraphQLError {
     public static final String TARGET_ATTRIBUTE_NAME = "target";
     public static final String STATUS_CODE_ATTRIBUTE_NAME = "statusCode";
     public static final int STATUS_CODE_NUMBER = 403;
 
-    private String ruleTargetInfo;
+    private final String ruleTargetInfo;
+    /**
+     * Неизменяемые расширения исключений, созданных {@link #accessDenied(RuleTargetInfo)}, иначе null
+     */
+    private final Map<String, Object> extensions;
 
     public AuthException() {
         super();
+        this.ruleTargetInfo = null;
+        this.extensions = null;
     }
 
     public AuthException(String message) {
         super(message);
+        this.ruleTargetInfo = null;
+        this.extensions = null;
     }
 
     /**
@@ -39,6 +49,48 @@ public class AuthException extends RuntimeException implements GraphQLError {
     public AuthException(RuleTargetInfo ruleTargetInfo) {
         super(String.format("Access denied to %s", ruleTargetInfo));
         this.ruleTargetInfo = ruleTargetInfo.toString();
+        this.extensions = null;
+    }
+
+    /**
+     * Создает неизменяемое исключение без стека вызовов, подавленных исключений и причины
+     *
+     * @param ruleTargetInfo объект, к которому был запрещен доступ
+     * @param extensions     неизменяемые расширения ошибки
+     */
+    private AuthException(RuleTargetInfo ruleTargetInfo, Map<String, Object> extensions) {
+        super(String.format("Access denied to %s", ruleTargetInfo), null, false, false);
+        this.ruleTargetInfo = ruleTargetInfo.toString();
+        this.extensions = extensions;
+    }
+
+    /**
+     * Создает исключение запрета доступа к объекту без стека вызовов.
+     * Сообщение и расширения ошибки формируются один раз при создании
+     *
+     * @param ruleTargetInfo объект, к которому был запрещен доступ
+     * @return неизменяемое исключение без стека вызовов
+     * @throws IllegalArgumentException, если объект null
+     */
+    public static AuthException accessDenied(RuleTargetInfo ruleTargetInfo) {
+        if (ruleTargetInfo == null) {
+            throw new IllegalArgumentException("Rule target info can't be null");
+        }
+        return new AuthException(ruleTargetInfo,
+                Collections.unmodifiableMap(buildExtensions(ruleTargetInfo.toString())));
+    }
+
+    /**
+     * @param ruleTargetInfo строковое представление объекта, может быть null
+     * @return расширения ошибки с объектом, если он есть, и кодом статуса
+     */
+    private static Map<String, Object> buildExtensions(String ruleTargetInfo) {
+        Map<String, Object> customAttributes = new LinkedHashMap<>();
+        if (ruleTargetInfo != null) {
+            customAttributes.put(TARGET_ATTRIBUTE_NAME, ruleTargetInfo);
+        }
+        customAttributes.put(STATUS_CODE_ATTRIBUTE_NAME, STATUS_CODE_NUMBER);
+        return customAttributes;
     }
 
     @Override
@@ -51,13 +103,13 @@ public class AuthException extends RuntimeException implements GraphQLError {
         return ErrorType.DataFetchingException;
     }
 
+    /**
+     * Для исключений, созданных {@link #accessDenied(RuleTargetInfo)}, возвращает один неизменяемый экземпляр
+     *
+     * @return расширения ошибки: объект, к которому был запрещен доступ, если есть, и код статуса
+     */
     @Override
     public Map<String, Object> getExtensions() {
-        Map<String, Object> customAttributes = new LinkedHashMap<>();
-        if (ruleTargetInfo != null) {
-            customAttributes.put(TARGET_ATTRIBUTE_NAME, ruleTargetInfo);
-        }
-        customAttributes.put(STATUS_CODE_ATTRIBUTE_NAME, STATUS_CODE_NUMBER);
-        return customAttributes;
+        return extensions != null ? extensions : buildExtensions(ruleTargetInfo);
     }
 }
@@ -0,0 +1,178 @@
+package ru.liboskat.graphql.security.execution;
+
+import graphql.schema.*;
+import graphql.schema.visibility.GraphqlFieldVisibility;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.InputObjectTypeRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.ObjectTypeRules;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TokenExpressionRule;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Реализация {@link GraphqlFieldVisibility}, скрывающая поля, доступ к которым запрещен для контекста безопасности.
+ * Поле скрывается, если правила чтения и записи поля или типа его значения зависят только от контекста
+ * и ложны для него. Поля с правилами, зависящими от аргументов или даты / времени, не скрываются,
+ * их доступ проверяется {@link SecurityInstrumentation} при выполнении запроса.
+ * Решения вычисляются один раз при создании. Экземпляры для контекстов создаются и кешируются
+ * {@link FilteredSchemaProvider}
+ */
+public class AccessRuleFieldVisibility implements GraphqlFieldVisibility {
+    /**
+     * Схема, к которой привязаны правила, использованные при вычислении видимости
+     */
+    private final GraphQLSchema baseSchema;
+    private final Set<GraphQLFieldDefinition> hiddenFields;
+    private final Set<GraphQLInputObjectField> hiddenInputFields;
+    /**
+     * Тип -> видимые поля, только для типов со скрытыми полями
+     */
+    private final Map<GraphQLFieldsContainer, List<GraphQLFieldDefinition>> visibleFields;
+    private final Map<GraphQLInputFieldsContainer, List<GraphQLInputObjectField>> visibleInputFields;
+
+    private AccessRuleFieldVisibility(GraphQLSchema baseSchema, Set<GraphQLFieldDefinition> hiddenFields,
+                                      Set<GraphQLInputObjectField> hiddenInputFields) {
+        this.baseSchema = baseSchema;
+        this.hiddenFields = hiddenFields;
+        this.hiddenInputFields = hiddenInputFields;
+        this.visibleFields = new ConcurrentHashMap<>();
+        this.visibleInputFields = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Вычисляет видимость полей всех объектов и входных объектов схемы для контекста безопасности
+     *
+     * @param rules   хранилище правил, привязанное к схеме
+     * @param context контекст безопасности, может быть null
+     * @param solver  используемый для решения выражений класс
+     * @param now     текущий момент времени
+     * @return видимость полей для контекста
+     */
+    static AccessRuleFieldVisibility of(SchemaBoundAccessRuleStorage rules, SecurityContext context,
+                                        TokenExpressionSolverImpl solver, ZonedDateTime now) {
+        Set<GraphQLFieldDefinition> hiddenFields = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<GraphQLInputObjectField> hiddenInputFields = Collections.newSetFromMap(new IdentityHashMap<>());
+        //запреты доступа к типам вычисляются один раз для всех полей с этим типом значения
+        Map<GraphQLType, Boolean> deniedTypes = new IdentityHashMap<>();
+        for (GraphQLNamedType type : rules.getSchema().getAllTypesAsList()) {
+            if (type instanceof GraphQLObjectType) {
+                ObjectTypeRules typeRules = rules.getObjectTypeRules((GraphQLObjectType) type);
+                for (GraphQLFieldDefinition field : ((GraphQLObjectType) type).getFieldDefinitions()) {
+                    if (isDenied(typeRules.getFieldRules(field).getRule(), context, solver, now) ||
+                            isDeniedType(field.getType(), rules, deniedTypes, context, solver, now)) {
+                        hiddenFields.add(field);
+                    }
+                }
+            } else if (type instanceof GraphQLInputObjectType) {
+                InputObjectTypeRules typeRules = rules.getInputObjectTypeRules((GraphQLInputObjectType) type);
+                for (GraphQLInputObjectField field : ((GraphQLInputObjectType) type).getFieldDefinitions()) {
+                    if (isDenied(typeRules.getFieldRule(field), context, solver, now) ||
+                            isDeniedType(field.getType(), rules, deniedTypes, context, solver, now)) {
+                        hiddenInputFields.add(field);
+                    }
+                }
+            }
+        }
+        return new AccessRuleFieldVisibility(rules.getSchema(), hiddenFields, hiddenInputFields);
+    }
+
+    /**
+     * @param type тип значения поля
+     * @return запрещен ли доступ к объекту или входному объекту, являющемуся типом значения
+     */
+    private static boolean isDeniedType(GraphQLType type, SchemaBoundAccessRuleStorage rules,
+                                        Map<GraphQLType, Boolean> deniedTypes, SecurityContext context,
+                                        TokenExpressionSolverImpl solver, ZonedDateTime now) {
+        GraphQLType unwrapped = GraphQLTypeUtil.unwrapAll(type);
+        Boolean denied = deniedTypes.get(unwrapped);
+        if (denied == null) {
+            TokenExpressionRule rule = null;
+            if (unwrapped instanceof GraphQLObjectType) {
+                rule = rules.getObjectTypeRules((GraphQLObjectType) unwrapped).getRule();
+            } else if (unwrapped instanceof GraphQLInputObjectType) {
+                rule = rules.getInputObjectTypeRules((GraphQLInputObjectType) unwrapped).getRule();
+            }
+            denied = isDenied(rule, context, solver, now);
+            deniedTypes.put(unwrapped, denied);
+        }
+        return denied;
+    }
+
+    /**
+     * @param rule правило, может быть null
+     * @return запрещены ли и чтение, и запись независимо от аргументов и времени
+     */
+    private static boolean isDenied(TokenExpressionRule rule, SecurityContext context,
+                                    TokenExpressionSolverImpl solver, ZonedDateTime now) {
+        return rule != null &&
+                isDenied(rule.getReadRule(), context, solver, now) &&
+                isDenied(rule.getWriteRule(), context, solver, now);
+    }
+
+    private static boolean isDenied(TokenExpression expression, SecurityContext context,
+                                    TokenExpressionSolverImpl solver, ZonedDateTime now) {
+        return DecisionCache.dependsOnlyOnContext(expression) &&
+                solver.partiallySolve(expression, context, now) == PartiallySolvedExpression.FALSE;
+    }
+
+    /**
+     * @return исходная схема, представлением которой является схема с этой видимостью полей
+     */
+    public GraphQLSchema getBaseSchema() {
+        return baseSchema;
+    }
+
+    /**
+     * @param field определение поля
+     * @return скрыто ли поле
+     */
+    public boolean isHidden(GraphQLFieldDefinition field) {
+        return hiddenFields.contains(field);
+    }
+
+    /**
+     * @param field определение поля входного объекта
+     * @return скрыто ли поле входного объекта
+     */
+    public boolean isHidden(GraphQLInputObjectField field) {
+        return hiddenInputFields.contains(field);
+    }
+
+    @Override
+    public List<GraphQLFieldDefinition> getFieldDefinitions(GraphQLFieldsContainer fieldsContainer) {
+        List<GraphQLFieldDefinition> fields = fieldsContainer.getFieldDefinitions();
+        if (hiddenFields.isEmpty()) {
+            return fields;
+        }
+        return visibleFields.computeIfAbsent(fieldsContainer, container -> fields.stream()
+                .filter(field -> !hiddenFields.contains(field))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+    }
+
+    @Override
+    public GraphQLFieldDefinition getFieldDefinition(GraphQLFieldsContainer fieldsContainer, String fieldName) {
+        GraphQLFieldDefinition field = fieldsContainer.getFieldDefinition(fieldName);
+        return field != null && hiddenFields.contains(field) ? null : field;
+    }
+
+    @Override
+    public List<GraphQLInputObjectField> getFieldDefinitions(GraphQLInputFieldsContainer fieldsContainer) {
+        List<GraphQLInputObjectField> fields = fieldsContainer.getFieldDefinitions();
+        if (hiddenInputFields.isEmpty()) {
+            return fields;
+        }
+        return visibleInputFields.computeIfAbsent(fieldsContainer, container -> fields.stream()
+                .filter(field -> !hiddenInputFields.contains(field))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+    }
+
+    @Override
+    public GraphQLInputObjectField getFieldDefinition(GraphQLInputFieldsContainer fieldsContainer, String fieldName) {
+        GraphQLInputObjectField field = fieldsContainer.getFieldDefinition(fieldName);
+        return field != null && hiddenInputFields.contains(field) ? null : field;
+    }
+}
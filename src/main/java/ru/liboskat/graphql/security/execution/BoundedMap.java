@@ -0,0 +1,142 @@
+package ru.liboskat.graphql.security.execution;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Потокобезопасное отображение ограниченного размера, используемое кешами пакета.
+ * Когда отображение заполнено, при добавлении удаляется одна запись, следующая за удаленной ранее,
+ * поэтому добавление не просматривает все записи. Записи с временем устаревания удаляются полным просмотром
+ * не чаще одного раза за {@link #SWEEP_INTERVAL_DIVISOR}-ю часть максимального размера добавлений
+ * в заполненное отображение
+ *
+ * @param <K> тип ключей
+ * @param <V> тип значений
+ */
+final class BoundedMap<K, V> {
+    private static final int SWEEP_INTERVAL_DIVISOR = 8;
+
+    private final Map<K, V> entries;
+    private final int maximumSize;
+    /**
+     * Время устаревания значения в наносекундах, null - если значения не устаревают
+     */
+    private final ToLongFunction<? super V> expiresAt;
+    private final int sweepInterval;
+    /**
+     * Число добавлений в заполненное отображение после последнего удаления устаревших записей
+     */
+    private int insertsSinceSweep;
+    /**
+     * Текущая позиция удаления записей, сохраняется между добавлениями
+     */
+    private Iterator<K> evictionCursor;
+
+    /**
+     * @param maximumSize максимальное число записей
+     * @param expiresAt   функция, возвращающая время устаревания значения в наносекундах,
+     *                    null - если значения не устаревают
+     * @throws IllegalArgumentException, если число записей не положительное
+     */
+    BoundedMap(int maximumSize, ToLongFunction<? super V> expiresAt) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.maximumSize = maximumSize;
+        this.expiresAt = expiresAt;
+        this.sweepInterval = Math.max(1, maximumSize / SWEEP_INTERVAL_DIVISOR);
+    }
+
+    /**
+     * @param key ключ
+     * @return значение или null, если его нет
+     */
+    V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Сохраняет значение, при необходимости освобождая место
+     *
+     * @param key   ключ
+     * @param value значение
+     * @param now   текущее время в наносекундах
+     */
+    void put(K key, V value, long now) {
+        makeRoom(now);
+        entries.put(key, value);
+    }
+
+    /**
+     * Возвращает значение, а если его нет, вычисляет и сохраняет, при необходимости освобождая место.
+     * Используется только для значений, которые не устаревают
+     *
+     * @param key             ключ
+     * @param mappingFunction функция, вычисляющая значение
+     * @return значение
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        makeRoom(0);
+        return entries.computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * Удаляет запись, если ключу соответствует переданное значение
+     *
+     * @param key   ключ
+     * @param value значение
+     */
+    void remove(K key, V value) {
+        entries.remove(key, value);
+    }
+
+    /**
+     * Удаляет все записи
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return текущее число записей
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Если отображение заполнено, удаляет устаревшие записи, если подошла их очередь,
+     * а затем записи по порядку от текущей позиции, пока не освободится место
+     *
+     * @param now текущее время в наносекундах
+     */
+    private void makeRoom(long now) {
+        if (entries.size() < maximumSize) {
+            return;
+        }
+        synchronized (this) {
+            if (expiresAt != null && ++insertsSinceSweep >= sweepInterval) {
+                insertsSinceSweep = 0;
+                entries.values().removeIf(value -> now - expiresAt.applyAsLong(value) >= 0);
+            }
+            while (entries.size() >= maximumSize) {
+                if (evictionCursor == null || !evictionCursor.hasNext()) {
+                    evictionCursor = entries.keySet().iterator();
+                    if (!evictionCursor.hasNext()) {
+                        return;
+                    }
+                }
+                evictionCursor.next();
+                evictionCursor.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package ru.liboskat.graphql.security.execution;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Путь к вложенному значению переменной контекста, например user.org.id.
+ * Первая часть пути - название переменной контекста, следующие - названия ключей {@link Map},
+ * методов без параметров (в том числе методов record), геттеров или полей объекта.
+ * Открытые методы вызываются через открытый класс или интерфейс, в котором они объявлены,
+ * поэтому методы закрытых классов JDK (например, size() списка из {@link java.util.Arrays#asList(Object[])})
+ * доступны без {@link AccessibleObject#setAccessible(boolean)}.
+ * Способ получения значения определяется один раз для пары (класс, часть пути) и кешируется,
+ * размеры кешей путей и способов получения значений ограничены
+ */
+final class ContextPath {
+    private static final char SEPARATOR = '.';
+    private static final int MAX_PATHS = 1024;
+    private static final int MAX_ACCESSORS_PER_CLASS = 256;
+    private static final BoundedMap<String, ContextPath> PATHS = new BoundedMap<>(MAX_PATHS, null);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandles.Lookup PUBLIC_LOOKUP = MethodHandles.publicLookup();
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandle MISSING = MethodHandles.dropArguments(
+            MethodHandles.constant(Object.class, null), 0, Object.class);
+
+    /**
+     * Класс -> часть пути -> способ получения значения или {@link #MISSING}, если части пути в классе нет
+     */
+    private static final ClassValue<BoundedMap<String, MethodHandle>> ACCESSORS =
+            new ClassValue<BoundedMap<String, MethodHandle>>() {
+                @Override
+                protected BoundedMap<String, MethodHandle> computeValue(Class<?> type) {
+                    return new BoundedMap<>(MAX_ACCESSORS_PER_CLASS, null);
+                }
+            };
+
+    private final String root;
+    private final String[] segments;
+
+    private ContextPath(String path) {
+        String[] parts = path.split("\\.");
+        this.root = parts[0];
+        this.segments = new String[parts.length - 1];
+        System.arraycopy(parts, 1, segments, 0, segments.length);
+    }
+
+    /**
+     * @param key название переменной контекста
+     * @return является ли название путем к вложенному значению
+     */
+    static boolean isPath(String key) {
+        return key.indexOf(SEPARATOR) > 0;
+    }
+
+    /**
+     * @param path путь к вложенному значению
+     * @return разобранный путь, закешированный для повторного использования
+     */
+    static ContextPath of(String path) {
+        return PATHS.computeIfAbsent(path, ContextPath::new);
+    }
+
+    /**
+     * @return название переменной контекста, с которой начинается путь
+     */
+    String getRoot() {
+        return root;
+    }
+
+    /**
+     * Возвращает вложенное значение по пути
+     *
+     * @param rootValue значение переменной контекста, с которой начинается путь
+     * @return вложенное значение или null, если на пути встретился null или ключа {@link Map} нет
+     * @throws IllegalArgumentException, если части пути нет в классе объекта или не удалось получить значение
+     */
+    Object resolve(Object rootValue) {
+        Object value = rootValue;
+        for (String segment : segments) {
+            if (value == null) {
+                return null;
+            }
+            Class<?> type = value.getClass();
+            MethodHandle accessor = ACCESSORS.get(type).computeIfAbsent(segment, name -> findAccessor(type, name));
+            if (accessor == MISSING) {
+                throw new IllegalArgumentException(String.format("Can't find %s in %s", segment, type));
+            }
+            try {
+                value = accessor.invokeExact(value);
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(String.format("Can't get %s from %s", segment, type), e);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Ищет способ получения значения: ключ {@link Map}, метод name(), getName(), isName() или поле name
+     *
+     * @param type класс объекта
+     * @param name часть пути
+     * @return {@link MethodHandle} с типом (Object)Object или {@link #MISSING}, если способ не найден
+     */
+    private static MethodHandle findAccessor(Class<?> type, String name) {
+        try {
+            if (Map.class.isAssignableFrom(type)) {
+                MethodHandle get = LOOKUP.findVirtual(Map.class, "get",
+                        MethodType.methodType(Object.class, Object.class));
+                return MethodHandles.insertArguments(get, 1, name).asType(ACCESSOR_TYPE);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String methodName : new String[]{name, "get" + capitalized, "is" + capitalized}) {
+            Method method = findMethod(type, methodName);
+            if (method != null) {
+                MethodHandle accessor = findMethodAccessor(type, method);
+                if (accessor != null) {
+                    return accessor;
+                }
+            }
+        }
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                if (!Modifier.isStatic(field.getModifiers()) && makeAccessible(field)) {
+                    return LOOKUP.unreflectGetter(field).asType(ACCESSOR_TYPE);
+                }
+            } catch (NoSuchFieldException | IllegalAccessException ignored) {
+                //ищем в родительском классе
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Ищет метод сначала в открытых классах и интерфейсах, которым принадлежит класс объекта, а если
+     * метод в них недоступен, делает доступным сам метод (например, метод закрытого класса приложения)
+     *
+     * @param type   класс объекта
+     * @param method открытый метод без параметров
+     * @return {@link MethodHandle} с типом (Object)Object или null, если метод недоступен
+     */
+    private static MethodHandle findMethodAccessor(Class<?> type, Method method) {
+        for (Class<?> supertype : getPublicSupertypes(type)) {
+            try {
+                Method declared = supertype.getMethod(method.getName());
+                return PUBLIC_LOOKUP.findVirtual(supertype, method.getName(),
+                        MethodType.methodType(declared.getReturnType())).asType(ACCESSOR_TYPE);
+            } catch (ReflectiveOperationException ignored) {
+                //метода нет в этом типе или тип недоступен, пробуем следующий
+            }
+        }
+        if (makeAccessible(method)) {
+            try {
+                return LOOKUP.unreflect(method).asType(ACCESSOR_TYPE);
+            } catch (IllegalAccessException ignored) {
+                //метод недоступен
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param type класс объекта
+     * @return открытые классы и интерфейсы: сам класс, его родительские классы, затем интерфейсы
+     */
+    private static Set<Class<?>> getPublicSupertypes(Class<?> type) {
+        Set<Class<?>> supertypes = new LinkedHashSet<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            supertypes.add(current);
+        }
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> implemented : current.getInterfaces()) {
+                interfaces.add(implemented);
+            }
+        }
+        while (!interfaces.isEmpty()) {
+            Class<?> implemented = interfaces.poll();
+            if (supertypes.add(implemented)) {
+                for (Class<?> parent : implemented.getInterfaces()) {
+                    interfaces.add(parent);
+                }
+            }
+        }
+        supertypes.removeIf(supertype -> !Modifier.isPublic(supertype.getModifiers()));
+        return supertypes;
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            Method method = type.getMethod(name);
+            return method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers()) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean makeAccessible(AccessibleObject accessibleObject) {
+        try {
+            accessibleObject.setAccessible(true);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
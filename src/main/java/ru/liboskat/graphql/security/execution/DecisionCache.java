@@ -0,0 +1,303 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+import ru.liboskat.graphql.security.storage.token.Token;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Кеш результатов проверки правил между запросами.
+ * Ключ кеша - выражение и отпечаток пользователя ({@link SecurityContext#getFingerprint()}), а если отпечаток
+ * не задан, значения переменных контекста, используемых в выражении.
+ * Кешируются только выражения, зависящие лишь от контекста: выражения с аргументами поля или
+ * значениями даты / времени всегда решаются заново.
+ * Записи хранятся не дольше заданного времени жизни, размер кеша ограничен
+ */
+public class DecisionCache {
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final BoundedMap<Key, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    private DecisionCache(long ttlNanos, int maximumSize, LongSupplier ticker) {
+        this.ttlNanos = ttlNanos;
+        this.ticker = ticker;
+        this.entries = new BoundedMap<>(maximumSize, entry -> entry.expiresAt);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Возвращает частично решенное выражение относительно текущего момента времени,
+     * используя сохраненный результат, если он есть
+     *
+     * @param expression выражение в обратной польской записи
+     * @param context    контекст безопасности запроса
+     * @param solver     используемый для решения выражения класс
+     * @return частично решенное выражение
+     */
+    PartiallySolvedExpression partiallySolve(TokenExpression expression, SecurityContext context,
+                                             TokenExpressionSolverImpl solver) {
+        return partiallySolve(expression, context, solver, ZonedDateTime.now(), null);
+    }
+
+    /**
+     * Возвращает частично решенное выражение, используя сохраненный результат, если он есть
+     *
+     * @param expression выражение в обратной польской записи
+     * @param context    контекст безопасности запроса
+     * @param solver     используемый для решения выражения класс
+     * @param now               текущий момент времени запроса
+     * @param comparisonResults результаты сравнений запроса, может быть null
+     * @return частично решенное выражение
+     */
+    PartiallySolvedExpression partiallySolve(TokenExpression expression, SecurityContext context,
+                                             TokenExpressionSolverImpl solver, ZonedDateTime now,
+                                             byte[] comparisonResults) {
+        //выражения с аргументами или датой / временем не кешируются
+        if (!dependsOnlyOnContext(expression)) {
+            return solver.partiallySolve(expression, context, now, comparisonResults);
+        }
+        Object principal;
+        try {
+            principal = principalOf(expression, context);
+        } catch (IllegalArgumentException e) {
+            //значение переменной контекста не читается: выражение решается без кеша и дает запрет
+            return solver.partiallySolve(expression, context, now, comparisonResults);
+        }
+        Key key = new Key(expression, principal);
+        long tick = ticker.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null && tick - entry.expiresAt < 0) {
+            hits.increment();
+            return PartiallySolvedExpression.constant(entry.value);
+        }
+        misses.increment();
+        PartiallySolvedExpression solved = solver.partiallySolve(expression, context, now, comparisonResults);
+        if (solved.isConstant()) {
+            entries.put(key, new Entry(solved.getValue(), tick + ttlNanos), tick);
+        }
+        return solved;
+    }
+
+    /**
+     * @param expression выражение
+     * @return зависит ли выражение только от контекста и постоянных значений, кроме даты / времени
+     */
+    static boolean dependsOnlyOnContext(TokenExpression expression) {
+        for (Token token : expression.getTokens()) {
+            if (token instanceof ComparisonToken) {
+                ComparisonToken comparison = (ComparisonToken) token;
+                if (!isCacheable(comparison.getFirstValueType()) || !isCacheable(comparison.getSecondValueType())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param valueType тип операнда
+     * @return можно ли кешировать результат сравнения с операндом такого типа
+     */
+    private static boolean isCacheable(ValueType valueType) {
+        switch (valueType) {
+            case GRAPHQL_ARGUMENT_NAME:
+            case ZONED_DATE_TIME:
+            case LOCAL_DATE_TIME:
+            case LOCAL_DATE:
+            case LOCAL_TIME:
+            case NOW:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Возвращает отпечаток пользователя или, если он не задан, значения используемых выражением переменных контекста
+     *
+     * @param expression выражение
+     * @param context    контекст безопасности, может быть null
+     * @return объект, идентифицирующий пользователя для выражения
+     * @throws IllegalArgumentException, если не удалось получить вложенное значение переменной контекста
+     */
+    private Object principalOf(TokenExpression expression, SecurityContext context) {
+        if (context != null && context.getFingerprint().isPresent()) {
+            return context.getFingerprint().get();
+        }
+        List<Object> values = new ArrayList<>();
+        for (Token token : expression.getTokens()) {
+            if (token instanceof ComparisonToken) {
+                ComparisonToken comparison = (ComparisonToken) token;
+                addContextValue(values, comparison.getFirstValue(), comparison.getFirstValueType(), context);
+                addContextValue(values, comparison.getSecondValue(), comparison.getSecondValueType(), context);
+            }
+        }
+        return values;
+    }
+
+    private void addContextValue(List<Object> values, Object tokenValue, ValueType valueType,
+                                 SecurityContext context) {
+        if (ValueType.GRAPHQL_CONTEXT_FIELD_NAME == valueType) {
+            values.add(context != null ? context.get((String) tokenValue) : null);
+        }
+    }
+
+    /**
+     * Удаляет все записи кеша
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return текущее число записей кеша
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return число найденных в кеше результатов
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return число ненайденных в кеше результатов кешируемых выражений
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return доля найденных в кеше результатов или 0, если обращений к кешу не было
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return {@link Builder} этого класса
+     */
+    public static DecisionCache.Builder newDecisionCache() {
+        return new Builder();
+    }
+
+    /**
+     * Ключ кеша. Выражения сравниваются по ссылке, так как скомпилированные правила неизменяемы
+     */
+    private static class Key {
+        private final TokenExpression expression;
+        private final Object principal;
+        private final int hash;
+
+        Key(TokenExpression expression, Object principal) {
+            this.expression = expression;
+            this.principal = principal;
+            this.hash = 31 * System.identityHashCode(expression) + Objects.hashCode(principal);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return expression == that.expression && Objects.equals(principal, that.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Запись кеша с результатом и временем устаревания
+     */
+    private static class Entry {
+        private final boolean value;
+        private final long expiresAt;
+
+        Entry(boolean value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Класс, используемый для создания {@link DecisionCache}
+     */
+    public static class Builder {
+        private Duration ttl;
+        private int maximumSize;
+        private LongSupplier ticker;
+
+        private Builder() {
+            this.ttl = Duration.ofMinutes(1);
+            this.maximumSize = 10_000;
+            this.ticker = System::nanoTime;
+        }
+
+        /**
+         * Устанавливает время жизни записи, по умолчанию 1 минута
+         *
+         * @param ttl время жизни записи
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если время жизни null или не положительное
+         */
+        public Builder ttl(Duration ttl) {
+            if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+                throw new IllegalArgumentException("TTL must be positive");
+            }
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Устанавливает максимальное число записей, по умолчанию 10000
+         *
+         * @param maximumSize максимальное число записей
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число записей не положительное
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Устанавливает источник времени в наносекундах
+         *
+         * @param ticker источник времени в наносекундах
+         * @return текущий {@link Builder}
+         */
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @return сконструированный {@link DecisionCache}
+         */
+        public DecisionCache build() {
+            return new DecisionCache(ttl.toNanos(), maximumSize, ticker);
+        }
+    }
+}
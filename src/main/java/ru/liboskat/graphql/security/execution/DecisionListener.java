@@ -0,0 +1,29 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.execution.SecurityInstrumentation.OperationType;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+/**
+ * Получатель решений {@link SecurityInstrumentation} о доступе.
+ * Вызывается синхронно в потоке выполнения запроса после каждой проверки правила,
+ * поэтому реализации должны быть потокобезопасными и не блокировать
+ */
+public interface DecisionListener {
+    /**
+     * Получатель, который игнорирует решения
+     */
+    DecisionListener NO_OP = (target, operationType, allowed, fingerprint, operationName) -> {
+    };
+
+    /**
+     * Вызывается после проверки правила
+     *
+     * @param target        объект применения правила
+     * @param operationType тип операции
+     * @param allowed       разрешен ли доступ
+     * @param fingerprint   отпечаток пользователя из {@link SecurityContext}, может быть null
+     * @param operationName название операции, может быть null
+     */
+    void onDecision(RuleTargetInfo target, OperationType operationType, boolean allowed,
+                    Object fingerprint, String operationName);
+}
@@ -0,0 +1,291 @@
+package ru.liboskat.graphql.security.execution;
+
+import graphql.schema.*;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.InputObjectTypeRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.ObjectTypeRules;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TokenExpressionRule;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+import ru.liboskat.graphql.security.storage.token.Token;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Поставщик представлений схемы, в которых скрыты поля, недоступные контексту безопасности
+ * (см. {@link AccessRuleFieldVisibility}). Интроспекция и валидация запроса к представлению
+ * не видят скрытых полей, при этом правила не вычисляются заново для каждого запроса:
+ * представление строится один раз для каждого набора значений переменных контекста,
+ * используемых в правилах, зависящих только от контекста (например, для каждого набора ролей), и кешируется.
+ * Запросы к представлению по-прежнему должны проверяться {@link SecurityInstrumentation}
+ */
+public class FilteredSchemaProvider {
+    private final SchemaBoundAccessRuleStorage rules;
+    private final TokenExpressionSolverImpl solver;
+    private final Clock clock;
+    private final Function<SecurityContext, Object> viewKey;
+    private final BoundedMap<Object, View> views;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    private FilteredSchemaProvider(SchemaBoundAccessRuleStorage rules, Function<SecurityContext, Object> viewKey,
+                                   int maximumSize, Clock clock) {
+        this.rules = rules;
+        this.solver = new TokenExpressionSolverImpl();
+        this.clock = clock;
+        this.viewKey = viewKey != null ? viewKey : contextValuesKey(collectContextFieldNames(rules));
+        this.views = new BoundedMap<>(maximumSize, null);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Возвращает представление схемы для контекста безопасности
+     *
+     * @param context контекст безопасности, может быть null
+     * @return схема, в которой скрыты недоступные контексту поля
+     */
+    public GraphQLSchema getSchema(SecurityContext context) {
+        return getView(context).schema;
+    }
+
+    /**
+     * Возвращает видимость полей схемы для контекста безопасности
+     *
+     * @param context контекст безопасности, может быть null
+     * @return видимость полей для контекста
+     */
+    public AccessRuleFieldVisibility getFieldVisibility(SecurityContext context) {
+        return getView(context).visibility;
+    }
+
+    private View getView(SecurityContext context) {
+        Object key = viewKey.apply(context);
+        //для контекста без ключа представление строится без сохранения
+        if (key == null) {
+            misses.increment();
+            return createView(context);
+        }
+        View view = views.get(key);
+        if (view != null) {
+            hits.increment();
+            return view;
+        }
+        misses.increment();
+        return views.computeIfAbsent(key, ignored -> createView(context));
+    }
+
+    private View createView(SecurityContext context) {
+        AccessRuleFieldVisibility visibility =
+                AccessRuleFieldVisibility.of(rules, context, solver, ZonedDateTime.now(clock));
+        GraphQLSchema schema = rules.getSchema();
+        GraphQLCodeRegistry codeRegistry = schema.getCodeRegistry()
+                .transform(builder -> builder.fieldVisibility(visibility));
+        return new View(schema.transform(builder -> builder.codeRegistry(codeRegistry)), visibility);
+    }
+
+    /**
+     * Удаляет все сохраненные представления
+     */
+    public void invalidateAll() {
+        views.clear();
+    }
+
+    /**
+     * @return текущее число сохраненных представлений
+     */
+    public int size() {
+        return views.size();
+    }
+
+    /**
+     * @return число запросов представления, найденного среди сохраненных
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return число построенных представлений
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @param rules хранилище правил, привязанное к схеме
+     * @return названия переменных контекста, используемых в правилах, зависящих только от контекста
+     */
+    private static List<String> collectContextFieldNames(SchemaBoundAccessRuleStorage rules) {
+        Set<String> names = new LinkedHashSet<>();
+        for (GraphQLNamedType type : rules.getSchema().getAllTypesAsList()) {
+            if (type instanceof GraphQLObjectType) {
+                ObjectTypeRules typeRules = rules.getObjectTypeRules((GraphQLObjectType) type);
+                addContextFieldNames(names, typeRules.getRule());
+                for (GraphQLFieldDefinition field : ((GraphQLObjectType) type).getFieldDefinitions()) {
+                    addContextFieldNames(names, typeRules.getFieldRules(field).getRule());
+                }
+            } else if (type instanceof GraphQLInputObjectType) {
+                InputObjectTypeRules typeRules = rules.getInputObjectTypeRules((GraphQLInputObjectType) type);
+                addContextFieldNames(names, typeRules.getRule());
+                for (GraphQLInputObjectField field : ((GraphQLInputObjectType) type).getFieldDefinitions()) {
+                    addContextFieldNames(names, typeRules.getFieldRule(field));
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static void addContextFieldNames(Set<String> names, TokenExpressionRule rule) {
+        if (rule != null) {
+            addContextFieldNames(names, rule.getReadRule());
+            addContextFieldNames(names, rule.getWriteRule());
+        }
+    }
+
+    private static void addContextFieldNames(Set<String> names, TokenExpression expression) {
+        //выражения с аргументами или датой / временем не влияют на видимость полей
+        if (!DecisionCache.dependsOnlyOnContext(expression)) {
+            return;
+        }
+        for (Token token : expression.getTokens()) {
+            if (token instanceof ComparisonToken) {
+                ComparisonToken comparison = (ComparisonToken) token;
+                if (ValueType.GRAPHQL_CONTEXT_FIELD_NAME == comparison.getFirstValueType()) {
+                    names.add((String) comparison.getFirstValue());
+                }
+                if (ValueType.GRAPHQL_CONTEXT_FIELD_NAME == comparison.getSecondValueType()) {
+                    names.add((String) comparison.getSecondValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param contextFieldNames названия переменных контекста
+     * @return функция, возвращающая список значений переменных контекста
+     * или null, если значение по пути не читается
+     */
+    private static Function<SecurityContext, Object> contextValuesKey(List<String> contextFieldNames) {
+        return context -> {
+            List<Object> values = new ArrayList<>(contextFieldNames.size());
+            for (String name : contextFieldNames) {
+                try {
+                    values.add(context != null ? context.get(name) : null);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+            return values;
+        };
+    }
+
+    /**
+     * @param accessRuleStorage хранилище правил
+     * @param schema            исходная схема
+     * @return {@link Builder} этого класса
+     * @throws IllegalArgumentException, если хранилище или схема null
+     */
+    public static FilteredSchemaProvider.Builder newFilteredSchemaProvider(AccessRuleStorage accessRuleStorage,
+                                                                           GraphQLSchema schema) {
+        if (accessRuleStorage == null) {
+            throw new IllegalArgumentException("AccessRuleStorage can't be null");
+        }
+        if (schema == null) {
+            throw new IllegalArgumentException("Schema can't be null");
+        }
+        return new Builder(accessRuleStorage, schema);
+    }
+
+    /**
+     * Представление схемы и видимость его полей
+     */
+    private static class View {
+        private final GraphQLSchema schema;
+        private final AccessRuleFieldVisibility visibility;
+
+        View(GraphQLSchema schema, AccessRuleFieldVisibility visibility) {
+            this.schema = schema;
+            this.visibility = visibility;
+        }
+    }
+
+    /**
+     * Класс, используемый для создания {@link FilteredSchemaProvider}
+     */
+    public static class Builder {
+        private final AccessRuleStorage accessRuleStorage;
+        private final GraphQLSchema schema;
+        private Function<SecurityContext, Object> viewKey;
+        private int maximumSize;
+        private Clock clock;
+
+        private Builder(AccessRuleStorage accessRuleStorage, GraphQLSchema schema) {
+            this.accessRuleStorage = accessRuleStorage;
+            this.schema = schema;
+            this.maximumSize = 1000;
+            this.clock = Clock.systemDefaultZone();
+        }
+
+        /**
+         * Устанавливает функцию, возвращающую ключ представления для контекста безопасности.
+         * Контексты с равными ключами должны иметь одинаковую видимость полей,
+         * для контекста с ключом null представление строится без сохранения.
+         * По умолчанию ключ - значения переменных контекста, используемых в правилах, зависящих только от контекста
+         *
+         * @param viewKey функция, возвращающая ключ представления
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если функция null
+         */
+        public Builder viewKey(Function<SecurityContext, Object> viewKey) {
+            if (viewKey == null) {
+                throw new IllegalArgumentException("View key function can't be null");
+            }
+            this.viewKey = viewKey;
+            return this;
+        }
+
+        /**
+         * Устанавливает максимальное число представлений, по умолчанию 1000
+         *
+         * @param maximumSize максимальное число представлений
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число представлений не положительное
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Устанавливает источник текущего момента времени, используемого при решении правил
+         *
+         * @param clock источник текущего момента времени
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если источник null
+         */
+        public Builder clock(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock can't be null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return сконструированный {@link FilteredSchemaProvider}
+         */
+        public FilteredSchemaProvider build() {
+            return new FilteredSchemaProvider(accessRuleStorage.bind(schema), viewKey, maximumSize, clock);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.execution.SecurityMetricsSnapshot.TargetMetrics;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реализация {@link SecurityMetrics} на {@link LongAdder}: запись метрик не блокирует потоки выполнения запросов.
+ * Время проверок доступа операций записывается в гистограмму с корзинами по степеням двойки
+ */
+public class LongAdderSecurityMetrics implements SecurityMetrics {
+    private final Map<RuleTargetInfo, TargetCounters> targets;
+    private final LongAdder[] latencyBuckets;
+    private final LongAdder totalAuthorizationNanos;
+
+    public LongAdderSecurityMetrics() {
+        this.targets = new ConcurrentHashMap<>();
+        this.latencyBuckets = new LongAdder[SecurityMetricsSnapshot.BUCKET_COUNT];
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+        this.totalAuthorizationNanos = new LongAdder();
+    }
+
+    @Override
+    public void recordEvaluation(RuleTargetInfo target, boolean allowed) {
+        TargetCounters counters = countersOf(target);
+        counters.evaluations.increment();
+        if (!allowed) {
+            counters.denials.increment();
+        }
+    }
+
+    @Override
+    public void recordCacheHit(RuleTargetInfo target) {
+        countersOf(target).cacheHits.increment();
+    }
+
+    @Override
+    public void recordOperation(long authorizationNanos) {
+        latencyBuckets[SecurityMetricsSnapshot.bucketOf(authorizationNanos)].increment();
+        totalAuthorizationNanos.add(Math.max(0, authorizationNanos));
+    }
+
+    /**
+     * Возвращает снимок метрик. Значения разных счетчиков читаются не атомарно относительно друг друга
+     *
+     * @return снимок текущих значений метрик
+     */
+    @Override
+    public SecurityMetricsSnapshot snapshot() {
+        Map<RuleTargetInfo, TargetMetrics> targetMetrics = new HashMap<>();
+        targets.forEach((target, counters) -> targetMetrics.put(target, new TargetMetrics(
+                counters.evaluations.sum(), counters.denials.sum(), counters.cacheHits.sum())));
+        long[] buckets = new long[latencyBuckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = latencyBuckets[i].sum();
+        }
+        return new SecurityMetricsSnapshot(targetMetrics, buckets, totalAuthorizationNanos.sum());
+    }
+
+    /**
+     * Сбрасывает все метрики
+     */
+    public void reset() {
+        targets.clear();
+        for (LongAdder bucket : latencyBuckets) {
+            bucket.reset();
+        }
+        totalAuthorizationNanos.reset();
+    }
+
+    private TargetCounters countersOf(RuleTargetInfo target) {
+        TargetCounters counters = targets.get(target);
+        return counters != null ? counters : targets.computeIfAbsent(target, key -> new TargetCounters());
+    }
+
+    /**
+     * Счетчики правила одного объекта применения
+     */
+    private static class TargetCounters {
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder denials = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+    }
+}
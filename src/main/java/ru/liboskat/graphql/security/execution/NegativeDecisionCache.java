@@ -0,0 +1,294 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.exceptions.AuthException;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Кеш запретов доступа к операциям. Запоминает, что операция пользователя была запрещена, и ошибку запрета,
+ * чтобы повторное выполнение той же операции отклонялось в начале выполнения без обхода выборки.
+ * Ключ кеша - хеш SHA-256 текста запроса, названия операции и значений переменных с ключами по порядку,
+ * а также отпечаток пользователя ({@link SecurityContext#getFingerprint()}), поэтому записи не хранят текст запросов. Операции пользователей без отпечатка не кешируются.
+ * Записи хранятся не дольше заданного короткого времени жизни, поэтому изменения правил, контекста
+ * или текущего момента времени учитываются не позже чем через это время. Размер кеша ограничен
+ */
+public class NegativeDecisionCache {
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final BoundedMap<Key, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder denials;
+
+    private NegativeDecisionCache(long ttlNanos, int maximumSize, LongSupplier ticker) {
+        this.ttlNanos = ttlNanos;
+        this.ticker = ticker;
+        this.entries = new BoundedMap<>(maximumSize, entry -> entry.expiresAt);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.denials = new LongAdder();
+    }
+
+    /**
+     * Возвращает ключ операции
+     *
+     * @param query         текст запроса
+     * @param operationName название операции, может быть null
+     * @param variables     значения переменных
+     * @param context       контекст безопасности, может быть null
+     * @return ключ операции или null, если операция не кешируется
+     */
+    Key keyOf(String query, String operationName, Map<String, Object> variables, SecurityContext context) {
+        if (query == null || context == null || !context.getFingerprint().isPresent()) {
+            return null;
+        }
+        return new Key(digest(query, operationName, variables), context.getFingerprint().get());
+    }
+
+    /**
+     * @param key ключ операции
+     * @return запись недавнего запрета операции или null, если операция не запрещалась
+     */
+    Entry getDenial(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (ticker.getAsLong() - entry.expiresAt < 0) {
+                hits.increment();
+                return entry;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Запоминает запрет операции
+     *
+     * @param key    ключ операции
+     * @param denial ошибка запрета
+     * @param target объект применения запретившего правила, может быть null
+     */
+    void putDenial(Key key, AuthException denial, RuleTargetInfo target) {
+        long tick = ticker.getAsLong();
+        entries.put(key, new Entry(denial, target, tick + ttlNanos), tick);
+        denials.increment();
+    }
+
+    /**
+     * Удаляет все записи кеша, например после изменения правил
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return текущее число записей кеша
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return число операций, отклоненных по сохраненному запрету
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return число кешируемых операций, для которых сохраненного запрета не было
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return число сохраненных запретов
+     */
+    public long getDenialCount() {
+        return denials.sum();
+    }
+
+    /**
+     * @param query         текст запроса
+     * @param operationName название операции, может быть null
+     * @param variables     значения переменных
+     * @return хеш SHA-256 операции
+     */
+    private static byte[] digest(String query, String operationName, Map<String, Object> variables) {
+        StringBuilder operation = new StringBuilder(query.length() + 64);
+        appendCanonical(operation, query);
+        appendCanonical(operation, operationName);
+        appendCanonical(operation, variables);
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(operation.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Добавляет однозначное представление значения: тип, длину и содержимое, ключи отображений по порядку
+     *
+     * @param builder строка представления
+     * @param value   значение, может быть null
+     */
+    private static void appendCanonical(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append('n');
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, item) -> sorted.put(String.valueOf(key), item));
+            builder.append('m').append(sorted.size()).append(':');
+            sorted.forEach((key, item) -> {
+                appendCanonical(builder, key);
+                appendCanonical(builder, item);
+            });
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            builder.append('l').append(collection.size()).append(':');
+            collection.forEach(item -> appendCanonical(builder, item));
+        } else {
+            String string = value.toString();
+            builder.append(value.getClass().getName()).append(':').append(string.length()).append(':').append(string);
+        }
+    }
+
+    /**
+     * @return {@link Builder} этого класса
+     */
+    public static NegativeDecisionCache.Builder newNegativeDecisionCache() {
+        return new Builder();
+    }
+
+    /**
+     * Ключ операции пользователя: хеш операции и отпечаток пользователя
+     */
+    static class Key {
+        private final byte[] digest;
+        private final Object principal;
+        private final int hash;
+
+        Key(byte[] digest, Object principal) {
+            this.digest = digest;
+            this.principal = principal;
+            this.hash = 31 * Arrays.hashCode(digest) + principal.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return hash == that.hash &&
+                    Arrays.equals(digest, that.digest) &&
+                    principal.equals(that.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Запись кеша с ошибкой запрета, объектом применения запретившего правила и временем устаревания
+     */
+    static class Entry {
+        private final AuthException denial;
+        private final RuleTargetInfo target;
+        private final long expiresAt;
+
+        Entry(AuthException denial, RuleTargetInfo target, long expiresAt) {
+            this.denial = denial;
+            this.target = target;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return ошибка запрета
+         */
+        AuthException getDenial() {
+            return denial;
+        }
+
+        /**
+         * @return объект применения запретившего правила или null, если операция запрещена не правилом
+         */
+        RuleTargetInfo getTarget() {
+            return target;
+        }
+    }
+
+    /**
+     * Класс, используемый для создания {@link NegativeDecisionCache}
+     */
+    public static class Builder {
+        private Duration ttl;
+        private int maximumSize;
+        private LongSupplier ticker;
+
+        private Builder() {
+            this.ttl = Duration.ofSeconds(5);
+            this.maximumSize = 10_000;
+            this.ticker = System::nanoTime;
+        }
+
+        /**
+         * Устанавливает время жизни записи, по умолчанию 5 секунд
+         *
+         * @param ttl время жизни записи
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если время жизни null или не положительное
+         */
+        public Builder ttl(Duration ttl) {
+            if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+                throw new IllegalArgumentException("TTL must be positive");
+            }
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Устанавливает максимальное число записей, по умолчанию 10000
+         *
+         * @param maximumSize максимальное число записей
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если число записей не положительное
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Устанавливает источник времени в наносекундах
+         *
+         * @param ticker источник времени в наносекундах
+         * @return текущий {@link Builder}
+         */
+        Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @return сконструированный {@link NegativeDecisionCache}
+         */
+        public NegativeDecisionCache build() {
+            return new NegativeDecisionCache(ttl.toNanos(), maximumSize, ticker);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.storage.TokenExpression;
+
+/**
+ * Результат частичного решения выражения {@link TokenExpression} относительно контекста безопасности.
+ * Содержит либо константный результат, либо остаточное выражение, зависящее от аргументов поля
+ */
+public class PartiallySolvedExpression {
+    /**
+     * Выражение, истинное при любых аргументах
+     */
+    public static final PartiallySolvedExpression TRUE = new PartiallySolvedExpression(true, null);
+    /**
+     * Выражение, ложное при любых аргументах
+     */
+    public static final PartiallySolvedExpression FALSE = new PartiallySolvedExpression(false, null);
+
+    private final boolean value;
+    private final TokenExpression residual;
+
+    private PartiallySolvedExpression(boolean value, TokenExpression residual) {
+        this.value = value;
+        this.residual = residual;
+    }
+
+    /**
+     * @param value константный результат
+     * @return {@link #TRUE} или {@link #FALSE}
+     */
+    static PartiallySolvedExpression constant(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * @param residual остаточное выражение в обратной польской записи
+     * @return частично решенное выражение с остаточным выражением
+     */
+    static PartiallySolvedExpression residual(TokenExpression residual) {
+        return new PartiallySolvedExpression(false, residual);
+    }
+
+    /**
+     * @return true, если результат не зависит от аргументов поля
+     */
+    public boolean isConstant() {
+        return residual == null;
+    }
+
+    /**
+     * @return константный результат, имеет смысл только если {@link #isConstant()}
+     */
+    public boolean getValue() {
+        return value;
+    }
+
+    /**
+     * @return остаточное выражение, зависящее от аргументов поля, или null, если результат константный
+     */
+    public TokenExpression getResidual() {
+        return residual;
+    }
+
+    @Override
+    public String toString() {
+        return isConstant() ? String.valueOf(value) : residual.toString();
+    }
+}
@@ -1,18 +1,32 @@
 package ru.liboskat.graphql.security.execution;
 
+import ru.liboskat.graphql.security.storage.ContextKeyLayout;
+
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import static ru.liboskat.graphql.security.utils.StringUtils.isNullOrEmpty;
 
 /**
- * Используется для хранения контекста, используемого при проверке выражений контроля доступа
+ * Используется для хранения контекста, используемого при проверке выражений контроля доступа.
+ * Выражения могут обращаться к вложенным значениям переменных по пути вида user.org.id, где значение
+ * переменной - {@link Map}, record или другой объект.
+ * Если контекст построен для {@link ContextKeyLayout}, значения переменных из раскладки хранятся в массиве
+ * и читаются сравнениями по номеру ячейки, остальные переменные хранятся в {@link Map}
  */
 public class SecurityContext {
     private final Map<String, Object> contextFields;
+    private final Object fingerprint;
+    private final ContextKeyLayout layout;
+    private final Object[] slotValues;
 
-    private SecurityContext(Map<String, Object> contextFields) {
+    private SecurityContext(Map<String, Object> contextFields, Object fingerprint,
+                            ContextKeyLayout layout, Object[] slotValues) {
         this.contextFields = contextFields;
+        this.fingerprint = fingerprint;
+        this.layout = layout;
+        this.slotValues = slotValues;
     }
 
     /**
@@ -22,14 +36,69 @@ public class SecurityContext {
      * @return значение переменной контекста, или null если нет переменной с таким именем
      */
     public Object get(String key) {
+        return get(-1, key);
+    }
+
+    /**
+     * Возвращает значение переменной контекста или вложенное значение по пути вида user.org.id.
+     * Переменная контекста, с которой начинается путь, читается по номеру ячейки, если контекст построен
+     * для раскладки, в которой эта ячейка принадлежит переменной, иначе по имени
+     *
+     * @param slot номер ячейки переменной, с которой начинается путь, или -1
+     * @param key  имя переменной контекста или путь к вложенному значению
+     * @return значение, или null если значения нет
+     * @throws IllegalArgumentException, если не удалось получить вложенное значение
+     */
+    Object get(int slot, String key) {
+        if (!ContextPath.isPath(key)) {
+            return getField(slot, key);
+        }
+        ContextPath path = ContextPath.of(key);
+        Object rootValue = getField(slot, path.getRoot());
+        //если переменной, с которой начинается путь, нет, ищем переменную с именем, совпадающим с путем
+        return rootValue != null ? path.resolve(rootValue) : contextFields.get(key);
+    }
+
+    private Object getField(int slot, String key) {
+        if (slot >= 0 && slot < slotValues.length && key.equals(layout.getKey(slot))) {
+            return slotValues[slot];
+        }
+        if (layout != null) {
+            int layoutSlot = layout.getSlot(key);
+            if (layoutSlot >= 0) {
+                return slotValues[layoutSlot];
+            }
+        }
         return contextFields.get(key);
     }
 
+    /**
+     * Возвращает отпечаток пользователя, используемый как ключ {@link DecisionCache}
+     *
+     * @return {@link Optional} с отпечатком или {@link Optional#empty()}, если отпечаток не задан
+     */
+    public Optional<Object> getFingerprint() {
+        return Optional.ofNullable(fingerprint);
+    }
+
     /**
      * @return возвращает {@link Builder} для этого класса
      */
     public static SecurityContext.Builder newSecurityContext() {
-        return new Builder();
+        return new Builder(null);
+    }
+
+    /**
+     * @param layout раскладка переменных контекста, полученная из {@link
+     *               ru.liboskat.graphql.security.storage.AccessRuleStorage#getContextKeyLayout()}
+     * @return возвращает {@link Builder} для этого класса, хранящий переменные из раскладки в массиве
+     * @throws IllegalArgumentException, если раскладка null
+     */
+    public static SecurityContext.Builder newSecurityContext(ContextKeyLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("ContextKeyLayout can't be null");
+        }
+        return new Builder(layout);
     }
 
     /**
@@ -37,9 +106,14 @@ public class SecurityContext {
      */
     public static class Builder {
         private final Map<String, Object> contextFields;
+        private final ContextKeyLayout layout;
+        private final Object[] slotValues;
+        private Object fingerprint;
 
-        private Builder() {
+        private Builder(ContextKeyLayout layout) {
             this.contextFields = new HashMap<>();
+            this.layout = layout;
+            this.slotValues = new Object[layout != null ? layout.size() : 0];
         }
 
         /**
@@ -54,7 +128,25 @@ public class SecurityContext {
             if (isNullOrEmpty(key)) {
                 throw new IllegalArgumentException("Key can't be null or empty");
             }
-            contextFields.put(key, value);
+            //переменные из раскладки сохраняем в массив, остальные в Map
+            int slot = layout != null ? layout.getSlot(key) : -1;
+            if (slot >= 0) {
+                slotValues[slot] = value;
+            } else {
+                contextFields.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Устанавливает отпечаток пользователя. Контексты с равными отпечатками должны содержать
+         * одинаковые значения переменных, так как результаты проверки правил для них кешируются совместно
+         *
+         * @param fingerprint отпечаток пользователя, например идентификатор пользователя и его ролей
+         * @return текущий {@link Builder}
+         */
+        public Builder fingerprint(Object fingerprint) {
+            this.fingerprint = fingerprint;
             return this;
         }
 
@@ -62,7 +154,7 @@ public class SecurityContext {
          * @return {@link SecurityContext} с переданными переменными
          */
         public SecurityContext build() {
-            return new SecurityContext(contextFields);
+            return new SecurityContext(contextFields, fingerprint, layout, slotValues.clone());
         }
     }
 }
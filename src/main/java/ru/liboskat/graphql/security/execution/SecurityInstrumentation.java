@@ -1,38 +1,106 @@
 package ru.liboskat.graphql.security.execution;
 
 import graphql.ExecutionResult;
+import graphql.GraphQLError;
 import graphql.execution.AbortExecutionException;
 import graphql.execution.ExecutionContext;
 import graphql.execution.ExecutionStrategyParameters;
 import graphql.execution.MergedField;
 import graphql.execution.instrumentation.*;
 import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
 import graphql.execution.instrumentation.parameters.InstrumentationExecutionStrategyParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldCompleteParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
 import graphql.language.*;
 import graphql.schema.*;
+import graphql.schema.visibility.GraphqlFieldVisibility;
 import graphql.util.LogKit;
 import org.slf4j.Logger;
+import ru.liboskat.graphql.security.events.AuthorizationCheckRecording;
+import ru.liboskat.graphql.security.events.SecurityEvents;
 import ru.liboskat.graphql.security.exceptions.AuthException;
 import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.RuleDecisionDiagram;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.FieldRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.InputObjectTypeRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.ObjectTypeRules;
 import ru.liboskat.graphql.security.storage.TokenExpression;
 import ru.liboskat.graphql.security.storage.TokenExpressionRule;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
 
 import java.lang.reflect.Field;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
- * Реализация интерфейса {@link Instrumentation}, позволяющая производить проверки контроля доступа
+ * Реализация интерфейса {@link Instrumentation}, позволяющая производить проверки контроля доступа.
+ * Для подписок проверки выполняются при подписке, а для каждого события повторно используются их результаты,
+ * пока не наступит момент времени, после которого результат зависящего от времени правила может измениться
  */
 public class SecurityInstrumentation extends SimpleInstrumentation {
     private static final Logger logNotSafe = LogKit.getNotPrivacySafeLogger(SecurityInstrumentation.class);
+    /**
+     * Максимальная глубина вложенности проверяемых значений входных объектов и списков
+     */
+    private static final int MAX_INPUT_DEPTH = 100;
+    /**
+     * Максимальное число исходных схем, для которых хранятся привязанные хранилища правил.
+     * Представления {@link FilteredSchemaProvider} используют привязку своей исходной схемы и не учитываются
+     */
+    private static final int MAX_BOUND_SCHEMAS = 64;
 
     private final AccessRuleStorage accessRuleStorage;
-    private final TokenExpressionSolver tokenExpressionSolver;
+    private final TokenExpressionSolverImpl tokenExpressionSolver;
+    /**
+     * Кеш результатов проверки правил между запросами, может быть null
+     */
+    private final DecisionCache decisionCache;
+    /**
+     * Исходная схема -> хранилище правил, привязанное к схеме
+     */
+    private final BoundedMap<GraphQLSchema, SchemaBoundAccessRuleStorage> schemaBoundStorages;
+    /**
+     * Источник текущего момента времени и часового пояса запроса
+     */
+    private final Clock clock;
+    /**
+     * Проверять ли правила обходом диаграммы решений {@link AccessRuleStorage#getDecisionDiagram()}
+     */
+    private final boolean useDecisionDiagram;
+    /**
+     * Метрики проверок доступа
+     */
+    private final SecurityMetrics metrics;
+    /**
+     * Записываются ли метрики, если нет - время проверок не измеряется
+     */
+    private final boolean metricsEnabled;
+    /**
+     * Получатель решений о доступе
+     */
+    private final DecisionListener decisionListener;
+    /**
+     * Кеш запретов доступа к операциям, может быть null
+     */
+    private final NegativeDecisionCache negativeDecisionCache;
 
-    private SecurityInstrumentation(AccessRuleStorage accessRuleStorage) {
+    private SecurityInstrumentation(AccessRuleStorage accessRuleStorage, DecisionCache decisionCache, Clock clock,
+                                    boolean useDecisionDiagram, SecurityMetrics metrics,
+                                    DecisionListener decisionListener, NegativeDecisionCache negativeDecisionCache) {
         this.accessRuleStorage = accessRuleStorage;
         this.tokenExpressionSolver = new TokenExpressionSolverImpl();
+        this.decisionCache = decisionCache;
+        this.clock = clock;
+        this.useDecisionDiagram = useDecisionDiagram;
+        this.metrics = metrics;
+        this.metricsEnabled = metrics != SecurityMetrics.NO_OP;
+        this.decisionListener = decisionListener;
+        this.negativeDecisionCache = negativeDecisionCache;
+        this.schemaBoundStorages = new BoundedMap<>(MAX_BOUND_SCHEMAS, null);
     }
 
     /**
@@ -43,6 +111,21 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
         return new SecurityInstrumentationState();
     }
 
+    /**
+     * Выполняется перед парсингом запроса. Сохраняет текст запроса для ключа {@link NegativeDecisionCache}
+     *
+     * @param parameters параметры выполнения запроса
+     * @return результат работы родительского метода
+     */
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters) {
+        if (negativeDecisionCache != null) {
+            SecurityInstrumentationState state = parameters.getInstrumentationState();
+            state.query = parameters.getQuery();
+        }
+        return super.beginExecution(parameters);
+    }
+
     /**
      * Выполняется перед каждым исполнением запроса, после парсинга и валидации.
      * Заполняет {@link SecurityInstrumentationState}, проверяет доступ к схеме
@@ -62,9 +145,35 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
         addOperationTypeToStateOrElseAbortExecution(execContext, state);
         //добавляем контекст в state, если есть
         addSecurityContextToState(execContext.getContext(), state);
+        //сохраняем отпечаток пользователя и название операции для получателя решений
+        state.fingerprint = state.securityContext != null ?
+                state.securityContext.getFingerprint().orElse(null) : null;
+        state.operationName = execContext.getOperationDefinition().getName();
+        //отклоняем операцию, если она недавно была запрещена этому пользователю
+        if (negativeDecisionCache != null) {
+            rejectIfRecentlyDenied(execContext, state);
+        }
+        //добавляем в state правила, привязанные к схеме выполнения, и значения переменных
+        state.rules = getSchemaBoundStorage(execContext.getGraphQLSchema());
+        state.comparisonResults = new byte[state.rules.getComparisonCount()];
+        state.variables = execContext.getVariables();
+        state.subscription = isSubscription(execContext.getOperationDefinition());
+        //фиксируем текущий момент времени, все правила запроса проверяются относительно него
+        state.now = ZonedDateTime.now(clock);
+        if (state.subscription) {
+            state.startRevalidation(state.now);
+        }
         //проверяем правило схемы
         checkSchemaRule(execContext, state);
-        return super.beginExecuteOperation(parameters);
+        if (state.subscription) {
+            //правило схемы проверяется повторно для событий подписки после этого момента
+            state.schemaValidUntil = state.validUntil;
+        }
+        if (!metricsEnabled) {
+            return super.beginExecuteOperation(parameters);
+        }
+        //время проверок записывается после завершения операции, когда проверены все выборки
+        return SimpleInstrumentationContext.whenCompleted((result, throwable) -> recordOperation(state));
     }
 
     /**
@@ -82,19 +191,196 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
 
         //если уже есть ошибки, завершаем работу
         if (state.hasErrors) {
-            throw new AbortExecutionException(execContext.getErrors());
+            throw new StacklessAbortExecutionException(execContext.getErrors());
         }
         //проверяем доступ на основе параметров и состояния
+        ExecutionStrategyParameters execParams = parameters.getExecutionStrategyParameters();
+        checkAccessOrAbort(execContext, state, () -> checkAccess(execParams, state));
+        return super.beginExecutionStrategy(parameters);
+    }
+
+    /**
+     * Выполняется перед получением значения поля. graphql-java не вызывает {@link #beginExecutionStrategy}
+     * для корневой выборки подписки, поэтому ее поле проверяется здесь при подписке
+     *
+     * @param parameters параметры получения значения поля
+     * @return результат работы родительского метода
+     * @throws AbortExecutionException если доступ запрещен
+     */
+    @Override
+    public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters) {
+        SecurityInstrumentationState state = parameters.getInstrumentationState();
+        if (state.subscription && parameters.getExecutionStepInfo().getPath().getLevel() == 1) {
+            ExecutionContext execContext = parameters.getExecutionContext();
+            if (state.hasErrors) {
+                throw new StacklessAbortExecutionException(execContext.getErrors());
+            }
+            MergedField field = parameters.getEnvironment().getMergedField();
+            checkAccessOrAbort(execContext, state, () -> checkAccess(
+                    execContext.getGraphQLSchema().getSubscriptionType(), Collections.singletonList(field), state));
+        }
+        return super.beginFieldFetch(parameters);
+    }
+
+    /**
+     * Выполняется перед завершением значения поля. Для корневого поля подписки это происходит при каждом событии:
+     * graphql-java не вызывает для события {@link #beginExecutionStrategy}, поэтому здесь правило схемы
+     * и корневое поле проверяются повторно, если момент изменения результата их правил по времени наступил
+     *
+     * @param parameters параметры завершения значения поля
+     * @return результат работы родительского метода
+     * @throws AbortExecutionException если доступ к событию запрещен, поток событий завершается с ошибкой
+     */
+    @Override
+    public InstrumentationContext<ExecutionResult> beginFieldComplete(InstrumentationFieldCompleteParameters parameters) {
+        SecurityInstrumentationState state = parameters.getInstrumentationState();
+        ExecutionStrategyParameters execParams = parameters.getExecutionStrategyParameters();
+        if (state.subscription && execParams.getPath().getLevel() == 1) {
+            revalidateSubscriptionEvent(parameters.getExecutionContext(), execParams.getField(), state);
+        }
+        return super.beginFieldComplete(parameters);
+    }
+
+    /**
+     * Проверяет доступ, при запрете сохраняет ошибку и прерывает выполнение запроса
+     *
+     * @param execContext контекст выполнения запроса
+     * @param state       состояние
+     * @param check       проверка доступа
+     * @throws AbortExecutionException если доступ запрещен
+     */
+    private void checkAccessOrAbort(ExecutionContext execContext, SecurityInstrumentationState state,
+                                    Runnable check) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
         try {
-            checkAccess(parameters.getExecutionStrategyParameters(), state);
+            check.run();
         } catch (AuthException e) {
             //если доступ запрещен, завершаем работу и сохраняем ошибку
             logNotSafe.warn("Access denied on {}", execContext.getOperationDefinition());
             execContext.addError(e);
             state.hasErrors = true;
-            throw new AbortExecutionException(execContext.getErrors());
+            rememberDenial(state, e);
+            //исключение может завершить выполнение до завершения контекста операции
+            if (metricsEnabled) {
+                state.authorizationNanos += System.nanoTime() - start;
+                recordOperation(state);
+            }
+            throw new StacklessAbortExecutionException(execContext.getErrors());
+        }
+        if (metricsEnabled) {
+            state.authorizationNanos += System.nanoTime() - start;
         }
-        return super.beginExecutionStrategy(parameters);
+    }
+
+    /**
+     * Проверяет правило схемы и корневое поле подписки перед событием
+     *
+     * @param executionContext контекст выполнения события
+     * @param field            корневое поле подписки
+     * @param state            состояние
+     * @throws AbortExecutionException если доступ запрещен
+     */
+    private void revalidateSubscriptionEvent(ExecutionContext executionContext, MergedField field,
+                                             SecurityInstrumentationState state) {
+        try {
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            if (now.toInstant().toEpochMilli() >= state.schemaValidUntil) {
+                state.startRevalidation(now);
+                TokenExpressionRule rule = state.rules.getSchemaRule();
+                if (rule != null) {
+                    checkRule(rule, state, null);
+                }
+                state.schemaValidUntil = state.validUntil;
+            }
+            checkAccess(executionContext.getGraphQLSchema().getSubscriptionType(),
+                    Collections.singletonList(field), state);
+        } catch (AuthException e) {
+            logNotSafe.warn("Access denied on subscription event of {}", executionContext.getOperationDefinition());
+            throw new StacklessAbortExecutionException(Collections.singletonList(e));
+        }
+    }
+
+    /**
+     * Отклоняет операцию, если ее запрет для этого пользователя сохранен в {@link NegativeDecisionCache}
+     *
+     * @param executionContext контекст выполнения запроса
+     * @param state            состояние
+     * @throws AbortExecutionException если операция недавно была запрещена
+     */
+    private void rejectIfRecentlyDenied(ExecutionContext executionContext, SecurityInstrumentationState state) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        OperationDefinition operationDefinition = executionContext.getOperationDefinition();
+        state.negativeCacheKey = negativeDecisionCache.keyOf(state.query, operationDefinition.getName(),
+                executionContext.getVariables(), state.securityContext);
+        NegativeDecisionCache.Entry denial = state.negativeCacheKey != null ?
+                negativeDecisionCache.getDenial(state.negativeCacheKey) : null;
+        if (metricsEnabled) {
+            state.authorizationNanos += System.nanoTime() - start;
+        }
+        if (denial == null) {
+            return;
+        }
+        logNotSafe.debug("Access denied on {} by negative decision cache", operationDefinition);
+        //сохраненный запрет передается в метрики и получателю решений так же, как запрет при проверке правила
+        RuleTargetInfo target = denial.getTarget();
+        if (target != null) {
+            if (metricsEnabled) {
+                metrics.recordEvaluation(target, false);
+            }
+            decisionListener.onDecision(target, state.operationType, false, state.fingerprint, state.operationName);
+        }
+        executionContext.addError(denial.getDenial());
+        state.hasErrors = true;
+        if (metricsEnabled) {
+            recordOperation(state);
+        }
+        throw new StacklessAbortExecutionException(executionContext.getErrors());
+    }
+
+    /**
+     * Сохраняет запрет операции в {@link NegativeDecisionCache}, если операция кешируется
+     *
+     * @param state  состояние
+     * @param denial ошибка запрета
+     */
+    private void rememberDenial(SecurityInstrumentationState state, AuthException denial) {
+        if (state.negativeCacheKey != null) {
+            negativeDecisionCache.putDenial(state.negativeCacheKey, denial, state.deniedTarget);
+        }
+    }
+
+    /**
+     * Записывает время проверок доступа операции в метрики, если оно еще не записано
+     *
+     * @param state состояние
+     */
+    private void recordOperation(SecurityInstrumentationState state) {
+        if (!state.operationRecorded) {
+            state.operationRecorded = true;
+            metrics.recordOperation(state.authorizationNanos);
+        }
+    }
+
+    /**
+     * Возвращает хранилище правил, привязанное к схеме. Если хранилище еще не привязано к этой схеме, привязывает.
+     * Для представления схемы, созданного {@link FilteredSchemaProvider}, возвращается хранилище,
+     * привязанное к исходной схеме: типы представления совпадают с типами исходной схемы
+     *
+     * @param schema схема выполнения запроса
+     * @return хранилище правил, привязанное к схеме
+     */
+    private SchemaBoundAccessRuleStorage getSchemaBoundStorage(GraphQLSchema schema) {
+        GraphqlFieldVisibility visibility = schema.getCodeRegistry().getFieldVisibility();
+        GraphQLSchema baseSchema = visibility instanceof AccessRuleFieldVisibility ?
+                ((AccessRuleFieldVisibility) visibility).getBaseSchema() : schema;
+        return schemaBoundStorages.computeIfAbsent(baseSchema, accessRuleStorage::bind);
+    }
+
+    /**
+     * @return число схем, к которым привязано хранилище правил
+     */
+    int getBoundSchemaCount() {
+        return schemaBoundStorages.size();
     }
 
     /**
@@ -112,7 +398,7 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
             logNotSafe.warn("Failed to retrieve operation type on {}", executionContext.getOperationDefinition());
             executionContext.addError(new AuthException("Failed to retrieve operation type"));
             state.hasErrors = true;
-            throw new AbortExecutionException(executionContext.getErrors());
+            throw new StacklessAbortExecutionException(executionContext.getErrors());
         }
         state.operationType = operationTypeOptional.get();
     }
@@ -137,6 +423,15 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
         }
     }
 
+    /**
+     * @param operationDefinition определение операции
+     * @return является ли операция подпиской
+     */
+    private boolean isSubscription(OperationDefinition operationDefinition) {
+        return operationDefinition != null &&
+                OperationDefinition.Operation.SUBSCRIPTION == operationDefinition.getOperation();
+    }
+
     /**
      * Добавляет найденный {@link SecurityContext} в {@link SecurityInstrumentationState}
      *
@@ -208,16 +503,28 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      * @throws AbortExecutionException если доступ запрещен
      */
     private void checkSchemaRule(ExecutionContext executionContext, SecurityInstrumentationState state) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
         try {
             //если правило есть, проверяем
-            accessRuleStorage.getSchemaRule()
-                    .ifPresent(rule -> checkRule(state.operationType, rule, state.securityContext, null));
+            TokenExpressionRule rule = state.rules.getSchemaRule();
+            if (rule != null) {
+                checkRule(rule, state, null);
+            }
         } catch (AuthException e) {
             //доступ запрещен -> сохраняем информацию, выбрасываем исключение
             logNotSafe.warn("Access denied on {}", executionContext.getOperationDefinition());
             executionContext.addError(e);
             state.hasErrors = true;
-            throw new AbortExecutionException(executionContext.getErrors());
+            rememberDenial(state, e);
+            //контекст операции не будет создан, поэтому время проверок записывается сразу
+            if (metricsEnabled) {
+                state.authorizationNanos += System.nanoTime() - start;
+                recordOperation(state);
+            }
+            throw new StacklessAbortExecutionException(executionContext.getErrors());
+        }
+        if (metricsEnabled) {
+            state.authorizationNanos += System.nanoTime() - start;
         }
     }
 
@@ -230,35 +537,67 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      */
     private void checkAccess(ExecutionStrategyParameters execParams,
                              SecurityInstrumentationState state) {
-        OperationType operationType = state.operationType;
-        SecurityContext securityContext = state.securityContext;
-
         //получаем тип объекта, убирая обертку NonNull, и проверяем его
         GraphQLObjectType type = (GraphQLObjectType) execParams.getExecutionStepInfo().getUnwrappedNonNullType();
-        checkObject(type, state);
+        checkAccess(type, execParams.getFields().getSubFields().values(), state);
+    }
+
+    /**
+     * Проверяет доступ к объекту и запрашиваемым полям
+     *
+     * @param type   тип объекта
+     * @param fields запрашиваемые поля объекта
+     * @param state  состояние
+     * @throws AuthException если доступ запрещен
+     */
+    private void checkAccess(GraphQLObjectType type, Collection<MergedField> fields,
+                             SecurityInstrumentationState state) {
+        ObjectTypeRules typeRules = state.rules.getObjectTypeRules(type);
+        //если у объекта, его полей, аргументов и входных объектов нет правил, проверять нечего
+        if (!typeRules.hasRules()) {
+            return;
+        }
+        //для подписки выборка проверяется один раз и повторно только после изменения результата правил по времени
+        SelectionKey selectionKey = null;
+        if (state.subscription) {
+            selectionKey = new SelectionKey(type, fields);
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            Long authorizedUntil = state.authorizedSelections.get(selectionKey);
+            if (authorizedUntil != null && now.toInstant().toEpochMilli() < authorizedUntil) {
+                return;
+            }
+            state.startRevalidation(now);
+        }
+        checkObject(type, typeRules, state);
 
         //проходим по запрашиваемым полям: сохраняем входные объекты для проверки, проверяем поля и аргументы
-        Set<GraphQLInput> inputsToCheck = new HashSet<>();
-        execParams.getFields().getSubFields().values()
-                .forEach(mergedField -> processField(inputsToCheck, type, operationType, mergedField, securityContext));
+        Deque<InputValue> inputsToCheck = new ArrayDeque<>();
+        fields.forEach(mergedField -> processField(inputsToCheck, type, typeRules, mergedField, state));
         //проверяем переданные входные объекты
-        inputsToCheck.forEach(input -> checkInput(input, operationType, securityContext, state));
+        if (!inputsToCheck.isEmpty()) {
+            checkInputs(inputsToCheck, state);
+        }
+        if (selectionKey != null) {
+            state.authorizedSelections.put(selectionKey, state.validUntil);
+        }
     }
 
     /**
      * Проверяем доступ к объекту
      *
-     * @param type  тип объекта
-     * @param state состояние
+     * @param type      тип объекта
+     * @param typeRules правила объекта
+     * @param state     состояние
      * @throws AuthException если доступ запрещен
      */
-    private void checkObject(GraphQLObjectType type, SecurityInstrumentationState state) {
-        String typeName = type.getName();
+    private void checkObject(GraphQLObjectType type, ObjectTypeRules typeRules, SecurityInstrumentationState state) {
         //если объект еще не проверен, проверяем и добавляем в список проверенных
-        if (state.isNotCheckedObject(typeName)) {
-            accessRuleStorage.getObjectRule(typeName)
-                    .ifPresent(rule -> checkRule(state.operationType, rule, state.securityContext, null));
-            state.checkedObjects.add(typeName);
+        if (state.isNotCheckedObject(type)) {
+            TokenExpressionRule rule = typeRules.getRule();
+            if (rule != null) {
+                checkRule(rule, state, null);
+            }
+            state.checkedObjects.add(type);
         }
     }
 
@@ -267,18 +606,28 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      *
      * @param inputsToCheck   список проверяемых входных объектов
      * @param parentType      тип родительского объекта
-     * @param operationType   тип операции
+     * @param parentTypeRules правила родительского объекта
      * @param mergedField     поле
-     * @param securityContext контекст безопасности
+     * @param state           состояние
      * @throws AuthException если доступ запрещен
      */
-    private void processField(Set<GraphQLInput> inputsToCheck, GraphQLObjectType parentType, OperationType operationType,
-                              MergedField mergedField, SecurityContext securityContext) {
+    private void processField(Deque<InputValue> inputsToCheck, GraphQLObjectType parentType,
+                              ObjectTypeRules parentTypeRules, MergedField mergedField,
+                              SecurityInstrumentationState state) {
         String fieldName = mergedField.getName();
         GraphQLFieldDefinition fieldDefinition = parentType.getFieldDefinition(fieldName);
+        //поля интроспекции (например __typename) не имеют определения в типе и правил
+        if (fieldDefinition == null) {
+            return;
+        }
+        FieldRules fieldRules = parentTypeRules.getFieldRules(fieldDefinition);
+        //если у поля, его аргументов и входных объектов нет правил, пропускаем поле
+        if (!fieldRules.hasRules()) {
+            return;
+        }
         //проходим по всем полям объекта с таким же названием (например из фрагмента)
         mergedField.getFields().forEach(field -> processSubMergedField(inputsToCheck,
-                field, fieldDefinition, parentType.getName(), operationType, securityContext));
+                field, fieldDefinition, fieldRules, state));
     }
 
     /**
@@ -287,23 +636,22 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      * @param inputsToCheck   список проверяемых входных объектов
      * @param field           описание поля с информацией из запроса
      * @param fieldDefinition определение поля
-     * @param parentTypeName  название родительского типа
-     * @param operationType   тип операции
-     * @param securityContext контекст безопасности
+     * @param fieldRules      правила поля и его аргументов
+     * @param state           состояние
      * @throws AuthException если доступ запрещен
      */
-    private void processSubMergedField(Set<GraphQLInput> inputsToCheck,
+    private void processSubMergedField(Deque<InputValue> inputsToCheck,
                                        graphql.language.Field field, GraphQLFieldDefinition fieldDefinition,
-                                       String parentTypeName, OperationType operationType,
-                                       SecurityContext securityContext) {
+                                       FieldRules fieldRules, SecurityInstrumentationState state) {
         Map<String, String> stringArguments = new HashMap<>();
         //обходим все аргументы поля, проверяем аргумент, заполняем список входных объектов и значения аргументов
         field.getArguments().forEach(arg ->
-                processArgument(inputsToCheck, stringArguments, operationType, parentTypeName,
-                        fieldDefinition, arg, securityContext));
+                processArgument(inputsToCheck, stringArguments, fieldDefinition, fieldRules, arg, state));
         //проверяем доступ к полю в соответствии с сохраненными значениями аргументов
-        accessRuleStorage.getFieldRule(parentTypeName, fieldDefinition.getName())
-                .ifPresent(rule -> checkRule(operationType, rule, securityContext, stringArguments));
+        TokenExpressionRule rule = fieldRules.getRule();
+        if (rule != null) {
+            checkRule(rule, state, stringArguments);
+        }
     }
 
     /**
@@ -311,35 +659,29 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      *
      * @param inputsToCheck   список проверяемых входных объектов
      * @param stringArguments {@link Map} название аргумента -> значение аргумента
-     * @param operationType   тип операции
-     * @param parentTypeName  название родительского типа
      * @param fieldDefinition определение поля
+     * @param fieldRules      правила поля и его аргументов
      * @param argument        аргумент из запроса
-     * @param securityContext контекст безопасности
+     * @param state           состояние
      * @throws AuthException если доступ запрещен
      */
-    private void processArgument(Set<GraphQLInput> inputsToCheck, Map<String, String> stringArguments,
-                                 OperationType operationType, String parentTypeName,
-                                 GraphQLFieldDefinition fieldDefinition, Argument argument,
-                                 SecurityContext securityContext) {
+    private void processArgument(Deque<InputValue> inputsToCheck, Map<String, String> stringArguments,
+                                 GraphQLFieldDefinition fieldDefinition, FieldRules fieldRules,
+                                 Argument argument, SecurityInstrumentationState state) {
         //если аргумент пуст, останавливаем выполнение метода
         if (argument == null || argument.getName() == null || argument.getValue() == null) {
             return;
         }
+        GraphQLArgument argumentDefinition = fieldDefinition.getArgument(argument.getName());
         //проверяем доступ к аргументу
-        accessRuleStorage.getArgumentRule(parentTypeName, fieldDefinition.getName(), argument.getName())
-                .ifPresent(rule -> checkRule(operationType, rule, securityContext, null));
-
-        //получаем тип аргумента
-        GraphQLType argType = fieldDefinition.getArgument(argument.getName()).getType();
-        //если обернут в NonNull, убираем обертку
-        if (argType instanceof GraphQLNonNull) {
-            argType = ((GraphQLNonNull) argType).getWrappedType();
+        TokenExpressionRule rule = fieldRules.getArgumentRule(argumentDefinition);
+        if (rule != null) {
+            checkRule(rule, state, null);
         }
-        Value<?> argValue = argument.getValue();
-        //если тип объект - добавляем в список входных объекты для проверки
-        if (argType instanceof GraphQLInputObjectType && argValue instanceof ObjectValue) {
-            inputsToCheck.add(new GraphQLInput((ObjectValue) argValue, (GraphQLInputObjectType) argType));
+
+        //если тип аргумента содержит входные объекты с правилами, добавляем значение в список для проверки
+        if (fieldRules.hasInputRules(argumentDefinition)) {
+            inputsToCheck.add(new InputValue(argument.getValue(), argumentDefinition.getType(), 0));
         }
         //если значение аргумента - String, добавляем аргумент в Map - название аргумента -> значение аргумента
         if (argument.getValue() instanceof StringValue) {
@@ -349,38 +691,98 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
 
 
     /**
-     * Проверяет входной объект и его поля
+     * Проверяет значения входных объектов и списков входных объектов, в том числе переданные через переменные.
+     * Обход выполняется итеративно, каждое значение проверяется один раз, правила входных объектов и их полей
+     * проверяются один раз за запрос
      *
-     * @param input         входной объект
-     * @param operationType тип операции
-     * @param context       контекст безопасности
+     * @param inputsToCheck очередь проверяемых значений
      * @param state         состояние
-     * @throws AuthException если доступ запрещен
+     * @throws AuthException если доступ запрещен или превышена глубина вложенности
      */
-    private void checkInput(GraphQLInput input, OperationType operationType, SecurityContext context,
-                            SecurityInstrumentationState state) {
-        GraphQLInputObjectType type = input.type;
+    private void checkInputs(Deque<InputValue> inputsToCheck, SecurityInstrumentationState state) {
+        Set<Object> visitedValues = Collections.newSetFromMap(new IdentityHashMap<>());
+        InputValue input;
+        while ((input = inputsToCheck.poll()) != null) {
+            if (input.depth > MAX_INPUT_DEPTH) {
+                throw new AuthException("Input value nesting depth exceeds " + MAX_INPUT_DEPTH);
+            }
+            //если значение передано через переменную, берем значение переменной
+            Object value = input.value;
+            if (value instanceof VariableReference) {
+                value = state.variables.get(((VariableReference) value).getName());
+            }
+            if (value == null || value instanceof NullValue) {
+                continue;
+            }
+            //одиночное значение на месте списка считается списком из одного элемента
+            GraphQLType type = GraphQLTypeUtil.unwrapNonNull(input.type);
+            while (type instanceof GraphQLList && !isListValue(value)) {
+                type = GraphQLTypeUtil.unwrapNonNull(((GraphQLList) type).getWrappedType());
+            }
+            //пропускаем уже проверенные значения
+            if (!visitedValues.add(value)) {
+                continue;
+            }
+            if (type instanceof GraphQLList) {
+                //добавляем элементы списка в очередь
+                GraphQLType elementType = ((GraphQLList) type).getWrappedType();
+                Iterable<?> elements = value instanceof ArrayValue ?
+                        ((ArrayValue) value).getValues() : (Iterable<?>) value;
+                for (Object element : elements) {
+                    inputsToCheck.add(new InputValue(element, elementType, input.depth + 1));
+                }
+            } else if (type instanceof GraphQLInputObjectType) {
+                checkInputObject(inputsToCheck, (GraphQLInputObjectType) type, value, input.depth, state);
+            }
+        }
+    }
 
-        //проверяем доступ к входному объекту
-        checkInputTypeRule(operationType, context, state, type);
+    /**
+     * @param value значение
+     * @return является ли значение списком
+     */
+    private boolean isListValue(Object value) {
+        return value instanceof ArrayValue || value instanceof Iterable;
+    }
 
-        //получаем все непустые поля входного объекта
-        List<ObjectField> objectFields = input.value.getObjectFields().stream()
-                .filter(this::notEmpty)
-                .collect(Collectors.toList());
+    /**
+     * Проверяет входной объект и его поля, добавляет значения полей, содержащих входные объекты с правилами,
+     * в очередь проверки
+     *
+     * @param inputsToCheck очередь проверяемых значений
+     * @param type          тип входного объекта
+     * @param value         значение входного объекта ({@link ObjectValue} или {@link Map} значения переменной)
+     * @param depth         глубина вложенности значения
+     * @param state         состояние
+     * @throws AuthException если доступ запрещен
+     */
+    private void checkInputObject(Deque<InputValue> inputsToCheck, GraphQLInputObjectType type, Object value,
+                                  int depth, SecurityInstrumentationState state) {
+        InputObjectTypeRules typeRules = state.rules.getInputObjectTypeRules(type);
+        //если у входного объекта, его полей и вложенных входных объектов нет правил, пропускаем его значение
+        if (!typeRules.hasRules()) {
+            return;
+        }
 
-        //проверяем правила полей входного объекта
-        objectFields.forEach(field -> checkInputFieldRule(operationType, context, type.getName(), field));
+        //проверяем доступ к входному объекту
+        checkInputTypeRule(state, type, typeRules);
 
-        //проверяем все типы полей, если они являются входными объектами
-        objectFields.stream()
-                //пытаемся получить входной объект из поля
-                .map(field -> getGraphQLInputFromInputField(type.getField(field.getName()), field))
-                //убираем неудавшиеся
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                //проверяем входные объекты
-                .forEach(inputObject -> checkInput(inputObject, operationType, context, state));
+        //проверяем непустые поля входного объекта
+        if (value instanceof ObjectValue) {
+            for (ObjectField field : ((ObjectValue) value).getObjectFields()) {
+                if (notEmpty(field)) {
+                    processInputField(inputsToCheck, typeRules, type.getField(field.getName()), field.getValue(),
+                            depth, state);
+                }
+            }
+        } else if (value instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+                if (field.getKey() instanceof String && field.getValue() != null) {
+                    processInputField(inputsToCheck, typeRules, type.getField((String) field.getKey()),
+                            field.getValue(), depth, state);
+                }
+            }
+        }
     }
 
     /**
@@ -392,74 +794,85 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
     }
 
     /**
-     * Проверяет тип входного объекта, если он еще не проверен
+     * Проверяет поле входного объекта, если оно еще не проверено, и добавляет его значение в очередь проверки,
+     * если тип поля содержит входные объекты с правилами
      *
-     * @param operationType тип операции
-     * @param context       контекст безопасности
-     * @param state         состояние
-     * @param type          тип объекта
+     * @param inputsToCheck   очередь проверяемых значений
+     * @param parentTypeRules правила родительского входного объекта
+     * @param fieldDefinition определение поля входного объекта
+     * @param fieldValue      значение поля
+     * @param depth           глубина вложенности родительского объекта
+     * @param state           состояние
      * @throws AuthException если доступ запрещен
      */
-    private void checkInputTypeRule(OperationType operationType, SecurityContext context,
-                                    SecurityInstrumentationState state,
-                                    GraphQLInputObjectType type) {
-        String typeName = type.getName();
-        //проверяем тип входного объекта, если он еще не проверен, и добавляем в список проверенных
-        if (state.isNotCheckedInput(typeName)) {
-            accessRuleStorage.getInputObjectRule(typeName)
-                    .ifPresent(rule -> checkRule(operationType, rule, context, null));
-            state.checkedInputs.add(typeName);
+    private void processInputField(Deque<InputValue> inputsToCheck, InputObjectTypeRules parentTypeRules,
+                                   GraphQLInputObjectField fieldDefinition, Object fieldValue, int depth,
+                                   SecurityInstrumentationState state) {
+        if (fieldDefinition == null) {
+            return;
+        }
+        //правило поля зависит только от контекста, поэтому проверяем его один раз за запрос
+        if (state.checkedInputFields.add(fieldDefinition)) {
+            checkInputFieldRule(state, parentTypeRules, fieldDefinition);
+        }
+        GraphQLType fieldType = GraphQLTypeUtil.unwrapAll(fieldDefinition.getType());
+        if (fieldType instanceof GraphQLInputObjectType &&
+                state.rules.getInputObjectTypeRules((GraphQLInputObjectType) fieldType).hasRules()) {
+            inputsToCheck.add(new InputValue(fieldValue, fieldDefinition.getType(), depth + 1));
         }
     }
 
     /**
-     * Проверяет поле входного объекта
+     * Проверяет тип входного объекта, если он еще не проверен
      *
-     * @param operationType  тип операции
-     * @param context        контекст безопасности
-     * @param parentTypeName название родительского типа
-     * @param field          название поля
+     * @param state     состояние
+     * @param type      тип объекта
+     * @param typeRules правила входного объекта
      * @throws AuthException если доступ запрещен
      */
-    private void checkInputFieldRule(OperationType operationType, SecurityContext context,
-                                     String parentTypeName, ObjectField field) {
-        accessRuleStorage.getInputFieldRule(parentTypeName, field.getName())
-                .ifPresent(rule -> checkRule(operationType, rule, context, null));
+    private void checkInputTypeRule(SecurityInstrumentationState state,
+                                    GraphQLInputObjectType type, InputObjectTypeRules typeRules) {
+        //проверяем тип входного объекта, если он еще не проверен, и добавляем в список проверенных
+        if (state.isNotCheckedInput(type)) {
+            TokenExpressionRule rule = typeRules.getRule();
+            if (rule != null) {
+                checkRule(rule, state, null);
+            }
+            state.checkedInputs.add(type);
+        }
     }
 
     /**
-     * Возвращает {@link Optional} с входным объектом - типом поля входного объекта
+     * Проверяет поле входного объекта
      *
-     * @param fieldDef определение входного поля
-     * @param field    значение входного поля
-     * @return {@link Optional} с входным объектом, если тип поля - входной объект, иначе {@link Optional#empty()}
+     * @param state           состояние
+     * @param parentTypeRules правила родительского входного объекта
+     * @param fieldDefinition определение поля входного объекта
+     * @throws AuthException если доступ запрещен
      */
-    private Optional<GraphQLInput> getGraphQLInputFromInputField(GraphQLInputObjectField fieldDef, ObjectField field) {
-        GraphQLType fieldType = fieldDef != null ? fieldDef.getType() : null;
-        if (fieldType instanceof GraphQLNonNull) {
-            fieldType = ((GraphQLNonNull) fieldType).getWrappedType();
-        }
-        Value<?> value = field.getValue();
-        if (fieldType instanceof GraphQLInputObjectType && value instanceof ObjectValue) {
-            return Optional.of(new GraphQLInput((ObjectValue) value, (GraphQLInputObjectType) fieldType));
+    private void checkInputFieldRule(SecurityInstrumentationState state,
+                                     InputObjectTypeRules parentTypeRules, GraphQLInputObjectField fieldDefinition) {
+        TokenExpressionRule rule = parentTypeRules.getFieldRule(fieldDefinition);
+        if (rule != null) {
+            checkRule(rule, state, null);
         }
-        return Optional.empty();
     }
 
     /**
-     * Проверяет правило контроля доступа
+     * Проверяет правило контроля доступа. Выражение частично решается относительно контекста безопасности
+     * один раз за запрос, для следующих проверок используется сохраненный результат
      *
-     * @param operationType тип операции
-     * @param rule          выражение контроля доступа
-     * @param ctx           контекст безопасности
-     * @param arguments     аргументы поля, могут быть null
+     * @param rule      выражение контроля доступа
+     * @param state     состояние
+     * @param arguments аргументы поля, могут быть null
      * @throws AuthException если доступ запрещен
      */
-    private void checkRule(OperationType operationType, TokenExpressionRule rule, SecurityContext ctx,
+    private void checkRule(TokenExpressionRule rule, SecurityInstrumentationState state,
                            Map<String, String> arguments) {
+        AuthorizationCheckRecording recording = SecurityEvents.beginAuthorizationCheck();
         //определяем выражение по типу операции
         TokenExpression expression;
-        switch (operationType) {
+        switch (state.operationType) {
             case READ:
                 expression = rule.getReadRule();
                 break;
@@ -469,14 +882,104 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
             default:
                 throw new AuthException("Undefined operation");
         }
+        if (useDecisionDiagram) {
+            checkRuleWithDecisionDiagram(rule, expression, state, arguments, recording);
+            return;
+        }
+        //частично решаем выражение относительно контекста, если оно еще не решено в этом запросе
+        PartiallySolvedExpression solved = state.solvedExpressions.get(expression);
+        if (solved != null && state.subscription && state.isExpired(expression)) {
+            solved = null;
+        }
+        if (solved != null && metricsEnabled) {
+            metrics.recordCacheHit(rule.getTargetInfo());
+        }
+        if (solved == null) {
+            solved = decisionCache != null ?
+                    decisionCache.partiallySolve(expression, state.securityContext, tokenExpressionSolver,
+                            state.now, state.comparisonResults) :
+                    tokenExpressionSolver.partiallySolve(expression, state.securityContext, state.now,
+                            state.comparisonResults);
+            state.solvedExpressions.put(expression, solved);
+            if (state.subscription) {
+                //запоминаем момент, после которого результат решения может измениться
+                tokenExpressionSolver.findTimeBoundary(expression, state.securityContext, state.now)
+                        .ifPresent(boundary -> state.expirations.put(expression, boundary.toEpochMilli()));
+            }
+        }
+        if (state.subscription) {
+            state.validUntil = Math.min(state.validUntil, state.expirations.getOrDefault(expression, Long.MAX_VALUE));
+        }
         //если решение дало false или выражение некорректное, выбрасываем исключение с информацией об объекте
+        boolean result;
         try {
-            if (!tokenExpressionSolver.solve(expression, ctx, arguments)) {
-                throw new AuthException(rule.getTargetInfo());
+            result = solved.isConstant() ? solved.getValue() :
+                    tokenExpressionSolver.solve(solved.getResidual(), state.securityContext, arguments, state.now);
+        } catch (IllegalArgumentException e) {
+            result = false;
+        }
+        completeCheck(rule, expression, state, result, recording);
+    }
+
+    /**
+     * Записывает результат проверки правила в метрики и событие JFR, передает его получателю решений
+     *
+     * @param rule       выражение контроля доступа
+     * @param expression выражение для типа операции
+     * @param state      состояние
+     * @param allowed    разрешен ли доступ
+     * @param recording  запись события проверки
+     * @throws AuthException если доступ запрещен
+     */
+    private void completeCheck(TokenExpressionRule rule, TokenExpression expression,
+                               SecurityInstrumentationState state, boolean allowed,
+                               AuthorizationCheckRecording recording) {
+        recording.commit(rule.getTargetInfo(), state.operationType.name(), allowed, expression.getTokens().size());
+        if (metricsEnabled) {
+            metrics.recordEvaluation(rule.getTargetInfo(), allowed);
+        }
+        decisionListener.onDecision(rule.getTargetInfo(), state.operationType, allowed,
+                state.fingerprint, state.operationName);
+        if (!allowed) {
+            state.deniedTarget = rule.getTargetInfo();
+            throw rule.getAccessDeniedException();
+        }
+    }
+
+    /**
+     * Проверяет выражение правила обходом диаграммы решений хранилища.
+     * Результаты сравнений без аргументов поля используются повторно в пределах запроса
+     *
+     * @param rule       выражение контроля доступа
+     * @param expression выражение для типа операции
+     * @param state      состояние
+     * @param arguments  аргументы поля, могут быть null
+     * @param recording  запись события проверки
+     * @throws AuthException если доступ запрещен
+     */
+    private void checkRuleWithDecisionDiagram(TokenExpressionRule rule, TokenExpression expression,
+                                              SecurityInstrumentationState state, Map<String, String> arguments,
+                                              AuthorizationCheckRecording recording) {
+        if (state.subscription) {
+            //запоминаем момент, после которого результат может измениться
+            if (!state.expirations.containsKey(expression) || state.isExpired(expression)) {
+                state.expirations.put(expression, tokenExpressionSolver
+                        .findTimeBoundary(expression, state.securityContext, state.now)
+                        .map(Instant::toEpochMilli)
+                        .orElse(Long.MAX_VALUE));
             }
+            state.validUntil = Math.min(state.validUntil, state.expirations.get(expression));
+        }
+        RuleDecisionDiagram diagram = accessRuleStorage.getDecisionDiagram();
+        //пустое выражение или выражение не из хранилища означает запрет доступа
+        boolean result;
+        try {
+            result = diagram.getRoot(expression) != RuleDecisionDiagram.NO_NODE && tokenExpressionSolver.solve(
+                    diagram, expression, state.securityContext, arguments, state.now, state.comparisonResults);
         } catch (IllegalArgumentException e) {
-            throw new AuthException(rule.getTargetInfo());
+            result = false;
         }
+        completeCheck(rule, expression, state, result, recording);
     }
 
     /**
@@ -498,8 +1001,17 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      */
     public static class Builder {
         private AccessRuleStorage accessRuleStorage;
+        private DecisionCache decisionCache;
+        private Clock clock;
+        private boolean useDecisionDiagram;
+        private SecurityMetrics metrics;
+        private DecisionListener decisionListener;
+        private NegativeDecisionCache negativeDecisionCache;
 
         private Builder() {
+            this.clock = Clock.systemDefaultZone();
+            this.metrics = SecurityMetrics.NO_OP;
+            this.decisionListener = DecisionListener.NO_OP;
         }
 
         /**
@@ -513,6 +1025,92 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
             return this;
         }
 
+        /**
+         * Устанавливает {@link DecisionCache}, используемый для хранения результатов проверки правил между запросами.
+         * По умолчанию кеш не используется
+         *
+         * @param decisionCache кеш результатов проверки правил, может быть null
+         * @return текущий {@link Builder}
+         */
+        public Builder decisionCache(DecisionCache decisionCache) {
+            this.decisionCache = decisionCache;
+            return this;
+        }
+
+        /**
+         * Устанавливает {@link NegativeDecisionCache}, используемый для отклонения недавно запрещенных операций
+         * без повторной проверки правил. По умолчанию кеш не используется
+         *
+         * @param negativeDecisionCache кеш запретов доступа к операциям, может быть null
+         * @return текущий {@link Builder}
+         */
+        public Builder negativeDecisionCache(NegativeDecisionCache negativeDecisionCache) {
+            this.negativeDecisionCache = negativeDecisionCache;
+            return this;
+        }
+
+        /**
+         * Устанавливает источник текущего момента времени, используемого операндом {now},
+         * и часового пояса для значений даты / времени без него. По умолчанию - системные часы
+         *
+         * @param clock источник текущего момента времени
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если источник null
+         */
+        public Builder clock(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock can't be null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Включает проверку правил обходом диаграммы решений {@link AccessRuleStorage#getDecisionDiagram()}
+         * вместо частичного решения выражений. При обходе вычисляются только сравнения на пути к результату.
+         * По умолчанию выключено
+         *
+         * @param useDecisionDiagram проверять ли правила обходом диаграммы решений
+         * @return текущий {@link Builder}
+         */
+        public Builder useDecisionDiagram(boolean useDecisionDiagram) {
+            this.useDecisionDiagram = useDecisionDiagram;
+            return this;
+        }
+
+        /**
+         * Устанавливает {@link SecurityMetrics}, в которые записываются проверки правил, запреты доступа,
+         * повторные использования решений выражений и время проверок доступа операций.
+         * По умолчанию метрики не записываются и время проверок не измеряется
+         *
+         * @param metrics метрики проверок доступа, например {@link LongAdderSecurityMetrics}
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если метрики null
+         */
+        public Builder metrics(SecurityMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("SecurityMetrics can't be null");
+            }
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Устанавливает {@link DecisionListener}, которому передается результат каждой проверки правила,
+         * например {@link ru.liboskat.graphql.security.audit.AsyncFileAuditLog}. По умолчанию решения не передаются
+         *
+         * @param decisionListener получатель решений о доступе
+         * @return текущий {@link Builder}
+         * @throws IllegalArgumentException, если получатель null
+         */
+        public Builder decisionListener(DecisionListener decisionListener) {
+            if (decisionListener == null) {
+                throw new IllegalArgumentException("DecisionListener can't be null");
+            }
+            this.decisionListener = decisionListener;
+            return this;
+        }
+
         /**
          * @return сконструированный {@link SecurityInstrumentation}
          * @throws IllegalArgumentException, если {@link AccessRuleStorage} не задан
@@ -521,7 +1119,8 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
             if (accessRuleStorage == null) {
                 throw new IllegalArgumentException("AccessRuleStorage can't be null");
             }
-            return new SecurityInstrumentation(accessRuleStorage);
+            return new SecurityInstrumentation(accessRuleStorage, decisionCache, clock, useDecisionDiagram, metrics,
+                    decisionListener, negativeDecisionCache);
         }
     }
 
@@ -534,31 +1133,80 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
     }
 
     /**
-     * Обертка для опреления и значения входного объекта
+     * Исключение завершения выполнения запроса без стека вызовов. Выполнение прерывается при каждом запрете доступа,
+     * а стек вызовов для него не нужен: ошибки запроса содержатся в списке ошибок
      */
-    private static class GraphQLInput {
-        private final ObjectValue value;
-        private final GraphQLInputObjectType type;
-        private final String typeName;
+    private static class StacklessAbortExecutionException extends AbortExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        StacklessAbortExecutionException(Collection<GraphQLError> errors) {
+            super(errors);
+        }
 
-        GraphQLInput(ObjectValue value, GraphQLInputObjectType type) {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Значение входного объекта или списка, ожидающее проверки
+     */
+    private static class InputValue {
+        /**
+         * Значение из запроса ({@link Value}) или значение переменной ({@link Map}, {@link List})
+         */
+        private final Object value;
+        private final GraphQLType type;
+        private final int depth;
+
+        InputValue(Object value, GraphQLType type, int depth) {
             this.value = value;
             this.type = type;
-            this.typeName = type != null ? type.getName() : null;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Ключ выборки полей подписки: тип объекта и поля запроса, сравниваемые по ссылке,
+     * так как для каждого события подписки используются одни и те же узлы запроса
+     */
+    private static class SelectionKey {
+        private final GraphQLObjectType type;
+        private final graphql.language.Field[] fields;
+        private final int hash;
+
+        SelectionKey(GraphQLObjectType type, Collection<MergedField> mergedFields) {
+            this.type = type;
+            this.fields = mergedFields.stream()
+                    .map(MergedField::getSingleField)
+                    .toArray(graphql.language.Field[]::new);
+            int hash = System.identityHashCode(type);
+            for (graphql.language.Field field : fields) {
+                hash = 31 * hash + System.identityHashCode(field);
+            }
+            this.hash = hash;
         }
 
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
-            GraphQLInput that = (GraphQLInput) o;
-
-            return Objects.equals(typeName, that.typeName);
+            SelectionKey that = (SelectionKey) o;
+            if (type != that.type || fields.length != that.fields.length) {
+                return false;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != that.fields[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(typeName);
+            return hash;
         }
     }
 
@@ -570,21 +1218,108 @@ public class SecurityInstrumentation extends SimpleInstrumentation {
      */
     private static class SecurityInstrumentationState implements InstrumentationState {
         private boolean hasErrors;
-        private final Set<String> checkedInputs;
-        private final Set<String> checkedObjects;
+        private final Set<GraphQLInputObjectType> checkedInputs;
+        private final Set<GraphQLInputObjectField> checkedInputFields;
+        private final Set<GraphQLObjectType> checkedObjects;
         private OperationType operationType;
         private SecurityContext securityContext;
+        /**
+         * Отпечаток пользователя из контекста безопасности, может быть null
+         */
+        private Object fingerprint;
+        /**
+         * Название операции, может быть null
+         */
+        private String operationName;
+        private SchemaBoundAccessRuleStorage rules;
+        private Map<String, Object> variables;
+        /**
+         * Выражение -> результат его частичного решения относительно контекста безопасности запроса
+         */
+        private final Map<TokenExpression, PartiallySolvedExpression> solvedExpressions;
+        /**
+         * Номер сравнения -> результат сравнения в этом запросе: 0 - неизвестен, 1 - true, 2 - false
+         */
+        private byte[] comparisonResults;
+        /**
+         * Выполняется ли подписка
+         */
+        private boolean subscription;
+        /**
+         * Выражение, зависящее от времени -> момент в миллисекундах, после которого решение нужно повторить
+         */
+        private final Map<TokenExpression, Long> expirations;
+        /**
+         * Проверенная выборка подписки -> момент в миллисекундах, до которого проверка действительна
+         */
+        private final Map<SelectionKey, Long> authorizedSelections;
+        /**
+         * Текущий момент времени запроса или текущей повторной проверки подписки
+         */
+        private ZonedDateTime now;
+        /**
+         * Момент в миллисекундах, до которого действителен результат текущей повторной проверки подписки
+         */
+        private long validUntil;
+        /**
+         * Момент в миллисекундах, до которого действительна проверка правила схемы для подписки
+         */
+        private long schemaValidUntil;
+        /**
+         * Суммарное время проверок доступа операции в наносекундах, измеряется только при записи метрик
+         */
+        private long authorizationNanos;
+        /**
+         * Записано ли время проверок операции в метрики
+         */
+        private boolean operationRecorded;
+        /**
+         * Текст запроса, сохраняется только при использовании {@link NegativeDecisionCache}
+         */
+        private String query;
+        /**
+         * Ключ операции в {@link NegativeDecisionCache} или null, если операция не кешируется
+         */
+        private NegativeDecisionCache.Key negativeCacheKey;
+        /**
+         * Объект применения правила, запретившего доступ, сохраняется в {@link NegativeDecisionCache} вместе с ошибкой
+         */
+        private RuleTargetInfo deniedTarget;
 
         SecurityInstrumentationState() {
-            this.checkedInputs = new HashSet<>();
-            this.checkedObjects = new HashSet<>();
+            this.checkedInputs = Collections.newSetFromMap(new IdentityHashMap<>());
+            this.checkedInputFields = Collections.newSetFromMap(new IdentityHashMap<>());
+            this.solvedExpressions = new IdentityHashMap<>();
+            this.checkedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+            this.expirations = new IdentityHashMap<>();
+            this.authorizedSelections = new HashMap<>();
+        }
+
+        /**
+         * Начинает проверку выборки подписки: правила объектов и входных объектов проверяются заново,
+         * используя еще действительные решения выражений
+         *
+         * @param now текущий момент времени
+         */
+        void startRevalidation(ZonedDateTime now) {
+            this.now = now;
+            this.validUntil = Long.MAX_VALUE;
+            Arrays.fill(comparisonResults, (byte) 0);
+            checkedObjects.clear();
+            checkedInputs.clear();
+            checkedInputFields.clear();
+        }
+
+        boolean isExpired(TokenExpression expression) {
+            Long expiresAt = expirations.get(expression);
+            return expiresAt != null && now.toInstant().toEpochMilli() >= expiresAt;
         }
 
-        boolean isNotCheckedInput(String input) {
+        boolean isNotCheckedInput(GraphQLInputObjectType input) {
             return !checkedInputs.contains(input);
         }
 
-        boolean isNotCheckedObject(String object) {
+        boolean isNotCheckedObject(GraphQLObjectType object) {
             return !checkedObjects.contains(object);
         }
 
@@ -0,0 +1,59 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+/**
+ * Метрики проверок доступа {@link SecurityInstrumentation}.
+ * Методы вызываются в потоках выполнения запросов, поэтому реализации должны быть потокобезопасными
+ * и не блокировать. По умолчанию используется {@link #NO_OP}, метрики собирает {@link LongAdderSecurityMetrics}
+ */
+public interface SecurityMetrics {
+    /**
+     * Метрики, которые ничего не записывают
+     */
+    SecurityMetrics NO_OP = new SecurityMetrics() {
+        @Override
+        public void recordEvaluation(RuleTargetInfo target, boolean allowed) {
+        }
+
+        @Override
+        public void recordCacheHit(RuleTargetInfo target) {
+        }
+
+        @Override
+        public void recordOperation(long authorizationNanos) {
+        }
+
+        @Override
+        public SecurityMetricsSnapshot snapshot() {
+            return SecurityMetricsSnapshot.EMPTY;
+        }
+    };
+
+    /**
+     * Записывает проверку правила объекта применения
+     *
+     * @param target  объект применения правила
+     * @param allowed разрешен ли доступ
+     */
+    void recordEvaluation(RuleTargetInfo target, boolean allowed);
+
+    /**
+     * Записывает проверку правила, для которой использован сохраненный результат решения выражения
+     *
+     * @param target объект применения правила
+     */
+    void recordCacheHit(RuleTargetInfo target);
+
+    /**
+     * Записывает общее время проверок доступа одной операции
+     *
+     * @param authorizationNanos время проверок доступа в наносекундах
+     */
+    void recordOperation(long authorizationNanos);
+
+    /**
+     * @return неизменяемый снимок текущих значений метрик
+     */
+    SecurityMetricsSnapshot snapshot();
+}
@@ -0,0 +1,155 @@
+package ru.liboskat.graphql.security.execution;
+
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок метрик {@link SecurityMetrics}.
+ * Время проверок доступа операций хранится в гистограмме: в корзине i находятся операции со временем
+ * от 2^(i-1) до 2^i - 1 наносекунд, в корзине 0 - операции с нулевым временем
+ */
+public final class SecurityMetricsSnapshot {
+    /**
+     * Число корзин гистограммы времени
+     */
+    public static final int BUCKET_COUNT = 64;
+    /**
+     * Снимок без записей
+     */
+    public static final SecurityMetricsSnapshot EMPTY =
+            new SecurityMetricsSnapshot(Collections.emptyMap(), new long[BUCKET_COUNT], 0);
+
+    private final Map<RuleTargetInfo, TargetMetrics> targets;
+    private final long[] latencyBuckets;
+    private final long totalAuthorizationNanos;
+
+    SecurityMetricsSnapshot(Map<RuleTargetInfo, TargetMetrics> targets, long[] latencyBuckets,
+                            long totalAuthorizationNanos) {
+        this.targets = Collections.unmodifiableMap(targets);
+        this.latencyBuckets = latencyBuckets;
+        this.totalAuthorizationNanos = totalAuthorizationNanos;
+    }
+
+    /**
+     * @param nanos время в наносекундах
+     * @return номер корзины гистограммы для времени
+     */
+    static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @return объект применения -> метрики его правила
+     */
+    public Map<RuleTargetInfo, TargetMetrics> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return число операций в корзинах гистограммы времени
+     */
+    public long[] getLatencyBuckets() {
+        return Arrays.copyOf(latencyBuckets, latencyBuckets.length);
+    }
+
+    /**
+     * @param bucket номер корзины
+     * @return наибольшее время в наносекундах, попадающее в корзину
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * @return число операций
+     */
+    public long getOperationCount() {
+        return Arrays.stream(latencyBuckets).sum();
+    }
+
+    /**
+     * @return суммарное время проверок доступа всех операций в наносекундах
+     */
+    public long getTotalAuthorizationNanos() {
+        return totalAuthorizationNanos;
+    }
+
+    /**
+     * Возвращает оценку перцентиля времени проверок доступа операции - верхнюю границу корзины, в которой он находится
+     *
+     * @param percentile перцентиль от 0 до 100
+     * @return оценка перцентиля в наносекундах или 0, если операций не было
+     * @throws IllegalArgumentException, если перцентиль вне [0, 100]
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in [0, 100]");
+        }
+        long count = getOperationCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < latencyBuckets.length; bucket++) {
+            seen += latencyBuckets[bucket];
+            if (seen >= rank) {
+                return getBucketUpperBoundNanos(bucket);
+            }
+        }
+        return getBucketUpperBoundNanos(latencyBuckets.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "SecurityMetricsSnapshot{" +
+                "targets=" + targets +
+                ", operationCount=" + getOperationCount() +
+                ", totalAuthorizationNanos=" + totalAuthorizationNanos +
+                '}';
+    }
+
+    /**
+     * Метрики правила одного объекта применения
+     */
+    public static final class TargetMetrics {
+        private final long evaluations;
+        private final long denials;
+        private final long cacheHits;
+
+        TargetMetrics(long evaluations, long denials, long cacheHits) {
+            this.evaluations = evaluations;
+            this.denials = denials;
+            this.cacheHits = cacheHits;
+        }
+
+        /**
+         * @return число проверок правила
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return число проверок, запретивших доступ
+         */
+        public long getDenials() {
+            return denials;
+        }
+
+        /**
+         * @return число проверок, использовавших сохраненный результат решения выражения
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        @Override
+        public String toString() {
+            return "{evaluations=" + evaluations + ", denials=" + denials + ", cacheHits=" + cacheHits + '}';
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ru.liboskat.graphql.security.execution;
 
 import ru.liboskat.graphql.security.storage.TokenExpression;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,4 +17,28 @@ public interface TokenExpressionSolver {
      * @return результат решения выражения
      */
     boolean solve(TokenExpression expression, SecurityContext context, Map<String, String> arguments);
+
+    /**
+     * Решает выражение для каждого контекста из списка
+     *
+     * @param expression выражение для решения
+     * @param contexts   контексты безопасности, например подписчиков события
+     * @param arguments  аргументы запрашиваемого поля, общие для всех контекстов
+     * @return {@link BitSet}, в котором установлены индексы контекстов, для которых выражение истинно.
+     * Если выражение для контекста решить не удалось, индекс не устанавливается
+     */
+    default BitSet solveAll(TokenExpression expression, List<SecurityContext> contexts,
+                            Map<String, String> arguments) {
+        BitSet result = new BitSet(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            try {
+                if (solve(expression, contexts.get(i), arguments)) {
+                    result.set(i);
+                }
+            } catch (IllegalArgumentException e) {
+                //выражение с ошибкой означает запрет доступа
+            }
+        }
+        return result;
+    }
 }
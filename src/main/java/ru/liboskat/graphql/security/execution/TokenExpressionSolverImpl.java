@@ -1,24 +1,37 @@
 package ru.liboskat.graphql.security.execution;
 
+import ru.liboskat.graphql.security.storage.RuleDecisionDiagram;
 import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TruthTable;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken.ComparisonType;
 import ru.liboskat.graphql.security.storage.token.OperatorToken;
 import ru.liboskat.graphql.security.storage.token.Token;
 import ru.liboskat.graphql.security.utils.TemporalToZonedDateTimeConverter;
 
+import java.time.Instant;
+import java.time.LocalTime;
 import java.time.ZonedDateTime;
 import java.time.temporal.Temporal;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Objects;
+import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Реализация {@link TokenExpressionSolver}, используемая для решения выражений {@link TokenExpression}
  * в обратной польской записи
  */
 public class TokenExpressionSolverImpl implements TokenExpressionSolver {
+    /**
+     * Число контекстов, обрабатываемых одной задачей при параллельном пакетном решении, кратно {@link Long#SIZE}
+     */
+    private static final int BATCH_CHUNK_SIZE = 1024;
+    /**
+     * Состояния результата сравнения в массиве результатов запроса
+     */
+    private static final byte UNKNOWN_RESULT = 0;
+    private static final byte TRUE_RESULT = 1;
+    private static final byte FALSE_RESULT = 2;
+
     /**
      * Решает выражение в обратной польской записи
      *
@@ -30,11 +43,32 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
      */
     @Override
     public boolean solve(TokenExpression expression, SecurityContext context, Map<String, String> arguments) {
+        return solve(expression, context, arguments, ZonedDateTime.now());
+    }
+
+    /**
+     * Решает выражение в обратной польской записи относительно заданного текущего момента времени
+     *
+     * @param expression выражение в обратное польской записи
+     * @param context    контекст безопасности запроса
+     * @param arguments  аргументы поля, могут быть null
+     * @param now        текущий момент времени: значение операнда {@link ComparisonToken.ValueType#NOW},
+     *                   дата и часовой пояс для значений даты / времени без них
+     * @return результат решения выражения
+     * @throws IllegalArgumentException, если выражение неверное
+     */
+    public boolean solve(TokenExpression expression, SecurityContext context, Map<String, String> arguments,
+                         ZonedDateTime now) {
+        //если у выражения есть таблица истинности, решаем по ней
+        Optional<TruthTable> truthTable = expression.getTruthTable();
+        if (truthTable.isPresent()) {
+            return solve(truthTable.get(), context, arguments, now, null);
+        }
         LinkedList<Boolean> stack = new LinkedList<>();
         for (Token token : expression.getTokens()) {
             //если токен - сравнение, кладем результат сравнения в стек
             if (token instanceof ComparisonToken) {
-                stack.push(getResult((ComparisonToken) token, context, arguments));
+                stack.push(getResult((ComparisonToken) token, context, arguments, now));
             }
             /* если токен - оператор, берем необходимое число значений из стека,
             применяем к ним операцию, результат кладем обратно в стек */
@@ -66,6 +100,430 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
         return result;
     }
 
+    /**
+     * Решает выражение для каждого контекста из списка.
+     * Контексты с одинаковыми значениями используемых в выражении переменных решаются один раз
+     *
+     * @param expression выражение в обратной польской записи
+     * @param contexts   контексты безопасности
+     * @param arguments  аргументы поля, общие для всех контекстов, могут быть null
+     * @return {@link BitSet} с индексами контекстов, для которых выражение истинно
+     * @throws IllegalArgumentException, если выражение или список контекстов null
+     */
+    @Override
+    public BitSet solveAll(TokenExpression expression, List<SecurityContext> contexts,
+                           Map<String, String> arguments) {
+        return solveAll(expression, contexts, arguments, false);
+    }
+
+    /**
+     * Решает выражение для каждого контекста из списка, при необходимости параллельно по частям списка.
+     * Контексты с одинаковыми значениями используемых в выражении переменных решаются один раз в каждой части
+     *
+     * @param expression выражение в обратной польской записи
+     * @param contexts   контексты безопасности, список должен поддерживать быстрый доступ по индексу
+     * @param arguments  аргументы поля, общие для всех контекстов, могут быть null
+     * @param parallel   решать ли части списка параллельно в общем {@link java.util.concurrent.ForkJoinPool}
+     * @return {@link BitSet} с индексами контекстов, для которых выражение истинно
+     * @throws IllegalArgumentException, если выражение или список контекстов null
+     */
+    public BitSet solveAll(TokenExpression expression, List<SecurityContext> contexts,
+                           Map<String, String> arguments, boolean parallel) {
+        return solveAll(expression, contexts, arguments, ZonedDateTime.now(), parallel);
+    }
+
+    /**
+     * Решает выражение для каждого контекста из списка относительно переданного момента времени,
+     * при необходимости параллельно по частям списка
+     *
+     * @param expression выражение в обратной польской записи
+     * @param contexts   контексты безопасности, список должен поддерживать быстрый доступ по индексу
+     * @param arguments  аргументы поля, общие для всех контекстов, могут быть null
+     * @param now        текущий момент времени, например полученный из {@link java.time.Clock} приложения
+     * @param parallel   решать ли части списка параллельно в общем {@link java.util.concurrent.ForkJoinPool}
+     * @return {@link BitSet} с индексами контекстов, для которых выражение истинно
+     * @throws IllegalArgumentException, если выражение, список контекстов или момент времени null
+     */
+    public BitSet solveAll(TokenExpression expression, List<SecurityContext> contexts,
+                           Map<String, String> arguments, ZonedDateTime now, boolean parallel) {
+        if (expression == null || contexts == null || now == null) {
+            throw new IllegalArgumentException("Expression and contexts can't be null");
+        }
+        //собираем используемые в выражении переменные контекста, по значениям которых группируются контексты
+        List<ComparisonToken> comparisons = new ArrayList<>();
+        expression.getTokens().stream()
+                .filter(ComparisonToken.class::isInstance)
+                .map(ComparisonToken.class::cast)
+                .forEach(comparisons::add);
+        BatchKeyLayout keyLayout = new BatchKeyLayout(comparisons);
+
+        int size = contexts.size();
+        if (!parallel || size <= BATCH_CHUNK_SIZE) {
+            return solveChunk(expression, contexts, arguments, now, keyLayout, 0, size);
+        }
+        //части начинаются на границах слов BitSet, поэтому каждая часть записывает только свои слова
+        long[] words = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        int chunks = (size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+        IntStream.range(0, chunks)
+                .parallel()
+                .forEach(chunk -> {
+                    int from = chunk * BATCH_CHUNK_SIZE;
+                    long[] chunkWords = solveChunk(expression, contexts, arguments, now, keyLayout,
+                            from, Math.min(size, from + BATCH_CHUNK_SIZE)).toLongArray();
+                    System.arraycopy(chunkWords, 0, words, from / Long.SIZE, chunkWords.length);
+                });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Решает выражение для контекстов с индексами из [from, to)
+     *
+     * @return {@link BitSet} размером to - from, в котором индекс i соответствует контексту с индексом from + i
+     */
+    private BitSet solveChunk(TokenExpression expression, List<SecurityContext> contexts,
+                              Map<String, String> arguments, ZonedDateTime now, BatchKeyLayout keyLayout,
+                              int from, int to) {
+        BitSet result = new BitSet(to - from);
+        Map<List<Object>, Boolean> solvedGroups = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            SecurityContext context = contexts.get(i);
+            boolean allowed;
+            try {
+                List<Object> groupKey = keyLayout.keyOf(context);
+                Boolean solved = solvedGroups.get(groupKey);
+                if (solved == null) {
+                    solved = solve(expression, context, arguments, now);
+                    solvedGroups.put(groupKey, solved);
+                }
+                allowed = solved;
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                //выражение с ошибкой означает запрет доступа
+                allowed = false;
+            }
+            if (allowed) {
+                result.set(i - from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Частично решает выражение в обратной польской записи относительно контекста безопасности.
+     * Сравнения, не использующие аргументы поля, заменяются их результатом, после чего выражение упрощается.
+     * Если результат не зависит от аргументов, возвращается константа, иначе остаточное выражение
+     * только со сравнениями, использующими аргументы
+     *
+     * @param expression выражение в обратной польской записи
+     * @param context    контекст безопасности запроса
+     * @return частично решенное выражение, {@link PartiallySolvedExpression#FALSE}, если выражение неверное
+     */
+    public PartiallySolvedExpression partiallySolve(TokenExpression expression, SecurityContext context) {
+        return partiallySolve(expression, context, ZonedDateTime.now());
+    }
+
+    /**
+     * Частично решает выражение относительно контекста безопасности и заданного текущего момента времени
+     *
+     * @param expression выражение в обратной польской записи
+     * @param context    контекст безопасности запроса
+     * @param now        текущий момент времени
+     * @return частично решенное выражение, {@link PartiallySolvedExpression#FALSE}, если выражение неверное
+     */
+    public PartiallySolvedExpression partiallySolve(TokenExpression expression, SecurityContext context,
+                                                    ZonedDateTime now) {
+        return partiallySolve(expression, context, now, null);
+    }
+
+    /**
+     * Частично решает выражение, используя результаты сравнений, уже вычисленных в этом запросе.
+     * Результаты сравнений, не использующих аргументы поля, сохраняются в массив по номеру сравнения
+     * ({@link ComparisonToken#getComparisonId()}), поэтому одно сравнение из разных правил вычисляется один раз
+     *
+     * @param expression        выражение в обратной польской записи
+     * @param context           контекст безопасности запроса
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса: 0 - неизвестен, 1 - true, 2 - false; может быть null
+     * @return частично решенное выражение, {@link PartiallySolvedExpression#FALSE}, если выражение неверное
+     */
+    public PartiallySolvedExpression partiallySolve(TokenExpression expression, SecurityContext context,
+                                                    ZonedDateTime now, byte[] comparisonResults) {
+        //выражение без аргументов с таблицей истинности решается по ней
+        Optional<TruthTable> truthTable = expression.getTruthTable();
+        if (truthTable.isPresent() && !truthTable.get().usesArguments()) {
+            try {
+                return PartiallySolvedExpression.constant(solve(truthTable.get(), context, null, now,
+                        comparisonResults));
+            } catch (IllegalArgumentException e) {
+                return PartiallySolvedExpression.FALSE;
+            }
+        }
+        //в стеке лежат либо Boolean, либо List<Token> с остаточным выражением
+        LinkedList<Object> stack = new LinkedList<>();
+        try {
+            for (Token token : expression.getTokens()) {
+                if (token instanceof ComparisonToken) {
+                    ComparisonToken comparison = (ComparisonToken) token;
+                    if (usesArguments(comparison)) {
+                        //сравнение с аргументом остается в остаточном выражении
+                        List<Token> residual = new ArrayList<>();
+                        residual.add(comparison);
+                        stack.push(residual);
+                    } else {
+                        stack.push(getCachedResult(comparison, context, now, comparisonResults));
+                    }
+                }
+                if (token instanceof OperatorToken) {
+                    OperatorToken operation = (OperatorToken) token;
+                    if (OperatorToken.NOT == operation) {
+                        stack.push(not(stack.pop()));
+                    } else {
+                        Object first = stack.pop();
+                        Object second = stack.pop();
+                        stack.push(combine(first, second, operation));
+                    }
+                }
+            }
+            Object result = stack.pop();
+            if (result instanceof Boolean) {
+                return PartiallySolvedExpression.constant((Boolean) result);
+            }
+            TokenExpression residual = new TokenExpression();
+            residual.addAllTokens(castToTokens(result));
+            return PartiallySolvedExpression.residual(residual);
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            //ошибка при полном решении означает запрет доступа, поэтому результат - false
+            return PartiallySolvedExpression.FALSE;
+        }
+    }
+
+    /**
+     * Решает выражение по таблице истинности: каждое сравнение вычисляется один раз и дает бит индекса строки,
+     * результат - бит маски таблицы с этим индексом
+     *
+     * @param truthTable        таблица истинности выражения
+     * @param context           контекст безопасности запроса
+     * @param arguments         аргументы поля, могут быть null
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса: 0 - неизвестен, 1 - true, 2 - false; может быть null
+     * @return результат решения выражения
+     * @throws IllegalArgumentException, если сравнение невозможно
+     */
+    public boolean solve(TruthTable truthTable, SecurityContext context, Map<String, String> arguments,
+                         ZonedDateTime now, byte[] comparisonResults) {
+        int row = 0;
+        for (int i = 0; i < truthTable.getVariableCount(); i++) {
+            ComparisonToken comparison = truthTable.getVariable(i);
+            boolean result = usesArguments(comparison) ? getResult(comparison, context, arguments, now) :
+                    getCachedResult(comparison, context, now, comparisonResults);
+            if (result) {
+                row |= 1 << i;
+            }
+        }
+        return truthTable.get(row);
+    }
+
+    /**
+     * Решает выражение, скомпилированное в вершину диаграммы решений {@link RuleDecisionDiagram}.
+     * Вычисляются только сравнения на пути от вершины к листу, поэтому неверное сравнение приводит
+     * к исключению, только если оно встретилось на этом пути.
+     * Результаты сравнений, не использующих аргументы поля, сохраняются в массив по номеру сравнения
+     *
+     * @param diagram           диаграмма решений правил хранилища
+     * @param root              вершина выражения
+     * @param context           контекст безопасности запроса
+     * @param arguments         аргументы поля, могут быть null
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса: 0 - неизвестен, 1 - true, 2 - false; может быть null
+     * @return результат решения выражения
+     * @throws IllegalArgumentException, если вершины нет в диаграмме или сравнение на пути невозможно
+     */
+    public boolean solve(RuleDecisionDiagram diagram, int root, SecurityContext context,
+                         Map<String, String> arguments, ZonedDateTime now, byte[] comparisonResults) {
+        return diagram.evaluate(root, id -> getResult(diagram.getComparison(id), context, arguments, now,
+                comparisonResults));
+    }
+
+    /**
+     * Решает выражение правила хранилища по диаграмме решений {@link RuleDecisionDiagram}.
+     * Кроме сравнений на пути от вершины к листу вычисляются сравнения выражения, которые могут быть невозможны,
+     * поэтому, как и при решении выражения целиком, невозможное сравнение приводит к исключению
+     *
+     * @param diagram           диаграмма решений правил хранилища
+     * @param expression        выражение правила хранилища
+     * @param context           контекст безопасности запроса
+     * @param arguments         аргументы поля, могут быть null
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса: 0 - неизвестен, 1 - true, 2 - false; может быть null
+     * @return результат решения выражения
+     * @throws IllegalArgumentException, если выражения нет в диаграмме или сравнение выражения невозможно
+     */
+    public boolean solve(RuleDecisionDiagram diagram, TokenExpression expression, SecurityContext context,
+                         Map<String, String> arguments, ZonedDateTime now, byte[] comparisonResults) {
+        return diagram.evaluate(expression, id -> getResult(diagram.getComparison(id), context, arguments, now,
+                comparisonResults));
+    }
+
+    /**
+     * Возвращает результат сравнения, сохраняя результаты сравнений без аргументов поля в массив запроса
+     *
+     * @param comparison        сравнение
+     * @param context           контекст безопасности запроса
+     * @param arguments         аргументы поля, могут быть null
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса, может быть null
+     * @return результат сравнения
+     * @throws IllegalArgumentException, если сравнение невозможно
+     */
+    private boolean getResult(ComparisonToken comparison, SecurityContext context, Map<String, String> arguments,
+                              ZonedDateTime now, byte[] comparisonResults) {
+        return usesArguments(comparison) ? getResult(comparison, context, arguments, now) :
+                getCachedResult(comparison, context, now, comparisonResults);
+    }
+
+    /**
+     * Возвращает момент времени, после которого результат выражения для контекста может измениться.
+     * Сравнение с текущим моментом ({@link ComparisonToken.ValueType#NOW}) может измениться, когда наступит
+     * сравниваемый момент. Значения {@link LocalTime} относятся к дате решения, поэтому результат
+     * сравнения с ними может измениться в начале следующих суток
+     *
+     * @param expression выражение в обратной польской записи
+     * @param context    контекст безопасности, может быть null
+     * @param now        текущий момент времени
+     * @return {@link Optional} с ближайшим таким моментом времени или {@link Optional#empty()},
+     * если результат больше не зависит от времени
+     */
+    public Optional<Instant> findTimeBoundary(TokenExpression expression, SecurityContext context,
+                                              ZonedDateTime now) {
+        Instant nowInstant = now.toInstant();
+        Instant boundary = null;
+        for (Token token : expression.getTokens()) {
+            if (!(token instanceof ComparisonToken)) {
+                continue;
+            }
+            ComparisonToken comparison = (ComparisonToken) token;
+            Object firstValue = getValueOrNull(comparison.getFirstValue(), comparison.getFirstValueType(),
+                    comparison.getFirstContextSlot(), context, now);
+            Object secondValue = getValueOrNull(comparison.getSecondValue(), comparison.getSecondValueType(),
+                    comparison.getSecondContextSlot(), context, now);
+            Instant candidate = null;
+            if (firstValue instanceof LocalTime || secondValue instanceof LocalTime) {
+                candidate = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone()).toInstant();
+            }
+            //момент, с которым сравнивается текущий, если он еще не наступил
+            Object comparedWithNow = ComparisonToken.ValueType.NOW == comparison.getFirstValueType() ? secondValue :
+                    ComparisonToken.ValueType.NOW == comparison.getSecondValueType() ? firstValue : null;
+            if (comparedWithNow instanceof Temporal) {
+                try {
+                    Instant instant = TemporalToZonedDateTimeConverter.toInstant((Temporal) comparedWithNow, now);
+                    if (instant.isAfter(nowInstant) && (candidate == null || instant.isBefore(candidate))) {
+                        candidate = instant;
+                    }
+                } catch (IllegalArgumentException e) {
+                    //несравнимое значение не меняет результат со временем
+                }
+            }
+            if (candidate != null && (boundary == null || candidate.isBefore(boundary))) {
+                boundary = candidate;
+            }
+        }
+        return Optional.ofNullable(boundary);
+    }
+
+    /**
+     * @return значение операнда без аргументов поля или null, если его не удалось получить
+     */
+    private Object getValueOrNull(Object tokenValue, ComparisonToken.ValueType valueType, int slot,
+                                  SecurityContext context, ZonedDateTime now) {
+        try {
+            return getValue(tokenValue, valueType, slot, context, null, now);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param token сравнение
+     * @return использует ли сравнение аргументы поля
+     */
+    private boolean usesArguments(ComparisonToken token) {
+        return ComparisonToken.ValueType.GRAPHQL_ARGUMENT_NAME == token.getFirstValueType() ||
+                ComparisonToken.ValueType.GRAPHQL_ARGUMENT_NAME == token.getSecondValueType();
+    }
+
+    /**
+     * Возвращает результат сравнения, не использующего аргументы поля, из массива результатов запроса
+     * или вычисляет и сохраняет его
+     *
+     * @param token             сравнение
+     * @param ctx               контекст безопасности
+     * @param now               текущий момент времени
+     * @param comparisonResults результаты сравнений запроса, может быть null
+     * @return результат сравнения
+     * @throws IllegalArgumentException, если сравнение невозможно
+     */
+    private boolean getCachedResult(ComparisonToken token, SecurityContext ctx, ZonedDateTime now,
+                                    byte[] comparisonResults) {
+        int id = token.getComparisonId();
+        if (comparisonResults == null || id < 0 || id >= comparisonResults.length) {
+            return getResult(token, ctx, null, now);
+        }
+        if (comparisonResults[id] != UNKNOWN_RESULT) {
+            return comparisonResults[id] == TRUE_RESULT;
+        }
+        boolean result = getResult(token, ctx, null, now);
+        comparisonResults[id] = result ? TRUE_RESULT : FALSE_RESULT;
+        return result;
+    }
+
+    /**
+     * Применяет отрицание к значению частичного решения
+     *
+     * @param operand Boolean или остаточное выражение
+     * @return Boolean или остаточное выражение
+     */
+    private Object not(Object operand) {
+        if (operand instanceof Boolean) {
+            return !(Boolean) operand;
+        }
+        List<Token> residual = castToTokens(operand);
+        residual.add(OperatorToken.NOT);
+        return residual;
+    }
+
+    /**
+     * Применяет бинарный оператор к значениям частичного решения
+     *
+     * @param first     значение с вершины стека, Boolean или остаточное выражение
+     * @param second    следующее значение стека, Boolean или остаточное выражение
+     * @param operation оператор AND или OR
+     * @return Boolean или остаточное выражение
+     */
+    private Object combine(Object first, Object second, OperatorToken operation) {
+        boolean isAnd = OperatorToken.AND == operation;
+        if (first instanceof Boolean && second instanceof Boolean) {
+            return isAnd ? (Boolean) first && (Boolean) second : (Boolean) first || (Boolean) second;
+        }
+        if (first instanceof Boolean || second instanceof Boolean) {
+            //константа либо определяет результат, либо не влияет на него
+            boolean constant = (Boolean) (first instanceof Boolean ? first : second);
+            Object other = first instanceof Boolean ? second : first;
+            if (isAnd) {
+                return constant ? other : Boolean.FALSE;
+            }
+            return constant ? Boolean.TRUE : other;
+        }
+        //сохраняем порядок обратной польской записи: второй операнд, первый операнд, оператор
+        List<Token> residual = castToTokens(second);
+        residual.addAll(castToTokens(first));
+        residual.add(operation);
+        return residual;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Token> castToTokens(Object residual) {
+        return (List<Token>) residual;
+    }
+
     /**
      * Возвращает результат сравнения
      *
@@ -74,13 +532,16 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
      * @param arguments аргументы поля, могут быть null
      * @return результат сравнения
      */
-    private boolean getResult(ComparisonToken token, SecurityContext ctx, Map<String, String> arguments) {
-        Object firstValue = getValue(token.getFirstValue(), token.getFirstValueType(), ctx, arguments);
-        Object secondValue = getValue(token.getSecondValue(), token.getSecondValueType(), ctx, arguments);
+    private boolean getResult(ComparisonToken token, SecurityContext ctx, Map<String, String> arguments,
+                              ZonedDateTime now) {
+        Object firstValue = getValue(token.getFirstValue(), token.getFirstValueType(), token.getFirstContextSlot(),
+                ctx, arguments, now);
+        Object secondValue = getValue(token.getSecondValue(), token.getSecondValueType(), token.getSecondContextSlot(),
+                ctx, arguments, now);
         if (token.getComparisonType() == ComparisonType.EQUALS) {
-            return isEquals(firstValue, secondValue);
+            return isEquals(firstValue, secondValue, now);
         } else {
-            return compare(firstValue, secondValue, token.getComparisonType());
+            return compare(firstValue, secondValue, token.getComparisonType(), now);
         }
     }
 
@@ -89,20 +550,21 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
      *
      * @param firstValue  первый объект
      * @param secondValue второй объект
+     * @param now         текущий момент времени
      * @return true, если объекты равны, иначе false
      * @throws IllegalArgumentException, если ошибка при конвертации объекта
      */
-    private boolean isEquals(Object firstValue, Object secondValue) {
+    private boolean isEquals(Object firstValue, Object secondValue, ZonedDateTime now) {
         if (firstValue instanceof Number && secondValue instanceof Number) {
             //если числа, сравниваем double значения
             Number firstNumber = (Number) firstValue;
             Number secondNumber = (Number) secondValue;
             return firstNumber.doubleValue() == secondNumber.doubleValue();
         } else if (firstValue instanceof Temporal && secondValue instanceof Temporal) {
-            //если дата / время, преобразуем в ZonedDateTime и сравниваем
-            ZonedDateTime firstZonedDateTime = TemporalToZonedDateTimeConverter.convert((Temporal) firstValue);
-            ZonedDateTime secondZonedDateTime = TemporalToZonedDateTimeConverter.convert((Temporal) secondValue);
-            return firstZonedDateTime.equals(secondZonedDateTime);
+            //если дата / время, преобразуем в моменты времени и сравниваем
+            Instant firstInstant = TemporalToZonedDateTimeConverter.toInstant((Temporal) firstValue, now);
+            Instant secondInstant = TemporalToZonedDateTimeConverter.toInstant((Temporal) secondValue, now);
+            return firstInstant.equals(secondInstant);
         } else {
             //иначе делаем простой equals
             return Objects.equals(firstValue, secondValue);
@@ -115,16 +577,18 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
      * @param firstValue     первый объект (число или дата / время)
      * @param secondValue    второй объект (число или дата / время)
      * @param comparisonType тип сравнения
+     * @param now            текущий момент времени
      * @return результат сравнения
      * @throws IllegalArgumentException, ошибка при конвертации объекта или невозможность сравнения переданных объектов
      */
-    private boolean compare(Object firstValue, Object secondValue, ComparisonType comparisonType) {
+    private boolean compare(Object firstValue, Object secondValue, ComparisonType comparisonType,
+                            ZonedDateTime now) {
         int compareResult;
         if (firstValue instanceof Temporal && secondValue instanceof Temporal) {
-            //если дата / время, преобразуем в ZonedDateTime и получаем результат сравнения
-            ZonedDateTime firstZonedDateTime = TemporalToZonedDateTimeConverter.convert((Temporal) firstValue);
-            ZonedDateTime secondZonedDateTime = TemporalToZonedDateTimeConverter.convert((Temporal) secondValue);
-            compareResult = firstZonedDateTime.compareTo(secondZonedDateTime);
+            //если дата / время, преобразуем в моменты времени и получаем результат сравнения
+            Instant firstInstant = TemporalToZonedDateTimeConverter.toInstant((Temporal) firstValue, now);
+            Instant secondInstant = TemporalToZonedDateTimeConverter.toInstant((Temporal) secondValue, now);
+            compareResult = firstInstant.compareTo(secondInstant);
         } else if (firstValue instanceof Number && secondValue instanceof Number) {
             //если числа, сравниваем double значения и получаем результат сравнения
             Number firstNumber = (Number) firstValue;
@@ -164,12 +628,14 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
      *
      * @param tokenValue объект
      * @param valueType  тип значения
+     * @param slot       номер ячейки переменной контекста или -1
      * @param context    контекст безопасности
      * @param arguments  аргументы поля
+     * @param now        текущий момент времени
      * @return значение для дальнейшего сравнения
      */
-    private Object getValue(Object tokenValue, ComparisonToken.ValueType valueType,
-                            SecurityContext context, Map<String, String> arguments) {
+    private Object getValue(Object tokenValue, ComparisonToken.ValueType valueType, int slot,
+                            SecurityContext context, Map<String, String> arguments, ZonedDateTime now) {
         //если значение null - возвращаем null
         if (tokenValue == null) {
             return null;
@@ -186,8 +652,8 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
             if (context == null) {
                 return null;
             }
-            //возвращаем значение контекста по ключу
-            Object value = context.get((String) tokenValue);
+            //возвращаем значение контекста по номеру ячейки или ключу
+            Object value = context.get(slot, (String) tokenValue);
             if (value instanceof Enum<?>) {
                 value = value.toString();
             }
@@ -195,9 +661,51 @@ public class TokenExpressionSolverImpl implements TokenExpressionSolver {
         } else if (ComparisonToken.ValueType.NULL == valueType) {
             //если тип сравнения NULL, возвращаем null
             return null;
+        } else if (ComparisonToken.ValueType.NOW == valueType) {
+            //если операнд - текущий момент, возвращаем зафиксированный момент времени
+            return now.toInstant();
         } else {
             //в любом другом случае возвращаем значение из токена
             return tokenValue;
         }
     }
+
+    /**
+     * Переменные контекста, используемые в выражении, значения которых образуют ключ группы контекстов
+     */
+    private static class BatchKeyLayout {
+        private final String[] names;
+        private final int[] slots;
+
+        BatchKeyLayout(List<ComparisonToken> comparisons) {
+            List<String> nameList = new ArrayList<>();
+            List<Integer> slotList = new ArrayList<>();
+            for (ComparisonToken comparison : comparisons) {
+                if (ComparisonToken.ValueType.GRAPHQL_CONTEXT_FIELD_NAME == comparison.getFirstValueType()) {
+                    nameList.add((String) comparison.getFirstValue());
+                    slotList.add(comparison.getFirstContextSlot());
+                }
+                if (ComparisonToken.ValueType.GRAPHQL_CONTEXT_FIELD_NAME == comparison.getSecondValueType()) {
+                    nameList.add((String) comparison.getSecondValue());
+                    slotList.add(comparison.getSecondContextSlot());
+                }
+            }
+            this.names = nameList.toArray(new String[0]);
+            this.slots = slotList.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @param context контекст безопасности, может быть null
+         * @return значения используемых переменных контекста
+         */
+        List<Object> keyOf(SecurityContext context) {
+            Object[] values = new Object[names.length];
+            if (context != null) {
+                for (int i = 0; i < names.length; i++) {
+                    values[i] = context.get(slots[i], names[i]);
+                }
+            }
+            return Arrays.asList(values);
+        }
+    }
 }
@@ -34,6 +34,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 
     private static final String IN_OPERATOR = "IN";
     private static final String NOT_IN_OPERATOR = "NOT IN";
+    private static final char CONTEXT_PATH_SEPARATOR = '.';
 
     private ParsingState state;
 
@@ -536,7 +537,7 @@ public class SimpleExpressionParser implements ExpressionParser {
         }
 
         char currentChar = currentCharOptional.get();
-        if (checkIsVariableNamePossibleCharacter(currentChar, isArgumentName, nameBuilder.length())) {
+        if (checkIsVariableNamePossibleCharacter(currentChar, isArgumentName, nameBuilder)) {
             //если символ является возможным для названия, добавляем его в StringBuilder, остаемся в методе
             nameBuilder.append(currentChar);
             state.currentPosition++;
@@ -557,18 +558,22 @@ public class SimpleExpressionParser implements ExpressionParser {
      *
      * @param character      символ
      * @param isArgumentName является ли операнд названием аргумента
-     * @param position       позиция в названии операнда
+     * @param name           прочитанная часть названия операнда
      * @return возможность наличия символа в названии
      */
-    private boolean checkIsVariableNamePossibleCharacter(char character, boolean isArgumentName, int position) {
+    private boolean checkIsVariableNamePossibleCharacter(char character, boolean isArgumentName, StringBuilder name) {
+        int position = name.length();
         if (isArgumentName) {
             // для операнда название аргумента - правила именования GraphQL
             return position == 0 && isGraphQLNameStart(character) ||
                     position > 0 && isGraphQLNamePart(character);
         } else {
-            // для операнда название переменной контекста - правила именования идентификатора Java
-            return position == 0 && Character.isJavaIdentifierStart(character) ||
-                    position > 0 && Character.isJavaIdentifierPart(character);
+            /* для операнда название переменной контекста - путь из идентификаторов Java, разделенных точкой,
+            например user.org.id */
+            boolean isSegmentStart = position == 0 || name.charAt(position - 1) == CONTEXT_PATH_SEPARATOR;
+            return isSegmentStart && Character.isJavaIdentifierStart(character) ||
+                    !isSegmentStart && (Character.isJavaIdentifierPart(character) ||
+                            character == CONTEXT_PATH_SEPARATOR);
         }
     }
 
@@ -581,7 +586,13 @@ public class SimpleExpressionParser implements ExpressionParser {
     private void endVariableNameReading(boolean isArgumentName, boolean isLeft) {
         OperandState operandState = isLeft ? state.leftOperandState :
                 state.rightOperandState;
-        operandState.resultValue = operandState.valueBuilder.toString();
+        StringBuilder nameBuilder = operandState.valueBuilder;
+        //путь к переменной контекста не может заканчиваться точкой
+        if (nameBuilder.length() > 0 && nameBuilder.charAt(nameBuilder.length() - 1) == CONTEXT_PATH_SEPARATOR) {
+            throw new InvalidExpressionException("Context field path can't end with '.'",
+                    state.currentPosition, state.expression);
+        }
+        operandState.resultValue = nameBuilder.toString();
         operandState.resultValueType = isArgumentName ? ValueType.GRAPHQL_ARGUMENT_NAME :
                 ValueType.GRAPHQL_CONTEXT_FIELD_NAME;
         endOperandReading(isLeft);
@@ -681,6 +692,12 @@ public class SimpleExpressionParser implements ExpressionParser {
             readingObjectState.resultValueType = ValueType.BOOLEAN;
             return;
         }
+        //если значение - now, сохраняем тип текущего момента времени
+        if ("now".equals(stringValue)) {
+            readingObjectState.resultValue = ComparisonToken.NowValue.INSTANCE;
+            readingObjectState.resultValueType = ValueType.NOW;
+            return;
+        }
 
         //если удается распарсить в один из типов java.time, сохраняем соответсвующий тип и значение
         Optional<ZonedDateTime> zonedDateTime =
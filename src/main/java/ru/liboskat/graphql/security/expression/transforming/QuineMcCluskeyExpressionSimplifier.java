@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.liboskat.graphql.security.exceptions.InternalErrorException;
 import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TruthTable;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken;
 import ru.liboskat.graphql.security.storage.token.OperatorToken;
 import ru.liboskat.graphql.security.storage.token.Token;
@@ -71,6 +72,14 @@ public class QuineMcCluskeyExpressionSimplifier implements ExpressionSimplifier
         //получаем выражение в обратной польской записи на основе найденных простых импликантов
         TokenExpression rpnExpression = buildRpnExpression(essentialMinterms, variables);
 
+        //сохраняем таблицу истинности, если она помещается в long
+        if (!rpnExpression.isEmpty()) {
+            Optional<TruthTable> truthTable = buildTruthTable(rpnExpression, variables, trueMinterms);
+            if (truthTable.isPresent()) {
+                rpnExpression = new TokenExpression(rpnExpression.getTokens(), truthTable.get());
+            }
+        }
+
         logger.debug("Simplification of expression {} ended. Simplified expression {}", expression, rpnExpression);
         return rpnExpression;
     }
@@ -110,6 +119,45 @@ public class QuineMcCluskeyExpressionSimplifier implements ExpressionSimplifier
         return minTerms;
     }
 
+    /**
+     * Строит таблицу истинности минимизированного выражения по найденным минтермам.
+     * Переменные, не вошедшие в минимизированное выражение, не влияют на результат, в таблице они считаются false
+     *
+     * @param simplified   минимизированное выражение
+     * @param variables    переменные исходного выражения
+     * @param trueMinterms минтермы, дающие true для выражения
+     * @return {@link Optional} с таблицей истинности или {@link Optional#empty()}, если переменных больше
+     * {@link TruthTable#MAX_VARIABLE_COUNT}
+     */
+    private Optional<TruthTable> buildTruthTable(TokenExpression simplified, List<ComparisonToken> variables,
+                                                 List<Bit[]> trueMinterms) {
+        List<ComparisonToken> usedVariables = simplified.getTokens().stream()
+                .filter(ComparisonToken.class::isInstance)
+                .map(ComparisonToken.class::cast)
+                .distinct()
+                .collect(Collectors.toList());
+        if (usedVariables.size() > TruthTable.MAX_VARIABLE_COUNT) {
+            return Optional.empty();
+        }
+        int[] usedPositions = usedVariables.stream().mapToInt(variables::indexOf).toArray();
+        long mask = 0;
+        for (Bit[] minterm : trueMinterms) {
+            //берем только минтермы, в которых неиспользуемые переменные false
+            int row = 0;
+            int trueCount = 0;
+            for (int i = 0; i < usedPositions.length; i++) {
+                if (minterm[usedPositions[i]] == Bit.TRUE) {
+                    row |= 1 << i;
+                    trueCount++;
+                }
+            }
+            if (trueCount == Arrays.stream(minterm).filter(bit -> bit == Bit.TRUE).count()) {
+                mask |= 1L << row;
+            }
+        }
+        return Optional.of(TruthTable.of(usedVariables, mask));
+    }
+
     /**
      * Возвращает map - число единиц -> список минтермов с таким числом единиц
      *
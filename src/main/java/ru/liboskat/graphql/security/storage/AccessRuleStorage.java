@@ -3,14 +3,20 @@ package ru.liboskat.graphql.security.storage;
 import graphql.Scalars;
 import graphql.introspection.Introspection;
 import graphql.language.*;
+import graphql.schema.GraphQLSchema;
 import graphql.schema.idl.TypeDefinitionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.liboskat.graphql.security.events.SecurityEvents;
+import ru.liboskat.graphql.security.events.StorageBuildRecording;
 import ru.liboskat.graphql.security.exceptions.InvalidAuthDirectiveException;
 import ru.liboskat.graphql.security.expression.parsing.ExpressionParser;
 import ru.liboskat.graphql.security.expression.parsing.SimpleExpressionParser;
 import ru.liboskat.graphql.security.expression.transforming.*;
 import ru.liboskat.graphql.security.storage.ruletarget.*;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+import ru.liboskat.graphql.security.storage.token.Token;
 
 import java.util.*;
 
@@ -30,6 +36,29 @@ public class AccessRuleStorage {
     private final Map<ArgumentInfo, TokenExpressionRule> argumentRules;
     private final Map<InputObjectInfo, TokenExpressionRule> inputObjectRules;
     private final Map<InputFieldInfo, TokenExpressionRule> inputFieldRules;
+    private final ContextKeyLayout contextKeyLayout;
+    /**
+     * Сравнение -> номер, общий для всех равных сравнений правил хранилища
+     */
+    private final Map<ComparisonToken, Integer> comparisonIds;
+    /**
+     * Наибольший номер сравнения + 1
+     */
+    private final int comparisonCount;
+    /**
+     * Диаграмма решений всех правил, строится при первом обращении
+     */
+    private volatile RuleDecisionDiagram decisionDiagram;
+
+    /*
+     * Индексы для поиска правил по названиям без создания объектов применения:
+     * название типа -> название поля -> название аргумента -> правило
+     */
+    private final Map<String, TokenExpressionRule> objectRulesByName;
+    private final Map<String, Map<String, TokenExpressionRule>> fieldRulesByName;
+    private final Map<String, Map<String, Map<String, TokenExpressionRule>>> argumentRulesByName;
+    private final Map<String, TokenExpressionRule> inputObjectRulesByName;
+    private final Map<String, Map<String, TokenExpressionRule>> inputFieldRulesByName;
 
     /**
      * Конструктор для AccessRuleStorage без значения правила схемы
@@ -38,28 +67,67 @@ public class AccessRuleStorage {
                               Map<FieldInfo, TokenExpressionRule> fieldRules,
                               Map<ArgumentInfo, TokenExpressionRule> argumentRules,
                               Map<InputObjectInfo, TokenExpressionRule> inputObjectRules,
-                              Map<InputFieldInfo, TokenExpressionRule> inputFieldRules) {
-        this(null, objectRules, fieldRules, argumentRules, inputObjectRules, inputFieldRules);
+                              Map<InputFieldInfo, TokenExpressionRule> inputFieldRules,
+                              ContextKeyLayout contextKeyLayout, Map<ComparisonToken, Integer> comparisonIds) {
+        this(null, objectRules, fieldRules, argumentRules, inputObjectRules, inputFieldRules, contextKeyLayout,
+                comparisonIds);
     }
 
     private AccessRuleStorage(TokenExpressionRule schemaRule, Map<ObjectInfo, TokenExpressionRule> objectRules,
                               Map<FieldInfo, TokenExpressionRule> fieldRules,
                               Map<ArgumentInfo, TokenExpressionRule> argumentRules,
                               Map<InputObjectInfo, TokenExpressionRule> inputObjectRules,
-                              Map<InputFieldInfo, TokenExpressionRule> inputFieldRules) {
+                              Map<InputFieldInfo, TokenExpressionRule> inputFieldRules,
+                              ContextKeyLayout contextKeyLayout, Map<ComparisonToken, Integer> comparisonIds) {
         this.schemaRule = schemaRule;
         this.objectRules = objectRules;
         this.fieldRules = fieldRules;
         this.argumentRules = argumentRules;
         this.inputObjectRules = inputObjectRules;
         this.inputFieldRules = inputFieldRules;
+        this.contextKeyLayout = contextKeyLayout;
+        this.comparisonIds = comparisonIds;
+        this.comparisonCount = comparisonIds.values().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+        this.objectRulesByName = new HashMap<>();
+        this.fieldRulesByName = new HashMap<>();
+        this.argumentRulesByName = new HashMap<>();
+        this.inputObjectRulesByName = new HashMap<>();
+        this.inputFieldRulesByName = new HashMap<>();
+        objectRules.forEach((info, rule) -> objectRulesByName.put(info.getName(), rule));
+        fieldRules.forEach((info, rule) -> fieldRulesByName
+                .computeIfAbsent(info.getTypeName(), typeName -> new HashMap<>())
+                .put(info.getFieldName(), rule));
+        argumentRules.forEach((info, rule) -> argumentRulesByName
+                .computeIfAbsent(info.getTypeName(), typeName -> new HashMap<>())
+                .computeIfAbsent(info.getFieldName(), fieldName -> new HashMap<>())
+                .put(info.getArgumentName(), rule));
+        inputObjectRules.forEach((info, rule) -> inputObjectRulesByName.put(info.getName(), rule));
+        inputFieldRules.forEach((info, rule) -> inputFieldRulesByName
+                .computeIfAbsent(info.getInputTypeName(), typeName -> new HashMap<>())
+                .put(info.getFieldName(), rule));
     }
 
     /**
      * @return новый {@link Builder} необходимый для построения класса {@link AccessRuleStorage}
      */
     public static AccessRuleStorage.Builder newAccessRuleStorage() {
-        return new Builder();
+        return new Builder(null);
+    }
+
+    /**
+     * Возвращает {@link Builder} для инкрементального перестроения хранилища.
+     * Правила объектов применения, строковые выражения которых не изменились относительно предыдущего хранилища,
+     * не компилируются заново, а переиспользуются из предыдущего хранилища
+     *
+     * @param previousStorage предыдущее хранилище правил
+     * @return новый {@link Builder} необходимый для построения класса {@link AccessRuleStorage}
+     * @throws IllegalArgumentException если предыдущее хранилище null
+     */
+    public static AccessRuleStorage.Builder newAccessRuleStorage(AccessRuleStorage previousStorage) {
+        if (previousStorage == null) {
+            throw new IllegalArgumentException("Previous AccessRuleStorage can't be null");
+        }
+        return new Builder(previousStorage);
     }
 
     /**
@@ -74,7 +142,7 @@ public class AccessRuleStorage {
      * @return {@link Optional} с выражением для объекта, если выражения нет - {@link Optional#empty()}
      */
     public Optional<TokenExpressionRule> getObjectRule(String objectName) {
-        return Optional.ofNullable(objectRules.get(ObjectInfo.newObjectInfo(objectName)));
+        return Optional.ofNullable(findObjectRule(objectName));
     }
 
     /**
@@ -83,7 +151,7 @@ public class AccessRuleStorage {
      * @return {@link Optional} с выражением для поля объекта, если выражения нет - {@link Optional#empty()}
      */
     public Optional<TokenExpressionRule> getFieldRule(String objectName, String fieldName) {
-        return Optional.ofNullable(fieldRules.get(FieldInfo.newFieldInfo(objectName, fieldName)));
+        return Optional.ofNullable(findFieldRule(objectName, fieldName));
     }
 
     /**
@@ -93,7 +161,7 @@ public class AccessRuleStorage {
      * @return {@link Optional} с выражением для аргумента поля, если выражения нет - {@link Optional#empty()}
      */
     public Optional<TokenExpressionRule> getArgumentRule(String objectName, String fieldName, String argumentName) {
-        return Optional.ofNullable(argumentRules.get(ArgumentInfo.newArgumentInfo(objectName, fieldName, argumentName)));
+        return Optional.ofNullable(findArgumentRule(objectName, fieldName, argumentName));
     }
 
     /**
@@ -101,7 +169,7 @@ public class AccessRuleStorage {
      * @return {@link Optional} с выражением для входного объекта, если выражения нет - {@link Optional#empty()}
      */
     public Optional<TokenExpressionRule> getInputObjectRule(String inputObjectName) {
-        return Optional.ofNullable(inputObjectRules.get(InputObjectInfo.newInputObjectInfo(inputObjectName)));
+        return Optional.ofNullable(findInputObjectRule(inputObjectName));
     }
 
     /**
@@ -110,7 +178,140 @@ public class AccessRuleStorage {
      * @return {@link Optional} с выражением для поля входного объекта, если выражения нет - {@link Optional#empty()}
      */
     public Optional<TokenExpressionRule> getInputFieldRule(String inputObjectName, String inputFieldName) {
-        return Optional.ofNullable(inputFieldRules.get(InputFieldInfo.newInputFieldInfo(inputObjectName, inputFieldName)));
+        return Optional.ofNullable(findInputFieldRule(inputObjectName, inputFieldName));
+    }
+
+    /**
+     * Ищет правило объекта без создания промежуточных объектов
+     *
+     * @param objectName название объекта
+     * @return выражение для объекта или null, если выражения нет
+     */
+    public TokenExpressionRule findObjectRule(String objectName) {
+        return objectRulesByName.get(objectName);
+    }
+
+    /**
+     * Ищет правило поля объекта без создания промежуточных объектов
+     *
+     * @param objectName название объекта
+     * @param fieldName  название поля объекта
+     * @return выражение для поля объекта или null, если выражения нет
+     */
+    public TokenExpressionRule findFieldRule(String objectName, String fieldName) {
+        Map<String, TokenExpressionRule> typeFieldRules = fieldRulesByName.get(objectName);
+        return typeFieldRules != null ? typeFieldRules.get(fieldName) : null;
+    }
+
+    /**
+     * Ищет правило аргумента поля без создания промежуточных объектов
+     *
+     * @param objectName   название объекта
+     * @param fieldName    название поля объекта
+     * @param argumentName название аргумента поля
+     * @return выражение для аргумента поля или null, если выражения нет
+     */
+    public TokenExpressionRule findArgumentRule(String objectName, String fieldName, String argumentName) {
+        Map<String, Map<String, TokenExpressionRule>> typeArgumentRules = argumentRulesByName.get(objectName);
+        if (typeArgumentRules == null) {
+            return null;
+        }
+        Map<String, TokenExpressionRule> fieldArgumentRules = typeArgumentRules.get(fieldName);
+        return fieldArgumentRules != null ? fieldArgumentRules.get(argumentName) : null;
+    }
+
+    /**
+     * Ищет правило входного объекта без создания промежуточных объектов
+     *
+     * @param inputObjectName название входного объекта
+     * @return выражение для входного объекта или null, если выражения нет
+     */
+    public TokenExpressionRule findInputObjectRule(String inputObjectName) {
+        return inputObjectRulesByName.get(inputObjectName);
+    }
+
+    /**
+     * Ищет правило поля входного объекта без создания промежуточных объектов
+     *
+     * @param inputObjectName название входного объекта
+     * @param inputFieldName  название поля входного объекта
+     * @return выражение для поля входного объекта или null, если выражения нет
+     */
+    public TokenExpressionRule findInputFieldRule(String inputObjectName, String inputFieldName) {
+        Map<String, TokenExpressionRule> typeFieldRules = inputFieldRulesByName.get(inputObjectName);
+        return typeFieldRules != null ? typeFieldRules.get(inputFieldName) : null;
+    }
+
+    /**
+     * Возвращает раскладку переменных контекста, используемых в правилах хранилища.
+     * {@link ru.liboskat.graphql.security.execution.SecurityContext}, построенный для этой раскладки,
+     * хранит значения этих переменных в массиве
+     *
+     * @return раскладка переменных контекста
+     */
+    public ContextKeyLayout getContextKeyLayout() {
+        return contextKeyLayout;
+    }
+
+    /**
+     * Возвращает число номеров сравнений в правилах хранилища. Сравнения правил имеют номера
+     * от 0 до этого числа, равные сравнения разных правил имеют одинаковый номер.
+     * После удаления сравнений при повторной сборке часть номеров может не использоваться
+     *
+     * @return число номеров сравнений
+     */
+    public int getComparisonCount() {
+        return comparisonCount;
+    }
+
+    /**
+     * Возвращает сокращенную упорядоченную диаграмму решений всех правил хранилища.
+     * Диаграмма строится при первом вызове, переменные диаграммы - номера сравнений
+     *
+     * @return диаграмма решений правил хранилища
+     */
+    public RuleDecisionDiagram getDecisionDiagram() {
+        RuleDecisionDiagram diagram = decisionDiagram;
+        if (diagram == null) {
+            synchronized (this) {
+                diagram = decisionDiagram;
+                if (diagram == null) {
+                    diagram = RuleDecisionDiagram.build(getAllRules(), getComparisonCount());
+                    decisionDiagram = diagram;
+                }
+            }
+        }
+        return diagram;
+    }
+
+    /**
+     * @return все правила хранилища
+     */
+    private List<TokenExpressionRule> getAllRules() {
+        List<TokenExpressionRule> rules = new ArrayList<>();
+        if (schemaRule != null) {
+            rules.add(schemaRule);
+        }
+        rules.addAll(objectRules.values());
+        rules.addAll(fieldRules.values());
+        rules.addAll(argumentRules.values());
+        rules.addAll(inputObjectRules.values());
+        rules.addAll(inputFieldRules.values());
+        return rules;
+    }
+
+    /**
+     * Привязывает правила хранилища к исполняемой схеме
+     *
+     * @param schema исполняемая схема GraphQL
+     * @return новый {@link SchemaBoundAccessRuleStorage} с правилами, индексированными по определениям схемы
+     * @throws IllegalArgumentException если схема null
+     */
+    public SchemaBoundAccessRuleStorage bind(GraphQLSchema schema) {
+        if (schema == null) {
+            throw new IllegalArgumentException("GraphQLSchema can't be null");
+        }
+        return SchemaBoundAccessRuleStorage.bind(this, schema);
     }
 
     /**
@@ -147,9 +348,11 @@ public class AccessRuleStorage {
         private final Map<ArgumentInfo, List<StringExpressionRule>> argumentRules;
         private final Map<InputObjectInfo, List<StringExpressionRule>> inputObjectRules;
         private final Map<InputFieldInfo, List<StringExpressionRule>> inputFieldRules;
+        private final AccessRuleStorage previousStorage;
         boolean hasDirective;
 
-        private Builder() {
+        private Builder(AccessRuleStorage previousStorage) {
+            this.previousStorage = previousStorage;
             this.expressionParser = new SimpleExpressionParser();
             this.rpnExpressionConverter = new ShuntingYardExpressionConverter();
             this.expressionSimplifier = new QuineMcCluskeyExpressionSimplifier();
@@ -292,28 +495,267 @@ public class AccessRuleStorage {
          */
         public AccessRuleStorage build() {
             logger.debug("AccessRuleStorage building started");
+            StorageBuildRecording recording = SecurityEvents.beginStorageBuild();
+            try {
+                AccessRuleStorage accessRuleStorage = buildStorage();
+                if (recording.isEnabled()) {
+                    List<TokenExpressionRule> rules = accessRuleStorage.getAllRules();
+                    int expressionSize = rules.stream()
+                            .mapToInt(rule -> rule.getReadRule().getTokens().size() +
+                                    rule.getWriteRule().getTokens().size())
+                            .sum();
+                    recording.commit(rules.size(), accessRuleStorage.comparisonIds.size(), expressionSize, true);
+                }
+                logger.debug("AccessRuleStorage building ended");
+                return accessRuleStorage;
+            } catch (RuntimeException e) {
+                recording.commit(0, 0, 0, false);
+                throw e;
+            }
+        }
+
+        /**
+         * Трансформирует выражения в объектный вид и строит хранилище
+         *
+         * @return новый {@link AccessRuleStorage}
+         */
+        private AccessRuleStorage buildStorage() {
 
-            //преобразуем строковые выражения в объектный вид
-            Map<ObjectInfo, TokenExpressionRule> objectRules = transformRuleMap(this.objectRules);
-            Map<FieldInfo, TokenExpressionRule> fieldRules = transformRuleMap(this.fieldRules);
-            Map<ArgumentInfo, TokenExpressionRule> argumentRules = transformRuleMap(this.argumentRules);
-            Map<InputObjectInfo, TokenExpressionRule> inputObjectRules = transformRuleMap(this.inputObjectRules);
-            Map<InputFieldInfo, TokenExpressionRule> inputFieldRules = transformRuleMap(this.inputFieldRules);
-            Optional<TokenExpressionRule> schemaRuleOptional = transform(schemaRules, SchemaInfo.newSchemaInfo());
+            /* преобразуем строковые выражения в объектный вид,
+            если есть предыдущее хранилище, неизмененные правила берем из него */
+            boolean incremental = previousStorage != null;
+            Map<ObjectInfo, TokenExpressionRule> objectRules = transformRuleMap(this.objectRules,
+                    incremental ? previousStorage.objectRules : Collections.emptyMap());
+            Map<FieldInfo, TokenExpressionRule> fieldRules = transformRuleMap(this.fieldRules,
+                    incremental ? previousStorage.fieldRules : Collections.emptyMap());
+            Map<ArgumentInfo, TokenExpressionRule> argumentRules = transformRuleMap(this.argumentRules,
+                    incremental ? previousStorage.argumentRules : Collections.emptyMap());
+            Map<InputObjectInfo, TokenExpressionRule> inputObjectRules = transformRuleMap(this.inputObjectRules,
+                    incremental ? previousStorage.inputObjectRules : Collections.emptyMap());
+            Map<InputFieldInfo, TokenExpressionRule> inputFieldRules = transformRuleMap(this.inputFieldRules,
+                    incremental ? previousStorage.inputFieldRules : Collections.emptyMap());
+            Optional<TokenExpressionRule> schemaRuleOptional = transform(schemaRules, SchemaInfo.newSchemaInfo(),
+                    incremental ? previousStorage.schemaRule : null);
+
+            //строим раскладку переменных контекста, сохраняя ячейки предыдущего хранилища
+            List<TokenExpressionRule> allRules = new ArrayList<>();
+            schemaRuleOptional.ifPresent(allRules::add);
+            allRules.addAll(objectRules.values());
+            allRules.addAll(fieldRules.values());
+            allRules.addAll(argumentRules.values());
+            allRules.addAll(inputObjectRules.values());
+            allRules.addAll(inputFieldRules.values());
+            ContextKeyLayout contextKeyLayout = buildContextKeyLayout(allRules,
+                    incremental ? previousStorage.contextKeyLayout : ContextKeyLayout.EMPTY);
+            //назначаем равным сравнениям общие номера, сохраняя номера предыдущего хранилища
+            Map<ComparisonToken, Integer> comparisonIds = assignComparisonIds(allRules,
+                    incremental ? previousStorage.comparisonIds : Collections.emptyMap());
+
+            /* правила предыдущего хранилища используются в выполняющихся запросах и не изменяются,
+            правила с другими ячейками или номерами сравнений создаются заново */
+            Optional<TokenExpressionRule> boundSchemaRule = schemaRuleOptional
+                    .map(rule -> bindRule(rule, contextKeyLayout, comparisonIds));
+            Map<ObjectInfo, TokenExpressionRule> boundObjectRules =
+                    bindRules(objectRules, contextKeyLayout, comparisonIds);
+            Map<FieldInfo, TokenExpressionRule> boundFieldRules =
+                    bindRules(fieldRules, contextKeyLayout, comparisonIds);
+            Map<ArgumentInfo, TokenExpressionRule> boundArgumentRules =
+                    bindRules(argumentRules, contextKeyLayout, comparisonIds);
+            Map<InputObjectInfo, TokenExpressionRule> boundInputObjectRules =
+                    bindRules(inputObjectRules, contextKeyLayout, comparisonIds);
+            Map<InputFieldInfo, TokenExpressionRule> boundInputFieldRules =
+                    bindRules(inputFieldRules, contextKeyLayout, comparisonIds);
 
             //используется необходимый конструктор в зависимости от наличия директивы схемы
-            AccessRuleStorage accessRuleStorage = schemaRuleOptional
+            AccessRuleStorage accessRuleStorage = boundSchemaRule
                     .map(tokenExpressionRule ->
-                            new AccessRuleStorage(tokenExpressionRule, objectRules, fieldRules, argumentRules,
-                                    inputObjectRules, inputFieldRules))
+                            new AccessRuleStorage(tokenExpressionRule, boundObjectRules, boundFieldRules,
+                                    boundArgumentRules, boundInputObjectRules, boundInputFieldRules,
+                                    contextKeyLayout, comparisonIds))
                     .orElseGet(() ->
-                            new AccessRuleStorage(objectRules, fieldRules, argumentRules,
-                                    inputObjectRules, inputFieldRules));
-
-            logger.debug("AccessRuleStorage building ended");
+                            new AccessRuleStorage(boundObjectRules, boundFieldRules, boundArgumentRules,
+                                    boundInputObjectRules, boundInputFieldRules, contextKeyLayout, comparisonIds));
             return accessRuleStorage;
         }
 
+        /**
+         * Строит раскладку переменных контекста, добавляя к раскладке предыдущего хранилища
+         * переменные контекста, используемые в правилах.
+         * Для путей к вложенным значениям ячейка назначается переменной, с которой начинается путь
+         *
+         * @param rules          все правила хранилища
+         * @param previousLayout раскладка предыдущего хранилища
+         * @return раскладка переменных контекста
+         */
+        private ContextKeyLayout buildContextKeyLayout(List<TokenExpressionRule> rules,
+                                                       ContextKeyLayout previousLayout) {
+            Set<String> keys = new HashSet<>();
+            rules.forEach(rule -> {
+                collectContextKeys(rule.getReadRule(), keys);
+                collectContextKeys(rule.getWriteRule(), keys);
+            });
+            return ContextKeyLayout.extend(previousLayout, keys);
+        }
+
+        /**
+         * Добавляет названия переменных контекста, используемых в выражении
+         *
+         * @param expression выражение
+         * @param keys       названия переменных контекста
+         */
+        private void collectContextKeys(TokenExpression expression, Set<String> keys) {
+            for (Token token : expression.getTokens()) {
+                if (token instanceof ComparisonToken) {
+                    ComparisonToken comparison = (ComparisonToken) token;
+                    if (comparison.getFirstValueType() == ValueType.GRAPHQL_CONTEXT_FIELD_NAME) {
+                        keys.add(getContextRoot((String) comparison.getFirstValue()));
+                    }
+                    if (comparison.getSecondValueType() == ValueType.GRAPHQL_CONTEXT_FIELD_NAME) {
+                        keys.add(getContextRoot((String) comparison.getSecondValue()));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Назначает сравнениям правил номера: равные сравнения получают один номер.
+         * Сравнения предыдущего хранилища, которые еще используются, сохраняют прежние номера, поэтому
+         * правила без изменений не создаются заново. Новые сравнения получают освободившиеся номера
+         * удаленных сравнений, а если их нет, следующие номера
+         *
+         * @param rules                 все правила хранилища
+         * @param previousComparisonIds номера сравнений предыдущего хранилища
+         * @return сравнение -> номер
+         */
+        private Map<ComparisonToken, Integer> assignComparisonIds(List<TokenExpressionRule> rules,
+                                                                  Map<ComparisonToken, Integer> previousComparisonIds) {
+            Set<ComparisonToken> comparisons = new LinkedHashSet<>();
+            rules.forEach(rule -> {
+                collectComparisons(rule.getReadRule(), comparisons);
+                collectComparisons(rule.getWriteRule(), comparisons);
+            });
+            Map<ComparisonToken, Integer> comparisonIds = new HashMap<>();
+            BitSet usedIds = new BitSet();
+            previousComparisonIds.forEach((comparison, id) -> {
+                if (comparisons.contains(comparison)) {
+                    comparisonIds.put(comparison, id);
+                    usedIds.set(id);
+                }
+            });
+            int freeId = 0;
+            for (ComparisonToken comparison : comparisons) {
+                if (!comparisonIds.containsKey(comparison)) {
+                    freeId = usedIds.nextClearBit(freeId);
+                    comparisonIds.put(comparison, freeId);
+                    usedIds.set(freeId);
+                }
+            }
+            return comparisonIds;
+        }
+
+        private void collectComparisons(TokenExpression expression, Set<ComparisonToken> comparisons) {
+            for (Token token : expression.getTokens()) {
+                if (token instanceof ComparisonToken) {
+                    comparisons.add((ComparisonToken) token);
+                }
+            }
+        }
+
+        /**
+         * Привязывает правила к раскладке переменных контекста и номерам сравнений
+         *
+         * @param rules         {@link Map} объект применения -> правило
+         * @param layout        раскладка переменных контекста
+         * @param comparisonIds сравнение -> номер
+         * @param <T>           тип объекта применения
+         * @return неизменяемая {@link Map} объект применения -> привязанное правило
+         */
+        private <T extends RuleTargetInfo> Map<T, TokenExpressionRule> bindRules(
+                Map<T, TokenExpressionRule> rules, ContextKeyLayout layout,
+                Map<ComparisonToken, Integer> comparisonIds) {
+            Map<T, TokenExpressionRule> result = new HashMap<>();
+            rules.forEach((targetInfo, rule) -> result.put(targetInfo, bindRule(rule, layout, comparisonIds)));
+            return Collections.unmodifiableMap(result);
+        }
+
+        /**
+         * Возвращает правило, в сравнениях которого назначены ячейки контекста и номера.
+         * Если они уже назначены, возвращает то же правило, иначе создает новое, не изменяя исходное
+         *
+         * @param rule          правило
+         * @param layout        раскладка переменных контекста
+         * @param comparisonIds сравнение -> номер
+         * @return привязанное правило
+         */
+        private TokenExpressionRule bindRule(TokenExpressionRule rule, ContextKeyLayout layout,
+                                             Map<ComparisonToken, Integer> comparisonIds) {
+            TokenExpression readRule = bindExpression(rule.getReadRule(), layout, comparisonIds);
+            TokenExpression writeRule = bindExpression(rule.getWriteRule(), layout, comparisonIds);
+            if (readRule == rule.getReadRule() && writeRule == rule.getWriteRule()) {
+                return rule;
+            }
+            return TokenExpressionRule.builder()
+                    .readRule(readRule)
+                    .writeRule(writeRule)
+                    .targetInfo(rule.getTargetInfo())
+                    .sourceRules(rule.getSourceRules())
+                    .build();
+        }
+
+        /**
+         * Возвращает выражение, в сравнениях которого назначены ячейки контекста и номера.
+         * Если они уже назначены, возвращает то же выражение
+         *
+         * @param expression    выражение
+         * @param layout        раскладка переменных контекста
+         * @param comparisonIds сравнение -> номер
+         * @return привязанное выражение
+         */
+        private TokenExpression bindExpression(TokenExpression expression, ContextKeyLayout layout,
+                                               Map<ComparisonToken, Integer> comparisonIds) {
+            List<Token> tokens = expression.getTokens();
+            List<Token> boundTokens = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!(tokens.get(i) instanceof ComparisonToken)) {
+                    continue;
+                }
+                ComparisonToken comparison = (ComparisonToken) tokens.get(i);
+                int firstSlot = getContextSlot(comparison.getFirstValue(), comparison.getFirstValueType(), layout);
+                int secondSlot = getContextSlot(comparison.getSecondValue(), comparison.getSecondValueType(), layout);
+                int id = comparisonIds.get(comparison);
+                if (firstSlot != comparison.getFirstContextSlot() || secondSlot != comparison.getSecondContextSlot() ||
+                        id != comparison.getComparisonId()) {
+                    if (boundTokens == null) {
+                        boundTokens = new ArrayList<>(tokens);
+                    }
+                    boundTokens.set(i, comparison.withContextSlots(firstSlot, secondSlot).withComparisonId(id));
+                }
+            }
+            if (boundTokens == null) {
+                return expression;
+            }
+            //таблица истинности должна ссылаться на сравнения с назначенными ячейками и номерами
+            List<Token> finalTokens = boundTokens;
+            TruthTable truthTable = expression.getTruthTable()
+                    .map(table -> table.withVariablesOf(finalTokens))
+                    .orElse(null);
+            return new TokenExpression(boundTokens, truthTable);
+        }
+
+        private int getContextSlot(Object value, ValueType valueType, ContextKeyLayout layout) {
+            return valueType == ValueType.GRAPHQL_CONTEXT_FIELD_NAME ?
+                    layout.getSlot(getContextRoot((String) value)) : -1;
+        }
+
+        /**
+         * @param contextFieldName название переменной контекста или путь к вложенному значению, например user.org.id
+         * @return название переменной контекста, с которой начинается путь
+         */
+        private String getContextRoot(String contextFieldName) {
+            int separatorIndex = contextFieldName.indexOf('.');
+            return separatorIndex > 0 ? contextFieldName.substring(0, separatorIndex) : contextFieldName;
+        }
+
         /**
          * Проверяет корректность директивы @auth в схеме
          *
@@ -547,37 +989,49 @@ public class AccessRuleStorage {
          * Преобразует {@link Map} со списками строковых выражений в {@link Map} с выражениями в объектном виде
          *
          * @param stringExpressionRuleMap {@link Map} объект применения -> список выражений в строковом виде
+         * @param previousRules           {@link Map} объект применения -> выражение в объектном виде
+         *                                из предыдущего хранилища
          * @param <T>                     тип объекта применения
-         * @return {@link Map} объект применения -> выражение в объектном виде
+         * @return неизменяемая {@link Map} объект применения -> выражение в объектном виде
          */
         private <T extends RuleTargetInfo> Map<T, TokenExpressionRule> transformRuleMap(
-                Map<T, List<StringExpressionRule>> stringExpressionRuleMap) {
+                Map<T, List<StringExpressionRule>> stringExpressionRuleMap,
+                Map<T, TokenExpressionRule> previousRules) {
             Map<T, TokenExpressionRule> result = new HashMap<>();
             stringExpressionRuleMap.forEach((targetInfo, stringRules) ->
-                    transform(stringRules, targetInfo)
+                    transform(stringRules, targetInfo, previousRules.get(targetInfo))
                             .ifPresent(rule -> result.put(targetInfo, rule)));
-            return result;
+            return Collections.unmodifiableMap(result);
         }
 
         /**
          * Преобразует строковые выражения в одно выражение в объектном виде
          *
-         * @param rules      строковые выражения
-         * @param targetInfo информация об объекте применения правила
+         * @param rules        строковые выражения
+         * @param targetInfo   информация об объекте применения правила
+         * @param previousRule правило объекта применения из предыдущего хранилища, может быть null
          * @return {@link Optional} с выражением в объектном виде или {@link Optional#empty()}, если правила пустые
          */
-        private Optional<TokenExpressionRule> transform(List<StringExpressionRule> rules, RuleTargetInfo targetInfo) {
+        private Optional<TokenExpressionRule> transform(List<StringExpressionRule> rules, RuleTargetInfo targetInfo,
+                                                        TokenExpressionRule previousRule) {
             //если правила пустые, возвращаем пустой Optional
             if (rules == null || rules.isEmpty()) {
                 logger.debug("Can't transform. Rules of {} is empty", targetInfo);
                 return Optional.empty();
             }
 
+            //если строковые правила не изменились, переиспользуем уже скомпилированное правило
+            if (previousRule != null && rules.equals(previousRule.getSourceRules())) {
+                logger.debug("Rules {} of {} are unchanged, reusing compiled rule", rules, targetInfo);
+                return Optional.of(previousRule);
+            }
+
             logger.debug("Started transforming rules {} of {}", rules, targetInfo);
 
-            //устанавливаем объект правила
+            //устанавливаем объект правила и исходные строковые правила
             TokenExpressionRule.Builder builder = TokenExpressionRule.builder();
             builder.targetInfo(targetInfo);
+            builder.sourceRules(rules);
 
             //получаем выражения в rpn из правил по типу операции
             List<TokenExpression> readRpnExpressions = new ArrayList<>();
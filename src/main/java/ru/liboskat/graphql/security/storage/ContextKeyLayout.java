@@ -0,0 +1,84 @@
+package ru.liboskat.graphql.security.storage;
+
+import java.util.*;
+
+/**
+ * Раскладка переменных контекста, используемых в правилах {@link AccessRuleStorage}.
+ * Каждой переменной назначается номер ячейки, по которому ее значение хранится
+ * в {@link ru.liboskat.graphql.security.execution.SecurityContext}, построенном для этой раскладки.
+ * При инкрементальной пересборке хранилища номера ячеек существующих переменных сохраняются
+ */
+public class ContextKeyLayout {
+    /**
+     * Раскладка без переменных
+     */
+    public static final ContextKeyLayout EMPTY = new ContextKeyLayout(Collections.emptyList());
+
+    private final String[] keys;
+    private final Map<String, Integer> slots;
+
+    private ContextKeyLayout(List<String> keys) {
+        this.keys = keys.toArray(new String[0]);
+        this.slots = new HashMap<>();
+        for (int i = 0; i < this.keys.length; i++) {
+            slots.put(this.keys[i], i);
+        }
+    }
+
+    /**
+     * Создает раскладку, содержащую все переменные предыдущей раскладки с теми же номерами ячеек
+     * и новые переменные в следующих ячейках
+     *
+     * @param previous предыдущая раскладка
+     * @param keys     переменные контекста
+     * @return новая раскладка или предыдущая, если новых переменных нет
+     */
+    static ContextKeyLayout extend(ContextKeyLayout previous, Collection<String> keys) {
+        List<String> extended = new ArrayList<>(Arrays.asList(previous.keys));
+        //новые переменные добавляются в отсортированном порядке, чтобы раскладка не зависела от порядка правил
+        new TreeSet<>(keys).stream()
+                .filter(key -> !previous.slots.containsKey(key))
+                .forEach(extended::add);
+        if (extended.size() == previous.keys.length) {
+            return previous;
+        }
+        return new ContextKeyLayout(extended);
+    }
+
+    /**
+     * @return число ячеек
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param key название переменной контекста
+     * @return номер ячейки переменной или -1, если переменной нет в раскладке
+     */
+    public int getSlot(String key) {
+        Integer slot = slots.get(key);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @param slot номер ячейки
+     * @return название переменной контекста в ячейке
+     * @throws IndexOutOfBoundsException, если ячейки нет
+     */
+    public String getKey(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @return названия переменных контекста в порядке номеров ячеек
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(keys);
+    }
+}
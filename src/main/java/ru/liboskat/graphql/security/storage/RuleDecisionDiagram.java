@@ -0,0 +1,336 @@
+package ru.liboskat.graphql.security.storage;
+
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.OperatorToken;
+import ru.liboskat.graphql.security.storage.token.Token;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Сокращенная упорядоченная бинарная диаграмма решений (ROBDD), общая для всех правил {@link AccessRuleStorage}.
+ * Переменные диаграммы - сравнения правил, упорядоченные по номеру сравнения
+ * ({@link ComparisonToken#getComparisonId()}). Каждое выражение правила - вершина диаграммы,
+ * одинаковые части разных правил представлены одними и теми же вершинами, а равносильные выражения -
+ * одной вершиной.
+ * Вершины 0 и 1 - листья {@link #FALSE} и {@link #TRUE}, у остальных вершин есть номер переменной,
+ * вершина для ложного значения переменной и вершина для истинного значения переменной
+ */
+public final class RuleDecisionDiagram {
+    /**
+     * Лист диаграммы со значением false
+     */
+    public static final int FALSE = 0;
+    /**
+     * Лист диаграммы со значением true
+     */
+    public static final int TRUE = 1;
+    /**
+     * Вершина, отсутствующая в диаграмме
+     */
+    public static final int NO_NODE = -1;
+
+    private int[] variables;
+    private int[] lows;
+    private int[] highs;
+    private int nodeCount;
+    private final Map<NodeKey, Integer> uniqueNodes;
+    private final Map<TokenExpression, Integer> roots;
+    /**
+     * Выражение -> номера его сравнений, которые могут быть невозможны ({@link ComparisonToken#canFail()})
+     */
+    private final Map<TokenExpression, int[]> fallibleComparisons;
+    private final ComparisonToken[] comparisons;
+
+    private RuleDecisionDiagram(int comparisonCount) {
+        this.variables = new int[16];
+        this.lows = new int[16];
+        this.highs = new int[16];
+        this.uniqueNodes = new HashMap<>();
+        this.roots = new IdentityHashMap<>();
+        this.fallibleComparisons = new IdentityHashMap<>();
+        this.comparisons = new ComparisonToken[comparisonCount];
+        //листья не имеют переменной, их номер переменной больше номера любого сравнения
+        addNode(Integer.MAX_VALUE, FALSE, FALSE);
+        addNode(Integer.MAX_VALUE, TRUE, TRUE);
+    }
+
+    /**
+     * Строит диаграмму для выражений правил
+     *
+     * @param rules           правила хранилища
+     * @param comparisonCount число различных сравнений хранилища
+     * @return диаграмма с вершинами всех непустых выражений правил
+     * @throws IllegalArgumentException, если сравнению в выражении не назначен номер или выражение неверное
+     */
+    static RuleDecisionDiagram build(Collection<TokenExpressionRule> rules, int comparisonCount) {
+        RuleDecisionDiagram diagram = new RuleDecisionDiagram(comparisonCount);
+        for (TokenExpressionRule rule : rules) {
+            diagram.addExpression(rule.getReadRule());
+            diagram.addExpression(rule.getWriteRule());
+        }
+        return diagram;
+    }
+
+    /**
+     * Добавляет вершину выражения в обратной польской записи
+     *
+     * @param expression выражение
+     */
+    private void addExpression(TokenExpression expression) {
+        if (expression.isEmpty() || roots.containsKey(expression)) {
+            return;
+        }
+        Deque<Integer> stack = new ArrayDeque<>();
+        Map<NodeKey, Integer> computed = new HashMap<>();
+        Set<Integer> fallible = new LinkedHashSet<>();
+        for (Token token : expression.getTokens()) {
+            if (token instanceof ComparisonToken) {
+                int id = ((ComparisonToken) token).getComparisonId();
+                if (id < 0 || id >= comparisons.length) {
+                    throw new IllegalArgumentException("Comparison id isn't assigned for " + token);
+                }
+                comparisons[id] = (ComparisonToken) token;
+                if (((ComparisonToken) token).canFail()) {
+                    fallible.add(id);
+                }
+                stack.push(makeNode(id, FALSE, TRUE));
+            } else if (OperatorToken.NOT == token) {
+                stack.push(apply(OperatorToken.NOT, checkedPop(stack), TRUE, computed));
+            } else if (token instanceof OperatorToken) {
+                stack.push(apply((OperatorToken) token, checkedPop(stack), checkedPop(stack), computed));
+            }
+        }
+        int root = checkedPop(stack);
+        if (!stack.isEmpty()) {
+            throw new IllegalArgumentException("Illegal TokenExpression");
+        }
+        roots.put(expression, root);
+        if (!fallible.isEmpty()) {
+            fallibleComparisons.put(expression, fallible.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    private int checkedPop(Deque<Integer> stack) {
+        Integer node = stack.poll();
+        if (node == null) {
+            throw new IllegalArgumentException("Illegal TokenExpression");
+        }
+        return node;
+    }
+
+    /**
+     * Применяет операцию к двум вершинам разложением Шеннона по переменной с наименьшим номером.
+     * Отрицание применяется как исключающее или с {@link #TRUE}
+     *
+     * @param operation операция
+     * @param first     первая вершина
+     * @param second    вторая вершина
+     * @param computed  уже вычисленные результаты операций
+     * @return вершина результата
+     */
+    private int apply(OperatorToken operation, int first, int second, Map<NodeKey, Integer> computed) {
+        Optional<Integer> terminal = applyToTerminals(operation, first, second);
+        if (terminal.isPresent()) {
+            return terminal.get();
+        }
+        NodeKey key = new NodeKey(operation.ordinal(), first, second);
+        Integer result = computed.get(key);
+        if (result != null) {
+            return result;
+        }
+        int variable = Math.min(variables[first], variables[second]);
+        int firstLow = variables[first] == variable ? lows[first] : first;
+        int firstHigh = variables[first] == variable ? highs[first] : first;
+        int secondLow = variables[second] == variable ? lows[second] : second;
+        int secondHigh = variables[second] == variable ? highs[second] : second;
+        result = makeNode(variable,
+                apply(operation, firstLow, secondLow, computed),
+                apply(operation, firstHigh, secondHigh, computed));
+        computed.put(key, result);
+        return result;
+    }
+
+    /**
+     * @return результат операции, если он определяется листьями, иначе {@link Optional#empty()}
+     */
+    private Optional<Integer> applyToTerminals(OperatorToken operation, int first, int second) {
+        switch (operation) {
+            case AND:
+                if (first == FALSE || second == FALSE) return Optional.of(FALSE);
+                if (first == TRUE) return Optional.of(second);
+                if (second == TRUE || first == second) return Optional.of(first);
+                return Optional.empty();
+            case OR:
+                if (first == TRUE || second == TRUE) return Optional.of(TRUE);
+                if (first == FALSE) return Optional.of(second);
+                if (second == FALSE || first == second) return Optional.of(first);
+                return Optional.empty();
+            default:
+                //отрицание: исключающее или с TRUE
+                if (first <= TRUE && second <= TRUE) return Optional.of(first ^ second);
+                return Optional.empty();
+        }
+    }
+
+    /**
+     * Возвращает существующую вершину с такими переменной и потомками или создает новую
+     */
+    private int makeNode(int variable, int low, int high) {
+        if (low == high) {
+            return low;
+        }
+        NodeKey key = new NodeKey(variable, low, high);
+        Integer node = uniqueNodes.get(key);
+        if (node == null) {
+            node = addNode(variable, low, high);
+            uniqueNodes.put(key, node);
+        }
+        return node;
+    }
+
+    private int addNode(int variable, int low, int high) {
+        if (nodeCount == variables.length) {
+            int capacity = nodeCount * 2;
+            variables = Arrays.copyOf(variables, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+        }
+        variables[nodeCount] = variable;
+        lows[nodeCount] = low;
+        highs[nodeCount] = high;
+        return nodeCount++;
+    }
+
+    /**
+     * @param expression выражение правила хранилища
+     * @return вершина выражения или {@link #NO_NODE}, если выражение пустое или не из хранилища
+     */
+    public int getRoot(TokenExpression expression) {
+        Integer root = roots.get(expression);
+        return root != null ? root : NO_NODE;
+    }
+
+    /**
+     * @param first  выражение правила хранилища
+     * @param second выражение правила хранилища
+     * @return true, если оба выражения есть в диаграмме и равносильны
+     */
+    public boolean isEquivalent(TokenExpression first, TokenExpression second) {
+        int firstRoot = getRoot(first);
+        return firstRoot != NO_NODE && firstRoot == getRoot(second);
+    }
+
+    /**
+     * Вычисляет значение вершины, проходя от нее к листу. Каждое сравнение на пути вычисляется не больше
+     * одного раза, сравнения не на пути не вычисляются
+     *
+     * @param root             вершина
+     * @param comparisonResult функция номер сравнения -> результат сравнения
+     * @return значение вершины
+     * @throws IllegalArgumentException, если вершины нет в диаграмме
+     */
+    public boolean evaluate(int root, IntPredicate comparisonResult) {
+        if (root < 0 || root >= nodeCount) {
+            throw new IllegalArgumentException("Node doesn't exist: " + root);
+        }
+        int node = root;
+        while (node > TRUE) {
+            node = comparisonResult.test(variables[node]) ? highs[node] : lows[node];
+        }
+        return node == TRUE;
+    }
+
+    /**
+     * Вычисляет значение выражения правила хранилища, проходя от его вершины к листу.
+     * Сравнения выражения, которые могут быть невозможны ({@link ComparisonToken#canFail()}), вычисляются
+     * всегда, даже если их нет на пути, поэтому исключение невозможного сравнения не зависит от пути,
+     * как и при решении выражения целиком
+     *
+     * @param expression       выражение правила хранилища
+     * @param comparisonResult функция номер сравнения -> результат сравнения
+     * @return значение выражения
+     * @throws IllegalArgumentException, если выражения нет в диаграмме
+     */
+    public boolean evaluate(TokenExpression expression, IntPredicate comparisonResult) {
+        int root = getRoot(expression);
+        if (root == NO_NODE) {
+            throw new IllegalArgumentException("Expression doesn't exist in diagram: " + expression);
+        }
+        int[] fallible = fallibleComparisons.get(expression);
+        if (fallible != null) {
+            for (int id : fallible) {
+                comparisonResult.test(id);
+            }
+        }
+        return evaluate(root, comparisonResult);
+    }
+
+    /**
+     * @param id номер сравнения
+     * @return сравнение с номером
+     * @throws IndexOutOfBoundsException, если сравнения нет
+     */
+    public ComparisonToken getComparison(int id) {
+        return comparisons[id];
+    }
+
+    /**
+     * @return число вершин диаграммы, включая листья
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Вершины диаграммы в виде массивов, достаточных для ее сохранения: для вершины i - номер сравнения
+     * variables[i], вершина для ложного значения lows[i] и для истинного значения highs[i]
+     *
+     * @return номера сравнений вершин, у листьев - {@link Integer#MAX_VALUE}
+     */
+    public int[] getVariables() {
+        return Arrays.copyOf(variables, nodeCount);
+    }
+
+    /**
+     * @return вершины для ложного значения сравнения, см. {@link #getVariables()}
+     */
+    public int[] getLows() {
+        return Arrays.copyOf(lows, nodeCount);
+    }
+
+    /**
+     * @return вершины для истинного значения сравнения, см. {@link #getVariables()}
+     */
+    public int[] getHighs() {
+        return Arrays.copyOf(highs, nodeCount);
+    }
+
+    /**
+     * Ключ вершины или результата операции
+     */
+    private static class NodeKey {
+        private final int first;
+        private final int second;
+        private final int third;
+
+        NodeKey(int first, int second, int third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            NodeKey that = (NodeKey) o;
+            return first == that.first && second == that.second && third == that.third;
+        }
+
+        @Override
+        public int hashCode() {
+            return (first * 31 + second) * 31 + third;
+        }
+    }
+}
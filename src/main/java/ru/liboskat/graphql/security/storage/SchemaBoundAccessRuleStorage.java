@@ -0,0 +1,341 @@
+package ru.liboskat.graphql.security.storage;
+
+import graphql.schema.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранилище правил контроля доступа, привязанное к конкретной {@link GraphQLSchema}.
+ * Правила в нем индексируются по идентичности определений схемы ({@link GraphQLObjectType},
+ * {@link GraphQLFieldDefinition}, {@link GraphQLArgument}, {@link GraphQLInputObjectType},
+ * {@link GraphQLInputObjectField}), поэтому поиск правил не требует хеширования строк.
+ * Для каждого типа заранее вычисляется, есть ли правила на нем самом, его полях, аргументах или
+ * достижимых из них входных объектах, что позволяет пропускать проверку незащищенных частей запроса.
+ * Создается методом {@link AccessRuleStorage#bind(GraphQLSchema)}
+ */
+public class SchemaBoundAccessRuleStorage {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaBoundAccessRuleStorage.class);
+
+    private final GraphQLSchema schema;
+    private final TokenExpressionRule schemaRule;
+    private final Map<GraphQLObjectType, ObjectTypeRules> objectTypeRules;
+    private final Map<GraphQLInputObjectType, InputObjectTypeRules> inputObjectTypeRules;
+    private final int comparisonCount;
+
+    private SchemaBoundAccessRuleStorage(GraphQLSchema schema, TokenExpressionRule schemaRule,
+                                         Map<GraphQLObjectType, ObjectTypeRules> objectTypeRules,
+                                         Map<GraphQLInputObjectType, InputObjectTypeRules> inputObjectTypeRules,
+                                         int comparisonCount) {
+        this.schema = schema;
+        this.schemaRule = schemaRule;
+        this.objectTypeRules = objectTypeRules;
+        this.inputObjectTypeRules = inputObjectTypeRules;
+        this.comparisonCount = comparisonCount;
+    }
+
+    /**
+     * Строит хранилище, привязанное к схеме, на основе правил из {@link AccessRuleStorage}
+     *
+     * @param storage хранилище правил
+     * @param schema  исполняемая схема GraphQL
+     * @return хранилище правил, привязанное к схеме
+     */
+    static SchemaBoundAccessRuleStorage bind(AccessRuleStorage storage, GraphQLSchema schema) {
+        logger.debug("Binding AccessRuleStorage to schema started");
+
+        //сохраняем правила входных объектов и их полей, если они есть
+        Map<GraphQLInputObjectType, InputObjectTypeRules> inputObjectTypeRules = new IdentityHashMap<>();
+        for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+            if (type instanceof GraphQLInputObjectType) {
+                InputObjectTypeRules rules = bindInputObjectType(storage, (GraphQLInputObjectType) type);
+                if (rules != InputObjectTypeRules.EMPTY) {
+                    inputObjectTypeRules.put((GraphQLInputObjectType) type, rules);
+                }
+            }
+        }
+        //добавляем входные объекты без собственных правил, из которых достижимы входные объекты с правилами
+        addInputObjectTypesWithProtectedFields(schema, inputObjectTypeRules);
+        Set<GraphQLInputObjectType> protectedInputTypes = inputObjectTypeRules.keySet();
+
+        //сохраняем правила выходных объектов, их полей и аргументов, если они есть
+        Map<GraphQLObjectType, ObjectTypeRules> objectTypeRules = new IdentityHashMap<>();
+        for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+            if (type instanceof GraphQLObjectType) {
+                ObjectTypeRules rules = bindObjectType(storage, (GraphQLObjectType) type, protectedInputTypes);
+                if (rules != ObjectTypeRules.EMPTY) {
+                    objectTypeRules.put((GraphQLObjectType) type, rules);
+                }
+            }
+        }
+
+        logger.debug("Binding AccessRuleStorage to schema ended");
+        return new SchemaBoundAccessRuleStorage(schema, storage.getSchemaRule().orElse(null),
+                objectTypeRules, inputObjectTypeRules, storage.getComparisonCount());
+    }
+
+    /**
+     * Добавляет входные объекты, в полях которых (в том числе вложенных) есть входные объекты с правилами
+     *
+     * @param schema               исполняемая схема GraphQL
+     * @param inputObjectTypeRules входной объект -> правила входного объекта
+     */
+    private static void addInputObjectTypesWithProtectedFields(
+            GraphQLSchema schema, Map<GraphQLInputObjectType, InputObjectTypeRules> inputObjectTypeRules) {
+        //повторяем, пока добавляются новые входные объекты, так как входные объекты могут ссылаться друг на друга
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+                if (!(type instanceof GraphQLInputObjectType) || inputObjectTypeRules.containsKey(type)) {
+                    continue;
+                }
+                for (GraphQLInputObjectField field : ((GraphQLInputObjectType) type).getFieldDefinitions()) {
+                    if (inputObjectTypeRules.containsKey(GraphQLTypeUtil.unwrapAll(field.getType()))) {
+                        inputObjectTypeRules.put((GraphQLInputObjectType) type,
+                                new InputObjectTypeRules(null, Collections.emptyMap(), true));
+                        added = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param storage             хранилище правил
+     * @param type                выходной объект
+     * @param protectedInputTypes входные объекты, имеющие правила на себе или ниже
+     * @return правила выходного объекта или {@link ObjectTypeRules#EMPTY}, если правил нет
+     */
+    private static ObjectTypeRules bindObjectType(AccessRuleStorage storage, GraphQLObjectType type,
+                                                  Set<GraphQLInputObjectType> protectedInputTypes) {
+        String typeName = type.getName();
+        Map<GraphQLFieldDefinition, FieldRules> fieldRules = new IdentityHashMap<>();
+        for (GraphQLFieldDefinition field : type.getFieldDefinitions()) {
+            Map<GraphQLArgument, TokenExpressionRule> argumentRules = new IdentityHashMap<>();
+            Set<GraphQLArgument> inputRuleArguments = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (GraphQLArgument argument : field.getArguments()) {
+                TokenExpressionRule argumentRule =
+                        storage.findArgumentRule(typeName, field.getName(), argument.getName());
+                if (argumentRule != null) {
+                    argumentRules.put(argument, argumentRule);
+                }
+                //если тип аргумента - входной объект с правилами, поле нужно проверять
+                if (protectedInputTypes.contains(GraphQLTypeUtil.unwrapAll(argument.getType()))) {
+                    inputRuleArguments.add(argument);
+                }
+            }
+            TokenExpressionRule fieldRule = storage.findFieldRule(typeName, field.getName());
+            if (fieldRule != null || !argumentRules.isEmpty() || !inputRuleArguments.isEmpty()) {
+                fieldRules.put(field, new FieldRules(fieldRule, argumentRules, inputRuleArguments));
+            }
+        }
+        TokenExpressionRule objectRule = storage.findObjectRule(typeName);
+        if (objectRule == null && fieldRules.isEmpty()) {
+            return ObjectTypeRules.EMPTY;
+        }
+        return new ObjectTypeRules(objectRule, fieldRules);
+    }
+
+    /**
+     * @param storage хранилище правил
+     * @param type    входной объект
+     * @return правила входного объекта или {@link InputObjectTypeRules#EMPTY}, если правил нет
+     */
+    private static InputObjectTypeRules bindInputObjectType(AccessRuleStorage storage, GraphQLInputObjectType type) {
+        String typeName = type.getName();
+        Map<GraphQLInputObjectField, TokenExpressionRule> fieldRules = new IdentityHashMap<>();
+        for (GraphQLInputObjectField field : type.getFieldDefinitions()) {
+            TokenExpressionRule fieldRule = storage.findInputFieldRule(typeName, field.getName());
+            if (fieldRule != null) {
+                fieldRules.put(field, fieldRule);
+            }
+        }
+        TokenExpressionRule inputObjectRule = storage.findInputObjectRule(typeName);
+        if (inputObjectRule == null && fieldRules.isEmpty()) {
+            return InputObjectTypeRules.EMPTY;
+        }
+        return new InputObjectTypeRules(inputObjectRule, fieldRules, true);
+    }
+
+    /**
+     * @return схема, к которой привязано хранилище
+     */
+    public GraphQLSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return число различных сравнений в правилах хранилища, см. {@link AccessRuleStorage#getComparisonCount()}
+     */
+    public int getComparisonCount() {
+        return comparisonCount;
+    }
+
+    /**
+     * @return выражение для схемы или null, если выражения нет
+     */
+    public TokenExpressionRule getSchemaRule() {
+        return schemaRule;
+    }
+
+    /**
+     * @param type выходной объект схемы
+     * @return правила выходного объекта, или {@link ObjectTypeRules#EMPTY}, если правил нет
+     */
+    public ObjectTypeRules getObjectTypeRules(GraphQLObjectType type) {
+        ObjectTypeRules rules = objectTypeRules.get(type);
+        return rules != null ? rules : ObjectTypeRules.EMPTY;
+    }
+
+    /**
+     * @param type входной объект схемы
+     * @return правила входного объекта, или {@link InputObjectTypeRules#EMPTY}, если правил нет
+     */
+    public InputObjectTypeRules getInputObjectTypeRules(GraphQLInputObjectType type) {
+        InputObjectTypeRules rules = inputObjectTypeRules.get(type);
+        return rules != null ? rules : InputObjectTypeRules.EMPTY;
+    }
+
+    /**
+     * Правила выходного объекта, его полей и аргументов полей
+     */
+    public static class ObjectTypeRules {
+        /**
+         * Общий экземпляр для выходных объектов без правил
+         */
+        public static final ObjectTypeRules EMPTY = new ObjectTypeRules(null, Collections.emptyMap());
+
+        private final TokenExpressionRule rule;
+        private final Map<GraphQLFieldDefinition, FieldRules> fieldRules;
+
+        private ObjectTypeRules(TokenExpressionRule rule, Map<GraphQLFieldDefinition, FieldRules> fieldRules) {
+            this.rule = rule;
+            this.fieldRules = fieldRules;
+        }
+
+        /**
+         * @return выражение для объекта или null, если выражения нет
+         */
+        public TokenExpressionRule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return есть ли правила у объекта, его полей, аргументов полей или входных объектов аргументов
+         */
+        public boolean hasRules() {
+            return this != EMPTY;
+        }
+
+        /**
+         * @param field определение поля объекта
+         * @return правила поля и его аргументов, или {@link FieldRules#EMPTY}, если правил нет
+         */
+        public FieldRules getFieldRules(GraphQLFieldDefinition field) {
+            FieldRules rules = fieldRules.get(field);
+            return rules != null ? rules : FieldRules.EMPTY;
+        }
+    }
+
+    /**
+     * Правила поля выходного объекта и его аргументов
+     */
+    public static class FieldRules {
+        /**
+         * Общий экземпляр для полей без правил
+         */
+        public static final FieldRules EMPTY = new FieldRules(null, Collections.emptyMap(), Collections.emptySet());
+
+        private final TokenExpressionRule rule;
+        private final Map<GraphQLArgument, TokenExpressionRule> argumentRules;
+        private final Set<GraphQLArgument> inputRuleArguments;
+
+        private FieldRules(TokenExpressionRule rule, Map<GraphQLArgument, TokenExpressionRule> argumentRules,
+                           Set<GraphQLArgument> inputRuleArguments) {
+            this.rule = rule;
+            this.argumentRules = argumentRules;
+            this.inputRuleArguments = inputRuleArguments;
+        }
+
+        /**
+         * @return выражение для поля или null, если выражения нет
+         */
+        public TokenExpressionRule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return есть ли правила у поля, его аргументов или входных объектов аргументов
+         */
+        public boolean hasRules() {
+            return this != EMPTY;
+        }
+
+        /**
+         * @param argument определение аргумента поля
+         * @return выражение для аргумента или null, если выражения нет
+         */
+        public TokenExpressionRule getArgumentRule(GraphQLArgument argument) {
+            return argumentRules.get(argument);
+        }
+
+        /**
+         * @param argument определение аргумента поля
+         * @return содержит ли тип аргумента входные объекты с правилами
+         */
+        public boolean hasInputRules(GraphQLArgument argument) {
+            return inputRuleArguments.contains(argument);
+        }
+    }
+
+    /**
+     * Правила входного объекта и его полей
+     */
+    public static class InputObjectTypeRules {
+        /**
+         * Общий экземпляр для входных объектов без правил
+         */
+        public static final InputObjectTypeRules EMPTY =
+                new InputObjectTypeRules(null, Collections.emptyMap(), false);
+
+        private final TokenExpressionRule rule;
+        private final Map<GraphQLInputObjectField, TokenExpressionRule> fieldRules;
+        private final boolean hasRules;
+
+        private InputObjectTypeRules(TokenExpressionRule rule,
+                                     Map<GraphQLInputObjectField, TokenExpressionRule> fieldRules,
+                                     boolean hasRules) {
+            this.rule = rule;
+            this.fieldRules = fieldRules;
+            this.hasRules = hasRules;
+        }
+
+        /**
+         * @return выражение для входного объекта или null, если выражения нет
+         */
+        public TokenExpressionRule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return есть ли правила у входного объекта, его полей или вложенных входных объектов
+         */
+        public boolean hasRules() {
+            return hasRules;
+        }
+
+        /**
+         * @param field определение поля входного объекта
+         * @return выражение для поля входного объекта или null, если выражения нет
+         */
+        public TokenExpressionRule getFieldRule(GraphQLInputObjectField field) {
+            return fieldRules.get(field);
+        }
+    }
+}
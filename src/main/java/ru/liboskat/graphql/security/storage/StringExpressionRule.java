@@ -1,5 +1,7 @@
 package ru.liboskat.graphql.security.storage;
 
+import java.util.Objects;
+
 import static ru.liboskat.graphql.security.utils.StringUtils.isNullOrEmpty;
 
 /**
@@ -159,6 +161,20 @@ public class StringExpressionRule {
         }
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StringExpressionRule that = (StringExpressionRule) o;
+        return Objects.equals(readRule, that.readRule) && Objects.equals(writeRule, that.writeRule) &&
+                Objects.equals(readWriteRule, that.readWriteRule);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(readRule, writeRule, readWriteRule);
+    }
+
     @Override
     public String toString() {
         return "StringExpressionRule{" +
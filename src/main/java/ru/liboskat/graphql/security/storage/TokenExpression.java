@@ -5,6 +5,7 @@ import ru.liboskat.graphql.security.storage.token.Token;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -12,12 +13,28 @@ import java.util.stream.Collectors;
  */
 public class TokenExpression {
     private final List<Token> tokens;
+    /**
+     * Таблица истинности выражения, если сравнений немного, может быть null
+     */
+    private final TruthTable truthTable;
 
     /**
      * Создает новое пустое выражение
      */
     public TokenExpression() {
         this.tokens = new ArrayList<>();
+        this.truthTable = null;
+    }
+
+    /**
+     * Создает выражение из токенов с таблицей истинности. Таблица не участвует в сравнении выражений
+     *
+     * @param tokens     токены выражения
+     * @param truthTable таблица истинности, построенная по сравнениям этого выражения, может быть null
+     */
+    public TokenExpression(List<Token> tokens, TruthTable truthTable) {
+        this.tokens = new ArrayList<>(tokens);
+        this.truthTable = truthTable;
     }
 
     /**
@@ -56,6 +73,13 @@ public class TokenExpression {
         return tokens.isEmpty();
     }
 
+    /**
+     * @return {@link Optional} с таблицей истинности выражения или {@link Optional#empty()}, если ее нет
+     */
+    public Optional<TruthTable> getTruthTable() {
+        return Optional.ofNullable(truthTable);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
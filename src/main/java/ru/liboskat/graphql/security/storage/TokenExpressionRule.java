@@ -1,7 +1,12 @@
 package ru.liboskat.graphql.security.storage;
 
+import ru.liboskat.graphql.security.exceptions.AuthException;
 import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Класс для хранения и передачи правил объекта применения в объектном виде
  */
@@ -9,11 +14,20 @@ public class TokenExpressionRule {
     private final TokenExpression readRule;
     private final TokenExpression writeRule;
     private final RuleTargetInfo targetInfo;
+    private final List<StringExpressionRule> sourceRules;
+    /**
+     * Исключение запрета доступа к объекту применения, создается вместе с правилом,
+     * null - если объект применения не задан
+     */
+    private final AuthException accessDeniedException;
 
-    private TokenExpressionRule(TokenExpression readRule, TokenExpression writeRule, RuleTargetInfo targetInfo) {
+    private TokenExpressionRule(TokenExpression readRule, TokenExpression writeRule, RuleTargetInfo targetInfo,
+                                List<StringExpressionRule> sourceRules) {
         this.readRule = readRule;
         this.writeRule = writeRule;
         this.targetInfo = targetInfo;
+        this.sourceRules = sourceRules;
+        this.accessDeniedException = targetInfo != null ? AuthException.accessDenied(targetInfo) : null;
     }
 
     /**
@@ -37,6 +51,24 @@ public class TokenExpressionRule {
         return targetInfo;
     }
 
+    /**
+     * Возвращает исключение запрета доступа к объекту применения без стека вызовов.
+     * Исключение неизменяемо, поэтому один экземпляр используется для всех запретов
+     *
+     * @return исключение запрета доступа к объекту применения
+     * @throws IllegalArgumentException, если объект применения не задан
+     */
+    public AuthException getAccessDeniedException() {
+        return accessDeniedException != null ? accessDeniedException : AuthException.accessDenied(targetInfo);
+    }
+
+    /**
+     * @return строковые правила, из которых было построено это правило
+     */
+    List<StringExpressionRule> getSourceRules() {
+        return sourceRules;
+    }
+
     /**
      * @return {@link Builder} для этого класса
      */
@@ -51,8 +83,10 @@ public class TokenExpressionRule {
         private TokenExpression readRule;
         private TokenExpression writeRule;
         private RuleTargetInfo targetInfo;
+        private List<StringExpressionRule> sourceRules;
 
         private Builder() {
+            this.sourceRules = Collections.emptyList();
         }
 
         /**
@@ -88,13 +122,24 @@ public class TokenExpressionRule {
             return this;
         }
 
+        /**
+         * Сохраняет строковые правила, из которых строится правило в объектном виде
+         *
+         * @param sourceRules строковые правила объекта применения
+         * @return текущий {@link Builder}
+         */
+        Builder sourceRules(List<StringExpressionRule> sourceRules) {
+            this.sourceRules = Collections.unmodifiableList(new ArrayList<>(sourceRules));
+            return this;
+        }
+
         /**
          * Создает новый {@link TokenExpressionRule} с переданными правилами и объектом применения
          *
          * @return новый {@link StringExpressionRule} с переданными правилами и объектом применения
          */
         TokenExpressionRule build() {
-            return new TokenExpressionRule(readRule, writeRule, targetInfo);
+            return new TokenExpressionRule(readRule, writeRule, targetInfo, sourceRules);
         }
     }
 
@@ -0,0 +1,127 @@
+package ru.liboskat.graphql.security.storage;
+
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+import ru.liboskat.graphql.security.storage.token.Token;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Таблица истинности выражения с небольшим числом различных сравнений.
+ * Результат сравнения с номером k в таблице - бит k индекса строки, значения выражения для всех строк
+ * хранятся в одном long: бит i равен 1, если выражение истинно для строки i
+ */
+public final class TruthTable {
+    /**
+     * Максимальное число сравнений, для которого таблица помещается в long
+     */
+    public static final int MAX_VARIABLE_COUNT = 6;
+
+    private final ComparisonToken[] variables;
+    private final long mask;
+    private final boolean usesArguments;
+
+    private TruthTable(ComparisonToken[] variables, long mask) {
+        this.variables = variables;
+        this.mask = mask;
+        this.usesArguments = Arrays.stream(variables).anyMatch(variable ->
+                ValueType.GRAPHQL_ARGUMENT_NAME == variable.getFirstValueType() ||
+                        ValueType.GRAPHQL_ARGUMENT_NAME == variable.getSecondValueType());
+    }
+
+    /**
+     * @param variables сравнения в порядке битов индекса строки
+     * @param mask      значения выражения для всех строк
+     * @return таблица истинности
+     * @throws IllegalArgumentException, если сравнений больше {@link #MAX_VARIABLE_COUNT}
+     */
+    public static TruthTable of(List<ComparisonToken> variables, long mask) {
+        if (variables == null || variables.size() > MAX_VARIABLE_COUNT) {
+            throw new IllegalArgumentException("Number of variables must be at most " + MAX_VARIABLE_COUNT);
+        }
+        int rows = 1 << variables.size();
+        //биты строк, которых нет в таблице, не используются
+        long rowsMask = rows == Long.SIZE ? -1L : (1L << rows) - 1;
+        return new TruthTable(variables.toArray(new ComparisonToken[0]), mask & rowsMask);
+    }
+
+    /**
+     * Возвращает таблицу с теми же значениями, в которой сравнения заменены на равные им сравнения выражения.
+     * Используется после того, как в выражении сравнениям назначены ячейки контекста и номера
+     *
+     * @param tokens токены выражения таблицы
+     * @return таблица со сравнениями выражения
+     * @throws IllegalArgumentException, если сравнения нет в выражении
+     */
+    TruthTable withVariablesOf(List<Token> tokens) {
+        ComparisonToken[] replaced = new ComparisonToken[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            for (Token token : tokens) {
+                if (variables[i].equals(token)) {
+                    replaced[i] = (ComparisonToken) token;
+                    break;
+                }
+            }
+            if (replaced[i] == null) {
+                throw new IllegalArgumentException("Expression doesn't contain " + variables[i]);
+            }
+        }
+        return new TruthTable(replaced, mask);
+    }
+
+    /**
+     * @return число сравнений
+     */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * @param index номер бита индекса строки
+     * @return сравнение, результат которого - бит индекса строки с этим номером
+     */
+    public ComparisonToken getVariable(int index) {
+        return variables[index];
+    }
+
+    /**
+     * @return значения выражения для всех строк
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * @return используют ли сравнения таблицы аргументы поля
+     */
+    public boolean usesArguments() {
+        return usesArguments;
+    }
+
+    /**
+     * @param row индекс строки, составленный из результатов сравнений
+     * @return значение выражения для строки
+     */
+    public boolean get(int row) {
+        return (mask >>> row & 1L) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TruthTable that = (TruthTable) o;
+        return mask == that.mask && Arrays.equals(variables, that.variables);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(variables) + Long.hashCode(mask);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(variables) + ":" + Long.toBinaryString(mask);
+    }
+}
@@ -12,6 +12,17 @@ public class SchemaInfo implements RuleTargetInfo {
         return new SchemaInfo();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return SchemaInfo.class.hashCode();
+    }
+
     @Override
     public String toString() {
         return "Schema";
@@ -1,11 +1,6 @@
 package ru.liboskat.graphql.security.storage.token;
 
-import ru.liboskat.graphql.security.utils.TemporalToZonedDateTimeConverter;
-
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.temporal.Temporal;
+import java.time.*;
 import java.util.Objects;
 
 /**
@@ -32,14 +27,34 @@ public class ComparisonToken implements Token {
      * Тип сравнения
      */
     private final ComparisonType comparisonType;
+    /**
+     * Номера ячеек переменных контекста первого и второго операнда или -1, если ячейка не назначена.
+     * Не участвуют в сравнении токенов
+     */
+    private final int firstContextSlot;
+    private final int secondContextSlot;
+    /**
+     * Номер сравнения, общий для всех равных сравнений хранилища правил, или -1, если номер не назначен.
+     * Не участвует в сравнении токенов
+     */
+    private final int comparisonId;
 
     private ComparisonToken(Object firstValue, ValueType firstValueType,
                             Object secondValue, ValueType secondValueType, ComparisonType comparisonType) {
+        this(firstValue, firstValueType, secondValue, secondValueType, comparisonType, -1, -1, -1);
+    }
+
+    private ComparisonToken(Object firstValue, ValueType firstValueType,
+                            Object secondValue, ValueType secondValueType, ComparisonType comparisonType,
+                            int firstContextSlot, int secondContextSlot, int comparisonId) {
         this.firstValue = firstValue;
         this.firstValueType = firstValueType;
         this.secondValue = secondValue;
         this.secondValueType = secondValueType;
         this.comparisonType = comparisonType;
+        this.firstContextSlot = firstContextSlot;
+        this.secondContextSlot = secondContextSlot;
+        this.comparisonId = comparisonId;
     }
 
     /**
@@ -77,6 +92,88 @@ public class ComparisonToken implements Token {
         return comparisonType;
     }
 
+    /**
+     * @return номер ячейки переменной контекста первого операнда или -1, если ячейка не назначена
+     */
+    public int getFirstContextSlot() {
+        return firstContextSlot;
+    }
+
+    /**
+     * @return номер ячейки переменной контекста второго операнда или -1, если ячейка не назначена
+     */
+    public int getSecondContextSlot() {
+        return secondContextSlot;
+    }
+
+    /**
+     * Возвращает копию сравнения с назначенными номерами ячеек переменных контекста
+     *
+     * @param firstContextSlot  номер ячейки первого операнда или -1
+     * @param secondContextSlot номер ячейки второго операнда или -1
+     * @return новый {@link ComparisonToken}, равный текущему
+     */
+    public ComparisonToken withContextSlots(int firstContextSlot, int secondContextSlot) {
+        return new ComparisonToken(firstValue, firstValueType, secondValue, secondValueType, comparisonType,
+                firstContextSlot, secondContextSlot, comparisonId);
+    }
+
+    /**
+     * @return номер сравнения в хранилище правил или -1, если номер не назначен
+     */
+    public int getComparisonId() {
+        return comparisonId;
+    }
+
+    /**
+     * Возвращает копию сравнения с назначенным номером
+     *
+     * @param comparisonId номер сравнения или -1
+     * @return новый {@link ComparisonToken}, равный текущему
+     */
+    public ComparisonToken withComparisonId(int comparisonId) {
+        return new ComparisonToken(firstValue, firstValueType, secondValue, secondValueType, comparisonType,
+                firstContextSlot, secondContextSlot, comparisonId);
+    }
+
+    /**
+     * Проверяет, может ли сравнение оказаться невозможным при решении. Неравенство возможно только
+     * для двух чисел или двух значений даты / времени, поэтому неравенство с переменной контекста или аргументом
+     * может быть невозможно. Равенство может быть невозможно, если значение даты / времени из контекста
+     * имеет неподдерживаемый тип. Любое сравнение с путем к вложенному значению контекста может быть невозможно,
+     * так как значение может не читаться
+     *
+     * @return true, если для некоторых значений операндов решение сравнения выбрасывает исключение
+     */
+    public boolean canFail() {
+        if (isContextPath(firstValue, firstValueType) || isContextPath(secondValue, secondValueType)) {
+            return true;
+        }
+        if (comparisonType == ComparisonType.EQUALS) {
+            return firstValueType == ValueType.GRAPHQL_CONTEXT_FIELD_NAME && isContextOrTemporal(secondValueType) ||
+                    secondValueType == ValueType.GRAPHQL_CONTEXT_FIELD_NAME && isContextOrTemporal(firstValueType);
+        }
+        return !(isNumber(firstValueType) && isNumber(secondValueType)) &&
+                !(isTemporalOrNow(firstValueType) && isTemporalOrNow(secondValueType));
+    }
+
+    private static boolean isContextPath(Object value, ValueType valueType) {
+        return valueType == ValueType.GRAPHQL_CONTEXT_FIELD_NAME && value.toString().indexOf('.') > 0;
+    }
+
+    private static boolean isContextOrTemporal(ValueType valueType) {
+        return valueType == ValueType.GRAPHQL_CONTEXT_FIELD_NAME || isTemporalOrNow(valueType);
+    }
+
+    private static boolean isNumber(ValueType valueType) {
+        return valueType == ValueType.INTEGER || valueType == ValueType.REAL;
+    }
+
+    private static boolean isTemporalOrNow(ValueType valueType) {
+        return valueType == ValueType.ZONED_DATE_TIME || valueType == ValueType.LOCAL_DATE_TIME ||
+                valueType == ValueType.LOCAL_DATE || valueType == ValueType.LOCAL_TIME || valueType == ValueType.NOW;
+    }
+
     /**
      * <p>
      * Сравнивает объекты {@link ComparisonToken}
@@ -217,7 +314,11 @@ public class ComparisonToken implements Token {
         ZONED_DATE_TIME,
         LOCAL_DATE_TIME,
         LOCAL_DATE,
-        LOCAL_TIME
+        LOCAL_TIME,
+        /**
+         * Текущий момент времени, фиксируемый один раз за запрос
+         */
+        NOW
     }
 
     /**
@@ -248,6 +349,13 @@ public class ComparisonToken implements Token {
         INSTANCE
     }
 
+    /**
+     * Объект, используемый как значение для операнда с типом {@link ValueType#NOW}
+     */
+    public enum NowValue {
+        INSTANCE
+    }
+
     /**
      * Класс, используемый для построения нового {@link ComparisonToken}
      */
@@ -444,6 +552,8 @@ public class ComparisonToken implements Token {
          */
         private void checkNotComparableTypes() {
             if (firstValueType != secondValueType &&
+                    !(firstValueType == ValueType.NOW && isTemporal(secondValueType)) &&
+                    !(secondValueType == ValueType.NOW && isTemporal(firstValueType)) &&
                     firstValueType != ValueType.GRAPHQL_ARGUMENT_NAME &&
                     firstValueType != ValueType.GRAPHQL_CONTEXT_FIELD_NAME &&
                     secondValueType != ValueType.GRAPHQL_ARGUMENT_NAME &&
@@ -453,6 +563,15 @@ public class ComparisonToken implements Token {
             }
         }
 
+        /**
+         * @param valueType тип операнда
+         * @return является ли тип операнда датой / временем
+         */
+        private boolean isTemporal(ValueType valueType) {
+            return valueType == ValueType.ZONED_DATE_TIME || valueType == ValueType.LOCAL_DATE_TIME ||
+                    valueType == ValueType.LOCAL_DATE || valueType == ValueType.LOCAL_TIME;
+        }
+
         /**
          * Преобразует значение операнда в корректный для хранения вид
          *
@@ -460,9 +579,9 @@ public class ComparisonToken implements Token {
          * @param type  тип операнда
          * @return если тип {@link ValueType#INTEGER} - значение в виде {@link Long},
          * если тип {@link ValueType#REAL} - значение в виде {@link Double},
-         * если значение имеет тип {@link LocalDate} или {@link LocalTime} или {@link LocalDateTime} -
-         * значение в виде {@link java.time.ZonedDateTime},
-         * иначе - исходное значение
+         * если значение имеет тип {@link ZonedDateTime} - момент времени в виде {@link Instant},
+         * иначе - исходное значение. Значения {@link LocalDate}, {@link LocalDateTime} и {@link LocalTime}
+         * не имеют часового пояса и относятся к часовому поясу (а время суток - к дате) текущего момента запроса
          * @throws IllegalArgumentException, если не удается преобразование объекта в корректный вид
          */
         private Object transformToCorrectJavaType(Object value, ValueType type) {
@@ -472,8 +591,8 @@ public class ComparisonToken implements Token {
             if (type == ValueType.REAL && value instanceof Number) {
                 value = ((Number) value).doubleValue();
             }
-            if (value instanceof LocalDateTime || value instanceof LocalDate || value instanceof LocalTime) {
-                value = TemporalToZonedDateTimeConverter.convert((Temporal) value);
+            if (value instanceof ZonedDateTime) {
+                value = ((ZonedDateTime) value).toInstant();
             }
 
             return value;
@@ -4,7 +4,8 @@ import java.time.*;
 import java.time.temporal.Temporal;
 
 /**
- * Класс для конвертации {@link LocalTime}, {@link LocalDate}, {@link LocalDateTime} в {@link ZonedDateTime}
+ * Класс для конвертации {@link LocalTime}, {@link LocalDate}, {@link LocalDateTime}, {@link Instant}
+ * в {@link ZonedDateTime} и {@link Instant}
  */
 public class TemporalToZonedDateTimeConverter {
     /**
@@ -30,4 +31,37 @@ public class TemporalToZonedDateTimeConverter {
         }
         throw new IllegalArgumentException(String.format("Can't convert %s to ZonedDateTime", value.getClass()));
     }
+
+    /**
+     * Конвертирует дату / время в момент времени. Значения без часового пояса относятся к часовому поясу
+     * текущего момента, а {@link LocalTime} - к его дате
+     *
+     * @param value объект даты/времени {@link java.time}
+     * @param now   текущий момент времени
+     * @return момент времени {@link Instant}
+     * @throws IllegalArgumentException, если тип не является одним из {@link LocalTime}, {@link LocalDate},
+     *                                   {@link LocalDateTime}, {@link ZonedDateTime}, {@link OffsetDateTime},
+     *                                   {@link Instant}
+     */
+    public static Instant toInstant(Temporal value, ZonedDateTime now) {
+        if (value instanceof Instant) {
+            return (Instant) value;
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).toInstant();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(now.getZone()).toInstant();
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay(now.getZone()).toInstant();
+        }
+        if (value instanceof LocalTime) {
+            return ((LocalTime) value).atDate(now.toLocalDate()).atZone(now.getZone()).toInstant();
+        }
+        throw new IllegalArgumentException(String.format("Can't convert %s to Instant", value.getClass()));
+    }
 }
@@ -0,0 +1,119 @@
+package ru.liboskat.graphql.security.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.liboskat.graphql.security.execution.SecurityInstrumentation.OperationType;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
+import ru.liboskat.graphql.security.storage.ruletarget.RuleTargetInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncFileAuditLogTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    void onDecision_withDefaultSampling_shouldWriteOnlyDenials() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AsyncFileAuditLog auditLog = AsyncFileAuditLog.newAsyncFileAuditLog(file).build();
+
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "allowed"), OperationType.READ, true, null, null);
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "denied"), OperationType.WRITE, false, null, null);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertAll(
+                () -> assertEquals(1, lines.size()),
+                () -> assertTrue(lines.get(0).endsWith("\tWRITE\tDENY\t" +
+                        FieldInfo.newFieldInfo("Query", "denied"))),
+                () -> assertEquals(1, auditLog.getWrittenCount()),
+                () -> assertEquals(0, auditLog.getDroppedCount()));
+    }
+
+    @Test
+    void onDecision_withFingerprintAndOperationName_shouldWriteThem() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AsyncFileAuditLog auditLog = AsyncFileAuditLog.newAsyncFileAuditLog(file).build();
+
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "field"), OperationType.READ, false, "user-1", "Fields");
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "field"), OperationType.READ, false, null, null);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertAll(
+                () -> assertEquals(2, lines.size()),
+                () -> assertTrue(lines.get(0).contains("\tuser-1\tFields\tREAD\tDENY\t")),
+                () -> assertTrue(lines.get(1).contains("\t-\t-\tREAD\tDENY\t")));
+    }
+
+    @Test
+    void onDecision_withFailingTarget_shouldCountFailedAndContinue() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AsyncFileAuditLog auditLog = AsyncFileAuditLog.newAsyncFileAuditLog(file).build();
+        RuleTargetInfo failingTarget = new RuleTargetInfo() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("toString failed");
+            }
+        };
+
+        auditLog.onDecision(failingTarget, OperationType.READ, false, null, null);
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "field"), OperationType.READ, false, null, null);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertAll(
+                () -> assertEquals(1, lines.size()),
+                () -> assertTrue(lines.get(0).endsWith(FieldInfo.newFieldInfo("Query", "field").toString())),
+                () -> assertEquals(1, auditLog.getFailedCount()),
+                () -> assertEquals(1, auditLog.getWrittenCount()));
+    }
+
+    @Test
+    void onDecision_withSmallMaxFileSize_shouldRollFiles() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AsyncFileAuditLog auditLog = AsyncFileAuditLog.newAsyncFileAuditLog(file)
+                .grantSampleRate(1)
+                .maxFileSize(1)
+                .maxFiles(2)
+                .build();
+
+        for (int i = 0; i < 4; i++) {
+            auditLog.onDecision(FieldInfo.newFieldInfo("Query", "field" + i), OperationType.READ, true, null, null);
+        }
+        auditLog.close();
+
+        assertAll(
+                () -> assertTrue(Files.readAllLines(file).get(0).contains("field3")),
+                () -> assertTrue(Files.readAllLines(directory.resolve("audit.log.1")).get(0).contains("field2")),
+                () -> assertTrue(Files.readAllLines(directory.resolve("audit.log.2")).get(0).contains("field1")),
+                () -> assertFalse(Files.exists(directory.resolve("audit.log.3"))),
+                () -> assertEquals(4, auditLog.getWrittenCount()));
+    }
+
+    @Test
+    void onDecision_afterClose_shouldCountDropped() {
+        AsyncFileAuditLog auditLog = AsyncFileAuditLog.newAsyncFileAuditLog(directory.resolve("audit.log")).build();
+        auditLog.close();
+
+        auditLog.onDecision(FieldInfo.newFieldInfo("Query", "field"), OperationType.READ, false, null, null);
+
+        assertEquals(1, auditLog.getDroppedCount());
+    }
+
+    @Test
+    void build_withInvalidParameters_shouldThrowException() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () ->
+                        AsyncFileAuditLog.newAsyncFileAuditLog((Path) null)),
+                () -> assertThrows(IllegalArgumentException.class, () ->
+                        AsyncFileAuditLog.newAsyncFileAuditLog(directory).denialSampleRate(1.5)),
+                () -> assertThrows(IllegalArgumentException.class, () ->
+                        AsyncFileAuditLog.newAsyncFileAuditLog(directory).bufferCapacity(0)));
+    }
+}
@@ -0,0 +1,70 @@
+package ru.liboskat.graphql.security.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionRingBufferTests {
+    @Test
+    void new_withCapacityNotPowerOfTwo_shouldRoundUp() {
+        assertAll(
+                () -> assertEquals(1, new DecisionRingBuffer<>(1).capacity()),
+                () -> assertEquals(8, new DecisionRingBuffer<>(5).capacity()),
+                () -> assertEquals(8, new DecisionRingBuffer<>(8).capacity()),
+                () -> assertThrows(IllegalArgumentException.class, () -> new DecisionRingBuffer<>(0)));
+    }
+
+    @Test
+    void offer_whenFull_shouldReject() {
+        DecisionRingBuffer<Integer> buffer = new DecisionRingBuffer<>(2);
+
+        assertAll(
+                () -> assertTrue(buffer.offer(1)),
+                () -> assertTrue(buffer.offer(2)),
+                () -> assertFalse(buffer.offer(3)),
+                () -> assertEquals(2, buffer.size()));
+    }
+
+    @Test
+    void drain_afterWrapAround_shouldKeepOrder() {
+        DecisionRingBuffer<Integer> buffer = new DecisionRingBuffer<>(2);
+        List<Integer> drained = new ArrayList<>();
+        buffer.offer(1);
+        buffer.offer(2);
+        buffer.drain(drained::add, 1);
+        buffer.offer(3);
+
+        int count = buffer.drain(drained::add, 10);
+
+        assertAll(
+                () -> assertEquals(2, count),
+                () -> assertEquals(Arrays.asList(1, 2, 3), drained),
+                () -> assertEquals(0, buffer.size()));
+    }
+
+    @Test
+    void offer_fromSeveralThreads_shouldDeliverEveryAcceptedElement() throws InterruptedException {
+        DecisionRingBuffer<Integer> buffer = new DecisionRingBuffer<>(1 << 16);
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    buffer.offer(j);
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        List<Integer> drained = new ArrayList<>();
+
+        buffer.drain(drained::add, Integer.MAX_VALUE);
+
+        assertEquals(4000, drained.size());
+    }
+}
@@ -0,0 +1,86 @@
+package ru.liboskat.graphql.security.events;
+
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.execution.SecurityContext;
+import ru.liboskat.graphql.security.execution.SecurityInstrumentation;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SecurityEventsTests {
+    @Test
+    void beginAuthorizationCheck_withoutRecording_shouldReturnNoOp() {
+        assertSame(AuthorizationCheckRecording.NO_OP, SecurityEvents.beginAuthorizationCheck());
+    }
+
+    @Test
+    void query_withRecording_shouldEmitEvents() throws IOException {
+        assumeTrue(SecurityEvents.isJfrAvailable());
+        Path file = Files.createTempFile("security-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(AuthorizationCheckEvent.NAME).withoutThreshold();
+            recording.enable(StorageBuildEvent.NAME).withoutThreshold();
+            recording.start();
+
+            TypeDefinitionRegistry registry = new SchemaParser().parse(
+                    "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                            "type Query { field: String @auth(r: \"role = 'admin'\") }");
+            AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                    .fromTypeDefinitionRegistry(registry)
+                    .build();
+            GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                    .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                    .build());
+            GraphQL.newGraphQL(schema)
+                    .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                    .build()
+                    .execute(ExecutionInput.newExecutionInput()
+                            .context(SecurityContext.newSecurityContext().field("role", "user").build())
+                            .query("{ field }")
+                            .build());
+
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> checks = filter(events, AuthorizationCheckEvent.NAME);
+            List<RecordedEvent> builds = filter(events, StorageBuildEvent.NAME);
+
+            assertAll(
+                    () -> assertEquals(1, checks.size()),
+                    () -> assertEquals(FieldInfo.newFieldInfo("Query", "field").toString(),
+                            checks.get(0).getString("target")),
+                    () -> assertEquals("READ", checks.get(0).getString("operationType")),
+                    () -> assertFalse(checks.get(0).getBoolean("allowed")),
+                    () -> assertEquals(1, checks.get(0).getInt("expressionSize")),
+                    () -> assertEquals(1, builds.size()),
+                    () -> assertEquals(1, builds.get(0).getInt("ruleCount")),
+                    () -> assertTrue(builds.get(0).getBoolean("successful")));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private List<RecordedEvent> filter(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> name.equals(event.getEventType().getName()))
+                .collect(Collectors.toList());
+    }
+}
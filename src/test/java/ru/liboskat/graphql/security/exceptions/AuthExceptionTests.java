@@ -0,0 +1,57 @@
+package ru.liboskat.graphql.security.exceptions;
+
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthExceptionTests {
+    @Test
+    void accessDenied_shouldHaveNoStackTraceAndPreformattedExtensions() {
+        FieldInfo target = FieldInfo.newFieldInfo("Query", "field");
+
+        AuthException exception = AuthException.accessDenied(target);
+        Map<String, Object> extensions = exception.getExtensions();
+
+        assertAll(
+                () -> assertEquals(0, exception.getStackTrace().length),
+                () -> assertEquals("Access denied to " + target, exception.getMessage()),
+                () -> assertEquals(target.toString(), extensions.get(AuthException.TARGET_ATTRIBUTE_NAME)),
+                () -> assertEquals(AuthException.STATUS_CODE_NUMBER,
+                        extensions.get(AuthException.STATUS_CODE_ATTRIBUTE_NAME)),
+                () -> assertSame(extensions, exception.getExtensions()),
+                () -> assertThrows(UnsupportedOperationException.class, () -> extensions.put("key", "value")));
+    }
+
+    @Test
+    void accessDenied_withNullTarget_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> AuthException.accessDenied(null));
+    }
+
+    @Test
+    void new_withMessage_shouldHaveOnlyStatusCodeExtension() {
+        AuthException exception = new AuthException("message");
+
+        assertAll(
+                () -> assertEquals(1, exception.getExtensions().size()),
+                () -> assertEquals(AuthException.STATUS_CODE_NUMBER,
+                        exception.getExtensions().get(AuthException.STATUS_CODE_ATTRIBUTE_NAME)),
+                () -> assertNotEquals(0, exception.getStackTrace().length));
+    }
+
+    @Test
+    void new_withTarget_shouldKeepSuppressionAndCause() {
+        AuthException exception = new AuthException(FieldInfo.newFieldInfo("Query", "field"));
+        IllegalStateException suppressed = new IllegalStateException("suppressed");
+        IllegalStateException cause = new IllegalStateException("cause");
+        exception.addSuppressed(suppressed);
+        exception.initCause(cause);
+
+        assertAll(
+                () -> assertArrayEquals(new Throwable[]{suppressed}, exception.getSuppressed()),
+                () -> assertSame(cause, exception.getCause()),
+                () -> assertNotEquals(0, exception.getStackTrace().length));
+    }
+}
@@ -0,0 +1,56 @@
+package ru.liboskat.graphql.security.execution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedMapTests {
+    @Test
+    void put_whenFull_shouldEvictOneEntry() {
+        BoundedMap<Integer, Long> map = new BoundedMap<>(3, null);
+
+        for (int i = 0; i < 10; i++) {
+            map.put(i, (long) i, 0);
+        }
+
+        assertAll(
+                () -> assertEquals(3, map.size()),
+                () -> assertEquals(Long.valueOf(9), map.get(9)));
+    }
+
+    @Test
+    void put_whenFull_shouldRemoveExpiredEntries() {
+        BoundedMap<Integer, Long> map = new BoundedMap<>(4, expiresAt -> expiresAt);
+        map.put(0, 10L, 0);
+        map.put(1, 10L, 0);
+        map.put(2, 100L, 0);
+        map.put(3, 100L, 0);
+
+        map.put(4, 100L, 50);
+
+        assertAll(
+                () -> assertEquals(3, map.size()),
+                () -> assertNull(map.get(0)),
+                () -> assertNull(map.get(1)),
+                () -> assertEquals(Long.valueOf(100), map.get(2)),
+                () -> assertEquals(Long.valueOf(100), map.get(3)));
+    }
+
+    @Test
+    void computeIfAbsent_whenFull_shouldKeepMaximumSize() {
+        BoundedMap<Integer, String> map = new BoundedMap<>(2, null);
+
+        for (int i = 0; i < 5; i++) {
+            map.computeIfAbsent(i, String::valueOf);
+        }
+
+        assertAll(
+                () -> assertEquals(2, map.size()),
+                () -> assertEquals("4", map.computeIfAbsent(4, key -> "other")));
+    }
+
+    @Test
+    void new_withInvalidMaximumSize_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedMap<>(0, null));
+    }
+}
@@ -0,0 +1,146 @@
+package ru.liboskat.graphql.security.execution;
+
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.expression.parsing.ExpressionParser;
+import ru.liboskat.graphql.security.expression.parsing.SimpleExpressionParser;
+import ru.liboskat.graphql.security.expression.transforming.RpnExpressionConverter;
+import ru.liboskat.graphql.security.expression.transforming.ShuntingYardExpressionConverter;
+import ru.liboskat.graphql.security.storage.TokenExpression;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionCacheTests {
+    private final TokenExpressionSolverImpl solver = new TokenExpressionSolverImpl();
+    private final ExpressionParser expressionParser = new SimpleExpressionParser();
+    private final RpnExpressionConverter rpnExpressionConverter = new ShuntingYardExpressionConverter();
+
+    @Test
+    void partiallySolve_sameContextValues_shouldHit() {
+        DecisionCache cache = DecisionCache.newDecisionCache().build();
+        TokenExpression expression = toRpn("a = 'a'");
+
+        cache.partiallySolve(expression, context("a", null), solver);
+        PartiallySolvedExpression solved = cache.partiallySolve(expression, context("a", null), solver);
+
+        assertAll(
+                () -> assertSame(PartiallySolvedExpression.TRUE, solved),
+                () -> assertEquals(1, cache.getHitCount()),
+                () -> assertEquals(1, cache.getMissCount()),
+                () -> assertEquals(0.5, cache.getHitRate()));
+    }
+
+    @Test
+    void partiallySolve_differentContextValues_shouldMiss() {
+        DecisionCache cache = DecisionCache.newDecisionCache().build();
+        TokenExpression expression = toRpn("a = 'a'");
+
+        cache.partiallySolve(expression, context("a", null), solver);
+        PartiallySolvedExpression solved = cache.partiallySolve(expression, context("b", null), solver);
+
+        assertAll(
+                () -> assertSame(PartiallySolvedExpression.FALSE, solved),
+                () -> assertEquals(0, cache.getHitCount()),
+                () -> assertEquals(2, cache.size()));
+    }
+
+    @Test
+    void partiallySolve_sameFingerprint_shouldHit() {
+        DecisionCache cache = DecisionCache.newDecisionCache().build();
+        TokenExpression expression = toRpn("a = 'a'");
+
+        cache.partiallySolve(expression, context("a", "user"), solver);
+        PartiallySolvedExpression solved = cache.partiallySolve(expression, context("b", "user"), solver);
+
+        assertAll(
+                () -> assertSame(PartiallySolvedExpression.TRUE, solved),
+                () -> assertEquals(1, cache.getHitCount()));
+    }
+
+    @Test
+    void partiallySolve_argumentOrTemporalExpression_shouldBypassCache() {
+        DecisionCache cache = DecisionCache.newDecisionCache().build();
+
+        cache.partiallySolve(toRpn("a = 'a' & $b = 'b'"), context("a", null), solver);
+        cache.partiallySolve(toRpn("a < {2020-12-16}"), context("a", null), solver);
+
+        assertAll(
+                () -> assertEquals(0, cache.size()),
+                () -> assertEquals(0, cache.getMissCount()));
+    }
+
+    @Test
+    void partiallySolve_expiredEntry_shouldMiss() {
+        AtomicLong time = new AtomicLong();
+        DecisionCache cache = DecisionCache.newDecisionCache()
+                .ttl(Duration.ofSeconds(1))
+                .ticker(time::get)
+                .build();
+        TokenExpression expression = toRpn("a = 'a'");
+
+        cache.partiallySolve(expression, context("a", null), solver);
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+        cache.partiallySolve(expression, context("a", null), solver);
+
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void partiallySolve_fullCache_shouldNotExceedMaximumSize() {
+        DecisionCache cache = DecisionCache.newDecisionCache()
+                .maximumSize(2)
+                .build();
+        TokenExpression expression = toRpn("a = 'a'");
+
+        cache.partiallySolve(expression, context("a", null), solver);
+        cache.partiallySolve(expression, context("b", null), solver);
+        cache.partiallySolve(expression, context("c", null), solver);
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void partiallySolve_unreadableContextValue_shouldDenyWithoutCaching() {
+        DecisionCache cache = DecisionCache.newDecisionCache().build();
+        TokenExpression expression = toRpn("user.bad = 'y' | a = 'x'");
+        SecurityContext context = SecurityContext.newSecurityContext()
+                .field("user", new FailingUser())
+                .field("a", "x")
+                .build();
+
+        PartiallySolvedExpression solved = cache.partiallySolve(expression, context, solver);
+
+        assertAll(
+                () -> assertSame(PartiallySolvedExpression.FALSE, solved),
+                () -> assertEquals(0, cache.size()),
+                () -> assertEquals(0, cache.getMissCount()));
+    }
+
+    @Test
+    void build_withIncorrectParameters_shouldThrowException() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> DecisionCache.newDecisionCache().ttl(Duration.ZERO)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> DecisionCache.newDecisionCache().maximumSize(0)));
+    }
+
+    private TokenExpression toRpn(String expression) {
+        return rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+    }
+
+    private SecurityContext context(String a, Object fingerprint) {
+        return SecurityContext.newSecurityContext()
+                .field("a", a)
+                .fingerprint(fingerprint)
+                .build();
+    }
+
+    private static class FailingUser {
+        public String getBad() {
+            throw new IllegalStateException("bad");
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ru.liboskat.graphql.security.execution;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLInputObjectType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.exceptions.AuthException;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilteredSchemaProviderTests {
+    private AccessRuleStorage accessRuleStorage;
+    private GraphQLSchema schema;
+
+    @BeforeEach
+    void init() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on OBJECT | FIELD_DEFINITION | " +
+                        "INPUT_OBJECT | INPUT_FIELD_DEFINITION\n" +
+                        "type Query { " +
+                        "public: String, " +
+                        "admin: String @auth(rw: \"role = 'admin'\"), " +
+                        "byArgument(id: String): String @auth(rw: \"$id = 'id' | role = 'admin'\"), " +
+                        "secret: Secret, " +
+                        "search(filter: Filter): String }\n" +
+                        "type Secret @auth(rw: \"role = 'admin'\") { value: String }\n" +
+                        "input Filter { name: String, owner: String @auth(rw: \"role = 'admin'\") }");
+        accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder
+                        .dataFetcher("public", env -> "public")
+                        .dataFetcher("admin", env -> "admin"))
+                .build());
+    }
+
+    @Test
+    void getSchema_forUser_shouldHideDeniedFields() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        GraphQLSchema view = provider.getSchema(context("user"));
+        GraphQLObjectType query = view.getQueryType();
+        GraphQLInputObjectType filter = (GraphQLInputObjectType) view.getType("Filter");
+
+        assertAll(
+                () -> assertNotNull(visibleField(view, query, "public")),
+                () -> assertNull(visibleField(view, query, "admin")),
+                () -> assertNull(visibleField(view, query, "secret")),
+                () -> assertNotNull(visibleField(view, query, "byArgument")),
+                () -> assertNotNull(visibleField(view, query, "search")),
+                () -> assertEquals(3, view.getCodeRegistry().getFieldVisibility()
+                        .getFieldDefinitions(query).size()),
+                () -> assertNotNull(view.getCodeRegistry().getFieldVisibility().getFieldDefinition(filter, "name")),
+                () -> assertNull(view.getCodeRegistry().getFieldVisibility().getFieldDefinition(filter, "owner")));
+    }
+
+    @Test
+    void getSchema_forAdmin_shouldShowAllFields() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        GraphQLSchema view = provider.getSchema(context("admin"));
+
+        assertEquals(5, view.getCodeRegistry().getFieldVisibility().getFieldDefinitions(view.getQueryType()).size());
+    }
+
+    @Test
+    void getSchema_sameRoles_shouldReuseView() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        GraphQLSchema first = provider.getSchema(context("user"));
+        GraphQLSchema second = provider.getSchema(context("user"));
+        GraphQLSchema admin = provider.getSchema(context("admin"));
+
+        assertAll(
+                () -> assertSame(first, second),
+                () -> assertNotSame(first, admin),
+                () -> assertEquals(2, provider.size()),
+                () -> assertEquals(1, provider.getHitCount()),
+                () -> assertEquals(2, provider.getMissCount()));
+    }
+
+    @Test
+    void getSchema_withViewKey_shouldUseKey() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .viewKey(context -> "all")
+                .build();
+
+        assertSame(provider.getSchema(context("user")), provider.getSchema(context("admin")));
+    }
+
+    @Test
+    void getSchema_overMaximumSize_shouldEvictViews() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .maximumSize(1)
+                .build();
+        provider.getSchema(context("user"));
+        provider.getSchema(context("admin"));
+
+        assertEquals(1, provider.size());
+    }
+
+    @Test
+    void getSchema_unreadableContextPath_shouldHideFieldWithoutCaching() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { public: String, bad: String @auth(rw: \"user.bad = 'y'\") }");
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(
+                AccessRuleStorage.newAccessRuleStorage().fromTypeDefinitionRegistry(registry).build(),
+                new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring().build()))
+                .build();
+        SecurityContext context = SecurityContext.newSecurityContext()
+                .field("user", new SecurityInstrumentationTests.FailingUser())
+                .build();
+        GraphQLSchema view = provider.getSchema(context);
+
+        assertAll(
+                () -> assertNotNull(visibleField(view, view.getQueryType(), "public")),
+                () -> assertNull(visibleField(view, view.getQueryType(), "bad")),
+                () -> assertEquals(0, provider.size()));
+    }
+
+    @Test
+    void introspection_forUser_shouldNotListDeniedFields() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        SecurityContext context = context("user");
+        ExecutionResult result = GraphQL.newGraphQL(provider.getSchema(context))
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build()
+                .execute(ExecutionInput.newExecutionInput()
+                        .context(context)
+                        .query("{ __type(name: \"Query\") { fields { name } } }")
+                        .build());
+        Map<String, Map<String, List<Map<String, Object>>>> data = result.getData();
+        List<Object> names = data.get("__type").get("fields").stream()
+                .map(field -> field.get("name"))
+                .collect(Collectors.toList());
+
+        assertAll(
+                () -> assertTrue(result.getErrors().isEmpty()),
+                () -> assertTrue(names.contains("public")),
+                () -> assertFalse(names.contains("admin")),
+                () -> assertFalse(names.contains("secret")));
+    }
+
+    @Test
+    void query_hiddenFieldForUser_shouldFailValidation() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        SecurityContext context = context("user");
+        ExecutionResult result = GraphQL.newGraphQL(provider.getSchema(context))
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build()
+                .execute(ExecutionInput.newExecutionInput()
+                        .context(context)
+                        .query("{ admin }")
+                        .build());
+
+        assertAll(
+                () -> assertNull(result.getData()),
+                () -> assertEquals(1, result.getErrors().size()),
+                () -> assertTrue(result.getErrors().get(0).getMessage().contains("FieldUndefined")));
+    }
+
+    @Test
+    void query_visibleFieldForAdmin_shouldExecute() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        SecurityContext context = context("admin");
+        ExecutionResult result = GraphQL.newGraphQL(provider.getSchema(context))
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build()
+                .execute(ExecutionInput.newExecutionInput()
+                        .context(context)
+                        .query("{ admin }")
+                        .build());
+        Map<String, Object> data = result.getData();
+
+        assertAll(
+                () -> assertTrue(result.getErrors().isEmpty()),
+                () -> assertEquals("admin", data.get("admin")));
+    }
+
+    @Test
+    void query_throughViews_shouldUseBaseSchemaRules() {
+        FilteredSchemaProvider provider = FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, schema)
+                .build();
+        SecurityInstrumentation instrumentation = SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                .build();
+        SecurityContext user = context("user");
+        SecurityContext admin = context("admin");
+        ExecutionResult denied = GraphQL.newGraphQL(provider.getSchema(user))
+                .instrumentation(instrumentation)
+                .build()
+                .execute(ExecutionInput.newExecutionInput()
+                        .context(user)
+                        .query("{ byArgument(id: \"other\") }")
+                        .build());
+        ExecutionResult allowed = GraphQL.newGraphQL(provider.getSchema(admin))
+                .instrumentation(instrumentation)
+                .build()
+                .execute(ExecutionInput.newExecutionInput()
+                        .context(admin)
+                        .query("{ admin }")
+                        .build());
+
+        assertAll(
+                () -> assertEquals(1, denied.getErrors().size()),
+                () -> assertTrue(denied.getErrors().get(0) instanceof AuthException),
+                () -> assertTrue(allowed.getErrors().isEmpty()),
+                () -> assertEquals(1, instrumentation.getBoundSchemaCount()));
+    }
+
+    @Test
+    void newFilteredSchemaProvider_withNullSchema_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> FilteredSchemaProvider.newFilteredSchemaProvider(accessRuleStorage, null));
+    }
+
+    private Object visibleField(GraphQLSchema view, GraphQLObjectType type, String name) {
+        return view.getCodeRegistry().getFieldVisibility().getFieldDefinition(type, name);
+    }
+
+    private SecurityContext context(String role) {
+        return SecurityContext.newSecurityContext().field("role", role).build();
+    }
+}
@@ -0,0 +1,73 @@
+package ru.liboskat.graphql.security.execution;
+
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
+import ru.liboskat.graphql.security.storage.ruletarget.SchemaInfo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongAdderSecurityMetricsTests {
+    @Test
+    void snapshot_withEvaluations_shouldCountPerTarget() {
+        LongAdderSecurityMetrics metrics = new LongAdderSecurityMetrics();
+        metrics.recordEvaluation(FieldInfo.newFieldInfo("Query", "field"), true);
+        metrics.recordEvaluation(FieldInfo.newFieldInfo("Query", "field"), false);
+        metrics.recordCacheHit(FieldInfo.newFieldInfo("Query", "field"));
+        metrics.recordEvaluation(SchemaInfo.newSchemaInfo(), true);
+
+        SecurityMetricsSnapshot snapshot = metrics.snapshot();
+        SecurityMetricsSnapshot.TargetMetrics field = snapshot.getTargets().get(FieldInfo.newFieldInfo("Query", "field"));
+        SecurityMetricsSnapshot.TargetMetrics schema = snapshot.getTargets().get(SchemaInfo.newSchemaInfo());
+
+        assertAll(
+                () -> assertEquals(2, field.getEvaluations()),
+                () -> assertEquals(1, field.getDenials()),
+                () -> assertEquals(1, field.getCacheHits()),
+                () -> assertEquals(1, schema.getEvaluations()),
+                () -> assertEquals(0, schema.getDenials()));
+    }
+
+    @Test
+    void snapshot_withOperations_shouldBuildHistogram() {
+        LongAdderSecurityMetrics metrics = new LongAdderSecurityMetrics();
+        metrics.recordOperation(0);
+        metrics.recordOperation(1);
+        metrics.recordOperation(1000);
+        metrics.recordOperation(1023);
+
+        SecurityMetricsSnapshot snapshot = metrics.snapshot();
+        long[] buckets = snapshot.getLatencyBuckets();
+
+        assertAll(
+                () -> assertEquals(4, snapshot.getOperationCount()),
+                () -> assertEquals(2024, snapshot.getTotalAuthorizationNanos()),
+                () -> assertEquals(1, buckets[0]),
+                () -> assertEquals(1, buckets[1]),
+                () -> assertEquals(2, buckets[10]),
+                () -> assertEquals(1, snapshot.getLatencyPercentileNanos(50)),
+                () -> assertEquals(1023, snapshot.getLatencyPercentileNanos(100)));
+    }
+
+    @Test
+    void snapshot_afterRecording_shouldNotChange() {
+        LongAdderSecurityMetrics metrics = new LongAdderSecurityMetrics();
+        metrics.recordOperation(10);
+        SecurityMetricsSnapshot snapshot = metrics.snapshot();
+
+        metrics.recordOperation(10);
+        metrics.reset();
+
+        assertAll(
+                () -> assertEquals(1, snapshot.getOperationCount()),
+                () -> assertEquals(0, metrics.snapshot().getOperationCount()));
+    }
+
+    @Test
+    void getLatencyPercentileNanos_withInvalidPercentile_shouldThrowException() {
+        SecurityMetricsSnapshot snapshot = new LongAdderSecurityMetrics().snapshot();
+
+        assertAll(
+                () -> assertEquals(0, snapshot.getLatencyPercentileNanos(99)),
+                () -> assertThrows(IllegalArgumentException.class, () -> snapshot.getLatencyPercentileNanos(101)));
+    }
+}
@@ -0,0 +1,161 @@
+package ru.liboskat.graphql.security.execution;
+
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.exceptions.AuthException;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegativeDecisionCacheTests {
+    private final FieldInfo target = FieldInfo.newFieldInfo("Query", "field");
+    private final AuthException denial = AuthException.accessDenied(target);
+
+    @Test
+    void keyOf_withoutFingerprint_shouldReturnNull() {
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache().build();
+
+        assertAll(
+                () -> assertNull(cache.keyOf("{ field }", null, Collections.emptyMap(), context(null))),
+                () -> assertNull(cache.keyOf("{ field }", null, Collections.emptyMap(), null)),
+                () -> assertNull(cache.keyOf(null, null, Collections.emptyMap(), context("user"))));
+    }
+
+    @Test
+    void getDenial_withSameOperation_shouldHit() {
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache().build();
+        cache.putDenial(cache.keyOf("{ field }", "op", Collections.emptyMap(), context("user")), denial, target);
+
+        assertAll(
+                () -> assertSame(denial, cache.getDenial(
+                        cache.keyOf("{ field }", "op", Collections.emptyMap(), context("user"))).getDenial()),
+                () -> assertEquals(target, cache.getDenial(
+                        cache.keyOf("{ field }", "op", Collections.emptyMap(), context("user"))).getTarget()),
+                () -> assertNull(cache.getDenial(
+                        cache.keyOf("{ field }", "op", Collections.emptyMap(), context("other")))),
+                () -> assertNull(cache.getDenial(
+                        cache.keyOf("{ field }", "op", Collections.singletonMap("a", "b"), context("user")))),
+                () -> assertNull(cache.getDenial(
+                        cache.keyOf("{ field }", null, Collections.emptyMap(), context("user")))),
+                () -> assertEquals(2, cache.getHitCount()),
+                () -> assertEquals(3, cache.getMissCount()),
+                () -> assertEquals(1, cache.getDenialCount()));
+    }
+
+    @Test
+    void keyOf_shouldDependOnVariableValuesButNotOrder() {
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache().build();
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("a", "x");
+        variables.put("b", Collections.singletonList(1));
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("b", Collections.singletonList(1));
+        reordered.put("a", "x");
+
+        assertAll(
+                () -> assertEquals(cache.keyOf("{ field }", null, variables, context("user")),
+                        cache.keyOf("{ field }", null, reordered, context("user"))),
+                () -> assertNotEquals(cache.keyOf("{ field }", null, variables, context("user")),
+                        cache.keyOf("{ field }", null, Collections.singletonMap("a", "x, b=[1]"), context("user"))),
+                () -> assertNotEquals(cache.keyOf("{ field }", null, variables, context("user")),
+                        cache.keyOf("{ other }", null, variables, context("user"))));
+    }
+
+    @Test
+    void getDenial_afterTtl_shouldMissAndRemoveEntry() {
+        AtomicLong time = new AtomicLong();
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache()
+                .ttl(Duration.ofSeconds(1))
+                .ticker(time::get)
+                .build();
+        NegativeDecisionCache.Key key = cache.keyOf("{ field }", null, Collections.emptyMap(), context("user"));
+        cache.putDenial(key, denial, target);
+
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        assertAll(
+                () -> assertNull(cache.getDenial(key)),
+                () -> assertEquals(0, cache.size()));
+    }
+
+    @Test
+    void putDenial_whenFull_shouldKeepMaximumSize() {
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache().maximumSize(2).build();
+
+        for (int i = 0; i < 5; i++) {
+            cache.putDenial(cache.keyOf("{ field }", null, Collections.emptyMap(), context("user" + i)), denial, target);
+        }
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void query_deniedTwice_shouldRejectFromCacheWithoutCheckingRules() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { field: String @auth(r: \"role = 'admin'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                .build());
+        NegativeDecisionCache cache = NegativeDecisionCache.newNegativeDecisionCache().build();
+        LongAdderSecurityMetrics metrics = new LongAdderSecurityMetrics();
+        List<String> decisions = Collections.synchronizedList(new ArrayList<>());
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .negativeDecisionCache(cache)
+                        .metrics(metrics)
+                        .decisionListener((target, operationType, allowed, fingerprint, operationName) ->
+                                decisions.add(target + " " + operationType + " " + allowed + " " + fingerprint))
+                        .build())
+                .build();
+        ExecutionInput input = ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("role", "user").fingerprint("user").build())
+                .query("{ field }")
+                .build();
+
+        int firstErrors = graphQL.execute(input).getErrors().size();
+        int secondErrors = graphQL.execute(input).getErrors().size();
+
+        assertAll(
+                () -> assertEquals(1, firstErrors),
+                () -> assertEquals(1, secondErrors),
+                () -> assertEquals(Collections.nCopies(2, target + " READ false user"), decisions),
+                () -> assertEquals(2, metrics.snapshot().getTargets().get(target).getDenials()),
+                () -> assertEquals(1, cache.getHitCount()),
+                () -> assertEquals(1, cache.getDenialCount()));
+    }
+
+    @Test
+    void build_withInvalidParameters_shouldThrowException() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () ->
+                        NegativeDecisionCache.newNegativeDecisionCache().ttl(Duration.ZERO)),
+                () -> assertThrows(IllegalArgumentException.class, () ->
+                        NegativeDecisionCache.newNegativeDecisionCache().maximumSize(0)));
+    }
+
+    private SecurityContext context(Object fingerprint) {
+        return SecurityContext.newSecurityContext()
+                .field("role", "user")
+                .fingerprint(fingerprint)
+                .build();
+    }
+}
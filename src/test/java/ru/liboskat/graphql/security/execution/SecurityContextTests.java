@@ -1,9 +1,15 @@
 package ru.liboskat.graphql.security.execution;
 
 import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.ContextKeyLayout;
+import ru.liboskat.graphql.security.storage.StringExpressionRule;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class SecurityContextTests {
     @Test
@@ -18,4 +24,120 @@ class SecurityContextTests {
     void addValue_keyIsNull_ShouldThrowException() {
         assertThrows(IllegalArgumentException.class, () -> SecurityContext.newSecurityContext().field(null, null));
     }
+
+    @Test
+    void addFingerprint_ShouldBeAdded() {
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .fingerprint("user")
+                .build();
+        assertAll(
+                () -> assertEquals("user", securityContext.getFingerprint().orElse(null)),
+                () -> assertFalse(SecurityContext.newSecurityContext().build().getFingerprint().isPresent()));
+    }
+
+    @Test
+    void addValue_withLayout_ShouldBeAddedToSlotOrMap() {
+        ContextKeyLayout layout = AccessRuleStorage.newAccessRuleStorage()
+                .schemaRule(StringExpressionRule.newRule().rw("key = 'value'").build())
+                .build()
+                .getContextKeyLayout();
+        SecurityContext securityContext = SecurityContext.newSecurityContext(layout)
+                .field("key", "value")
+                .field("unknown", 1)
+                .build();
+        assertAll(
+                () -> assertEquals("value", securityContext.get("key")),
+                () -> assertEquals("value", securityContext.get(layout.getSlot("key"), "key")),
+                () -> assertEquals(1, securityContext.get("unknown")),
+                () -> assertEquals(1, securityContext.get(layout.getSlot("key"), "unknown")),
+                () -> assertNull(securityContext.get("missing")));
+    }
+
+    @Test
+    void newSecurityContext_withNullLayout_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> SecurityContext.newSecurityContext(null));
+    }
+
+    @Test
+    void getPath_ShouldResolveNestedValues() {
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("user", new User("admin", new Organization(1)))
+                .field("map", Collections.singletonMap("key", Collections.singletonMap("nested", "value")))
+                .build();
+        assertAll(
+                () -> assertEquals("admin", securityContext.get("user.name")),
+                () -> assertEquals(1L, securityContext.get("user.org.id")),
+                () -> assertEquals(true, securityContext.get("user.active")),
+                () -> assertEquals("value", securityContext.get("map.key.nested")),
+                () -> assertNull(securityContext.get("map.missing.nested")),
+                () -> assertNull(securityContext.get("missing.name")));
+    }
+
+    @Test
+    void getPath_missingSegment_ShouldThrowException() {
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("user", new User("admin", new Organization(1)))
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> securityContext.get("user.missing"));
+    }
+
+    @Test
+    void getPath_publicMethodOfInaccessibleClass_ShouldResolveThroughInterface() {
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("asList", Arrays.asList("a", "b"))
+                .field("unmodifiable", Collections.unmodifiableList(new ArrayList<>(Arrays.asList("a", "b"))))
+                .field("arrayList", new ArrayList<>(Arrays.asList("a", "b")))
+                .build();
+
+        assertAll(
+                () -> assertEquals(2, securityContext.get("asList.size")),
+                () -> assertEquals(2, securityContext.get("unmodifiable.size")),
+                () -> assertEquals(2, securityContext.get("arrayList.size")),
+                () -> assertEquals(false, securityContext.get("asList.empty")));
+    }
+
+    @Test
+    void getPath_withLayout_ShouldResolveFromSlot() {
+        ContextKeyLayout layout = AccessRuleStorage.newAccessRuleStorage()
+                .schemaRule(StringExpressionRule.newRule().rw("user.org.id = {1}").build())
+                .build()
+                .getContextKeyLayout();
+        SecurityContext securityContext = SecurityContext.newSecurityContext(layout)
+                .field("user", new User("admin", new Organization(1)))
+                .build();
+        assertAll(
+                () -> assertEquals(Collections.singletonList("user"), layout.getKeys()),
+                () -> assertEquals(1L, securityContext.get(layout.getSlot("user"), "user.org.id")));
+    }
+
+    private static class User {
+        private final String name;
+        private final Organization org;
+
+        User(String name, Organization org) {
+            this.name = name;
+            this.org = org;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Organization org() {
+            return org;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+    }
+
+    private static class Organization {
+        private final long id;
+
+        Organization(long id) {
+            this.id = id;
+        }
+    }
 }
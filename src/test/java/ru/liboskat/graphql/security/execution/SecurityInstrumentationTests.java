@@ -3,20 +3,38 @@ package ru.liboskat.graphql.security.execution;
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.execution.AbortExecutionException;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.idl.SchemaGenerator;
 import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import ru.liboskat.graphql.security.exceptions.AuthException;
 import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.ContextKeyLayout;
+import ru.liboskat.graphql.security.storage.StringExpressionRule;
+import ru.liboskat.graphql.security.storage.ruletarget.FieldInfo;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
@@ -24,6 +42,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 class SecurityInstrumentationTests {
     private static GraphQL graphQL;
+    private static ContextKeyLayout contextKeyLayout;
 
     @BeforeAll
     static void setup() throws URISyntaxException, IOException {
@@ -40,6 +59,7 @@ class SecurityInstrumentationTests {
         AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
                 .fromTypeDefinitionRegistry(typeDefinitionRegistry)
                 .build();
+        contextKeyLayout = accessRuleStorage.getContextKeyLayout();
 
         SchemaGenerator schemaGenerator = new SchemaGenerator();
         GraphQLSchema graphQLSchema = schemaGenerator.makeExecutableSchema(typeDefinitionRegistry,
@@ -47,7 +67,8 @@ class SecurityInstrumentationTests {
                         .type("Query", builder -> builder
                                 .dataFetcher("query", (env) -> new Object()))
                         .type("Mutation", builder -> builder
-                                .dataFetcher("mutation", (env) -> new Object()))
+                                .dataFetcher("mutation", (env) -> new Object())
+                                .dataFetcher("mutationList", (env) -> new Object()))
                         .type("Output", builder -> builder
                                 .dataFetcher("scalarField", (env) -> 1)
                                 .dataFetcher("objectField", (env) -> new Object()))
@@ -69,6 +90,14 @@ class SecurityInstrumentationTests {
                 .build());
     }
 
+    @Test
+    void queryScalarField_withCorrectLayoutContext_shouldHaveZeroErrors() {
+        queryScalarField_withCorrectContext_shouldHaveZeroErrors(SecurityContext.newSecurityContext(contextKeyLayout)
+                .field("schema", "schema")
+                .field("scalarField", "scalarField")
+                .build());
+    }
+
     @Test
     void queryScalarField_withCorrectContextInMap_shouldHaveZeroErrors() {
         queryScalarField_withCorrectContext_shouldHaveZeroErrors(
@@ -101,6 +130,24 @@ class SecurityInstrumentationTests {
         assertEquals(1, executionResult.getErrors().size());
     }
 
+    @Test
+    void queryTypename_withCorrectContext_shouldHaveZeroErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(SecurityContext.newSecurityContext()
+                                .field("schema", "schema")
+                                .field("scalarField", "scalarField")
+                                .build())
+                        .query("query myQuery { " +
+                                "query { " +
+                                "__typename " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .build());
+        assertEquals(0, executionResult.getErrors().size());
+    }
+
     @Test
     void queryObjectField_withCorrectContextAndArgument_shouldHaveZeroErrors() {
         ExecutionResult executionResult = graphQL.execute(
@@ -388,11 +435,419 @@ class SecurityInstrumentationTests {
         assertNotEquals(0, executionResult.getErrors().size());
     }
 
+    @Test
+    void mutationList_withInputList_withCorrectContext_shouldHaveZeroErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(inputContext("scalarField3"))
+                        .query("mutation myMutation { " +
+                                "mutationList " +
+                                "(arguments: [" +
+                                "{ objectField: { field: \"first\" } }, " +
+                                "{ objectField: { field: \"second\" } }" +
+                                "]) " +
+                                "{ " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .build());
+        assertEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void mutationList_withInputList_withIncorrectInputObjectFieldTypeFieldVariable_shouldHaveErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(inputContext("incorrect"))
+                        .query("mutation myMutation { " +
+                                "mutationList " +
+                                "(arguments: [" +
+                                "{ objectField: { field: \"first\" } }, " +
+                                "{ objectField: { field: \"second\" } }" +
+                                "]) " +
+                                "{ " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .build());
+        assertNotEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void mutationList_withVariables_withCorrectContext_shouldHaveZeroErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(inputContext("scalarField3"))
+                        .query("mutation myMutation($arguments: [Input!]!) { " +
+                                "mutationList(arguments: $arguments) " +
+                                "{ " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .variables(Collections.singletonMap("arguments", inputListVariable()))
+                        .build());
+        assertEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void mutationList_withVariables_withIncorrectInputObjectFieldTypeFieldVariable_shouldHaveErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(inputContext("incorrect"))
+                        .query("mutation myMutation($arguments: [Input!]!) { " +
+                                "mutationList(arguments: $arguments) " +
+                                "{ " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .variables(Collections.singletonMap("arguments", inputListVariable()))
+                        .build());
+        assertNotEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void mutationScalarField_withInputVariable_withIncorrectInputFieldVariable_shouldHaveErrors() {
+        ExecutionResult executionResult = graphQL.execute(
+                ExecutionInput.newExecutionInput()
+                        .context(SecurityContext.newSecurityContext()
+                                .field("schema", "schema")
+                                .field("scalarField", "scalarField")
+                                .field("input", "input")
+                                .field("inputField", "incorrect")
+                                .field("inputObjectFieldType", "inputObjectFieldType")
+                                .field("scalarField3", "scalarField3")
+                                .build())
+                        .query("mutation myMutation($argument: Input) { " +
+                                "mutation(argument: $argument) " +
+                                "{ " +
+                                "scalarField " +
+                                "}" +
+                                "}")
+                        .variables(Collections.singletonMap("argument", inputListVariable().get(0)))
+                        .build());
+        assertNotEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void subscription_withCorrectContext_shouldNotRecheckContextForEachEvent() {
+        CountingUser singleEventUser = new CountingUser("admin");
+        CountingUser manyEventsUser = new CountingUser("admin");
+        List<ExecutionResult> singleEvent = executeSubscription(singleEventUser, 1);
+        List<ExecutionResult> manyEvents = executeSubscription(manyEventsUser, 5);
+        assertAll(
+                () -> assertEquals(1, singleEvent.size()),
+                () -> assertEquals(5, manyEvents.size()),
+                () -> assertTrue(manyEvents.stream().allMatch(event -> event.getErrors().isEmpty())),
+                () -> assertEquals(singleEventUser.roleCalls, manyEventsUser.roleCalls));
+    }
+
+    @Test
+    void subscription_withIncorrectContext_shouldHaveErrors() {
+        ExecutionResult executionResult = subscriptionGraphQL().execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("user", new CountingUser("guest")).build())
+                .query("subscription { events { id } }")
+                .build());
+        assertNotEquals(0, executionResult.getErrors().size());
+    }
+
+    @Test
+    void subscription_rootFieldRuleAfterTimeBoundary_shouldDenyEvent() {
+        List<Object> events = executeTimedSubscription(
+                "type Subscription { events: Event @auth(r: \"{now} < {2030-01-01T00:00:00Z}\") }", null);
+
+        assertTimedSubscriptionDenied(events);
+    }
+
+    @Test
+    void subscription_withDeniedRootFieldRule_shouldHaveErrors() {
+        ExecutionResult executionResult = timedSubscriptionGraphQL(
+                "type Subscription { events: Event @auth(r: \"{now} > {2030-01-01T00:00:00Z}\") }", null,
+                new MutableClock(Instant.parse("2029-12-31T23:59:58Z")))
+                .execute(ExecutionInput.newExecutionInput()
+                        .query("subscription { events { id } }")
+                        .build());
+
+        assertAll(
+                () -> assertEquals(1, executionResult.getErrors().size()),
+                () -> assertTrue(executionResult.getErrors().get(0) instanceof AuthException));
+    }
+
+    @Test
+    void subscription_schemaRuleAfterTimeBoundary_shouldDenyEvent() {
+        List<Object> events = executeTimedSubscription("type Subscription { events: Event }",
+                StringExpressionRule.newRule().r("{now} < {2030-01-01T00:00:00Z}").build());
+
+        assertTimedSubscriptionDenied(events);
+    }
+
+    @Test
+    void query_withNowRule_shouldUseClock() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { query: String @auth(r: \"{now} < {2030-01-01T00:00:00Z}\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("query", env -> "query"))
+                .build());
+        GraphQL before = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .clock(Clock.fixed(Instant.parse("2029-12-31T23:59:59Z"), ZoneOffset.UTC))
+                        .build())
+                .build();
+        GraphQL after = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .clock(Clock.fixed(Instant.parse("2030-01-01T00:00:00Z"), ZoneOffset.UTC))
+                        .build())
+                .build();
+        assertAll(
+                () -> assertEquals(0, before.execute("{ query }").getErrors().size()),
+                () -> assertNotEquals(0, after.execute("{ query }").getErrors().size()));
+    }
+
+    @Test
+    void query_withLocalDateRuleAndClockInOtherZone_shouldCompareDatesInClockZone() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { query: String @auth(r: \"day = {2020-01-01}\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("query", env -> "query"))
+                .build());
+        //часовой пояс часов отличается от системного
+        Instant instant = Instant.parse("2020-01-01T12:00:00Z");
+        ZoneId zone = ZoneOffset.UTC.equals(ZoneId.systemDefault().getRules().getOffset(instant)) ?
+                ZoneOffset.ofHours(3) : ZoneOffset.UTC;
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .clock(Clock.fixed(instant, zone))
+                        .build())
+                .build();
+        ExecutionResult sameDay = graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("day", LocalDate.of(2020, 1, 1)).build())
+                .query("{ query }")
+                .build());
+        ExecutionResult otherDay = graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("day", LocalDate.of(2020, 1, 2)).build())
+                .query("{ query }")
+                .build());
+        assertAll(
+                () -> assertEquals(0, sameDay.getErrors().size()),
+                () -> assertNotEquals(0, otherDay.getErrors().size()));
+    }
+
+    @Test
+    void query_withDecisionDiagram_shouldCheckRules() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { query(argument: String): String " +
+                        "@auth(r: \"role = 'admin' | $argument = 'public'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("query", env -> "query"))
+                .build());
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .useDecisionDiagram(true)
+                        .build())
+                .build();
+        SecurityContext admin = SecurityContext.newSecurityContext().field("role", "admin").build();
+        SecurityContext user = SecurityContext.newSecurityContext().field("role", "user").build();
+        assertAll(
+                () -> assertEquals(0, graphQL.execute(ExecutionInput.newExecutionInput()
+                        .context(admin).query("{ query }").build()).getErrors().size()),
+                () -> assertEquals(0, graphQL.execute(ExecutionInput.newExecutionInput()
+                        .context(user).query("{ query(argument: \"public\") }").build()).getErrors().size()),
+                () -> assertNotEquals(0, graphQL.execute(ExecutionInput.newExecutionInput()
+                        .context(user).query("{ query(argument: \"private\") }").build()).getErrors().size()));
+    }
+
+    @Test
+    void query_withIncomparableValueOffDiagramPath_shouldHaveSameResultWithAndWithoutDecisionDiagram() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query {\n" +
+                        "  query: String @auth(r: \"b > {1} | a = {1}\")\n" +
+                        "  pathQuery: String @auth(r: \"user.bad = 'y' | a = 'x'\")\n" +
+                        "}");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder
+                        .dataFetcher("query", env -> "query")
+                        .dataFetcher("pathQuery", env -> "pathQuery"))
+                .build());
+        GraphQL withDiagram = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .useDecisionDiagram(true)
+                        .build())
+                .build();
+        GraphQL withoutDiagram = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build();
+        //b - строка, поэтому сравнение b > {1} невозможно
+        SecurityContext context = SecurityContext.newSecurityContext()
+                .field("a", 1)
+                .field("b", "b")
+                .build();
+        ExecutionResult diagramResult = withDiagram.execute(ExecutionInput.newExecutionInput()
+                .context(context).query("{ query }").build());
+        ExecutionResult defaultResult = withoutDiagram.execute(ExecutionInput.newExecutionInput()
+                .context(context).query("{ query }").build());
+        //user.bad не читается, поэтому сравнение user.bad = 'y' невозможно
+        SecurityContext pathContext = SecurityContext.newSecurityContext()
+                .field("user", new FailingUser())
+                .field("a", "x")
+                .build();
+        ExecutionResult pathDiagramResult = withDiagram.execute(ExecutionInput.newExecutionInput()
+                .context(pathContext).query("{ pathQuery }").build());
+        ExecutionResult pathDefaultResult = withoutDiagram.execute(ExecutionInput.newExecutionInput()
+                .context(pathContext).query("{ pathQuery }").build());
+        assertAll(
+                () -> assertNotEquals(0, defaultResult.getErrors().size()),
+                () -> assertEquals(defaultResult.getErrors().size(), diagramResult.getErrors().size()),
+                () -> assertEquals(defaultResult.<Object>getData(), diagramResult.<Object>getData()),
+                () -> assertNotEquals(0, pathDefaultResult.getErrors().size()),
+                () -> assertEquals(pathDefaultResult.getErrors().size(), pathDiagramResult.getErrors().size()),
+                () -> assertEquals(pathDefaultResult.<Object>getData(), pathDiagramResult.<Object>getData()));
+    }
+
+    @Test
+    void query_withMetrics_shouldRecordEvaluationsAndOperations() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { field: String @auth(r: \"role = 'admin'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                .build());
+        LongAdderSecurityMetrics metrics = new LongAdderSecurityMetrics();
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .metrics(metrics)
+                        .build())
+                .build();
+
+        graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("role", "admin").build())
+                .query("{ field alias: field }").build());
+        graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("role", "user").build())
+                .query("{ field }").build());
+
+        SecurityMetricsSnapshot snapshot = metrics.snapshot();
+        SecurityMetricsSnapshot.TargetMetrics field = snapshot.getTargets().get(FieldInfo.newFieldInfo("Query", "field"));
+        assertAll(
+                () -> assertEquals(3, field.getEvaluations()),
+                () -> assertEquals(1, field.getDenials()),
+                () -> assertEquals(1, field.getCacheHits()),
+                () -> assertEquals(2, snapshot.getOperationCount()));
+    }
+
+    @Test
+    void query_withDecisionListener_shouldReceiveDecisions() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { field: String @auth(r: \"role = 'admin'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                .build());
+        List<String> decisions = Collections.synchronizedList(new ArrayList<>());
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .decisionListener((target, operationType, allowed, fingerprint, operationName) ->
+                                decisions.add(target + " " + operationType + " " + allowed + " " +
+                                        fingerprint + " " + operationName))
+                        .build())
+                .build();
+
+        graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("role", "user").fingerprint("user-1").build())
+                .query("query Fields { field }").build());
+
+        assertEquals(Collections.singletonList(FieldInfo.newFieldInfo("Query", "field") + " READ false user-1 Fields"),
+                decisions);
+    }
+
+    @Test
+    void query_deniedTwice_shouldReuseStacklessError() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { field: String @auth(r: \"role = 'admin'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                .build());
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build();
+        ExecutionInput input = ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("role", "user").build())
+                .query("{ field }")
+                .build();
+
+        GraphQLError first = graphQL.execute(input).getErrors().get(0);
+        GraphQLError second = graphQL.execute(input).getErrors().get(0);
+
+        assertAll(
+                () -> assertSame(first, second),
+                () -> assertEquals(0, ((Throwable) first).getStackTrace().length),
+                () -> assertEquals(FieldInfo.newFieldInfo("Query", "field").toString(),
+                        first.getExtensions().get(AuthException.TARGET_ATTRIBUTE_NAME)));
+    }
+
+    @Test
+    void build_withNullDecisionListener_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> SecurityInstrumentation.newSecurityInstrumentation()
+                .decisionListener(null));
+    }
+
+    @Test
+    void build_withNullMetrics_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> SecurityInstrumentation.newSecurityInstrumentation()
+                .metrics(null));
+    }
+
+    @Test
+    void build_withNullClock_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> SecurityInstrumentation.newSecurityInstrumentation()
+                .clock(null));
+    }
+
     @Test
     void build_WithNullAccessRuleStorage_shouldThrowException() {
         assertThrows(IllegalArgumentException.class, () -> SecurityInstrumentation.newSecurityInstrumentation().build());
     }
 
+    private SecurityContext inputContext(String scalarField3) {
+        return SecurityContext.newSecurityContext()
+                .field("schema", "schema")
+                .field("scalarField", "scalarField")
+                .field("inputField", "inputField")
+                .field("inputObjectFieldType", "inputObjectFieldType")
+                .field("scalarField3", scalarField3)
+                .build();
+    }
+
+    private List<Map<String, Object>> inputListVariable() {
+        return Arrays.asList(
+                Collections.singletonMap("objectField", Collections.singletonMap("field", "first")),
+                Collections.singletonMap("objectField", Collections.singletonMap("field", "second")));
+    }
+
     private void queryScalarField_withCorrectContext_shouldHaveZeroErrors(Object context) {
         ExecutionResult executionResult = graphQL.execute(
                 ExecutionInput.newExecutionInput()
@@ -405,4 +860,249 @@ class SecurityInstrumentationTests {
                         .build());
         assertEquals(0, executionResult.getErrors().size());
     }
+
+    private List<ExecutionResult> executeSubscription(CountingUser user, int eventCount) {
+        ExecutionResult executionResult = subscriptionGraphQL().execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext().field("user", user).build())
+                .query("subscription { events { id } }")
+                .root(eventCount)
+                .build());
+        assertEquals(0, executionResult.getErrors().size());
+        List<ExecutionResult> events = new ArrayList<>();
+        Publisher<ExecutionResult> publisher = executionResult.getData();
+        publisher.subscribe(new Subscriber<ExecutionResult>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ExecutionResult event) {
+                events.add(event);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Выполняет подписку с тремя событиями, перед третьим событием часы переводятся за 2030-01-01T00:00:00Z
+     *
+     * @return результаты событий и ошибка потока событий, если есть
+     */
+    private List<Object> executeTimedSubscription(String subscriptionType, StringExpressionRule schemaRule) {
+        MutableClock clock = new MutableClock(Instant.parse("2029-12-31T23:59:58Z"));
+        ExecutionResult executionResult = timedSubscriptionGraphQL(subscriptionType, schemaRule, clock)
+                .execute(ExecutionInput.newExecutionInput()
+                        .query("subscription { events { id } }")
+                        .build());
+        assertEquals(0, executionResult.getErrors().size());
+        List<Object> events = new ArrayList<>();
+        Publisher<ExecutionResult> publisher = executionResult.getData();
+        publisher.subscribe(new Subscriber<ExecutionResult>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ExecutionResult event) {
+                events.add(event);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                events.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return events;
+    }
+
+    private GraphQL timedSubscriptionGraphQL(String subscriptionType, StringExpressionRule schemaRule,
+                                             MutableClock clock) {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on OBJECT | FIELD_DEFINITION\n" +
+                        "type Query { query: String }\n" +
+                        subscriptionType + "\n" +
+                        "type Event { id: Int }");
+        AccessRuleStorage.Builder storageBuilder = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry);
+        if (schemaRule != null) {
+            storageBuilder.schemaRule(schemaRule);
+        }
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Subscription", builder -> builder
+                        .dataFetcher("events", env -> timedEventPublisher(clock)))
+                .type("Event", builder -> builder
+                        .dataFetcher("id", env -> env.getSource()))
+                .build());
+        return GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(storageBuilder.build())
+                        .clock(clock)
+                        .build())
+                .build();
+    }
+
+    private void assertTimedSubscriptionDenied(List<Object> events) {
+        assertAll(
+                () -> assertEquals(3, events.size()),
+                () -> assertTrue(((ExecutionResult) events.get(0)).getErrors().isEmpty()),
+                () -> assertTrue(((ExecutionResult) events.get(1)).getErrors().isEmpty()),
+                () -> assertTrue(events.get(2) instanceof AbortExecutionException),
+                () -> assertTrue(((AbortExecutionException) events.get(2)).getUnderlyingErrors().get(0)
+                        instanceof AuthException));
+    }
+
+    private static Publisher<Object> timedEventPublisher(MutableClock clock) {
+        return subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int emitted;
+            private boolean cancelled;
+
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && emitted < 3 && !cancelled; i++) {
+                    if (emitted == 2) {
+                        clock.instant = Instant.parse("2030-01-01T00:00:01Z");
+                    }
+                    subscriber.onNext(emitted++);
+                }
+                if (emitted == 3 && !cancelled) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        });
+    }
+
+    private GraphQL subscriptionGraphQL() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on OBJECT | FIELD_DEFINITION\n" +
+                        "type Query { query: String }\n" +
+                        "type Subscription { events: Event @auth(r: \"user.role = 'admin'\") }\n" +
+                        "type Event @auth(r: \"user.role = 'admin'\") { id: Int @auth(r: \"user.role = 'admin'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Subscription", builder -> builder
+                        .dataFetcher("events", env -> eventPublisher(env.<Integer>getRoot())))
+                .type("Event", builder -> builder
+                        .dataFetcher("id", env -> env.getSource()))
+                .build());
+        return GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage).build())
+                .build();
+    }
+
+    @Test
+    void query_withDecisionCacheAndUnreadableContextPath_shouldDeny() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on FIELD_DEFINITION\n" +
+                        "type Query { field: String @auth(r: \"user.bad = 'y' | a = 'x'\") }");
+        AccessRuleStorage accessRuleStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema schema = new SchemaGenerator().makeExecutableSchema(registry, newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("field", env -> "field"))
+                .build());
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .instrumentation(SecurityInstrumentation.newSecurityInstrumentation(accessRuleStorage)
+                        .decisionCache(DecisionCache.newDecisionCache().build())
+                        .build())
+                .build();
+
+        ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+                .context(SecurityContext.newSecurityContext()
+                        .field("user", new FailingUser())
+                        .field("a", "x")
+                        .build())
+                .query("{ field }").build());
+
+        assertAll(
+                () -> assertEquals(1, result.getErrors().size()),
+                () -> assertNull(result.getData()));
+    }
+
+    private static Publisher<Object> eventPublisher(int eventCount) {
+        return subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int emitted;
+            private boolean cancelled;
+
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && emitted < eventCount && !cancelled; i++) {
+                    subscriber.onNext(emitted++);
+                }
+                if (emitted == eventCount && !cancelled) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        });
+    }
+
+    static class CountingUser {
+        private final String role;
+        private int roleCalls;
+
+        CountingUser(String role) {
+            this.role = role;
+        }
+
+        public String getRole() {
+            roleCalls++;
+            return role;
+        }
+    }
+
+    static class FailingUser {
+        public String getBad() {
+            throw new IllegalStateException("bad");
+        }
+    }
+
+    static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
 }
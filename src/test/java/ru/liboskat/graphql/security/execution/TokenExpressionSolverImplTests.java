@@ -5,19 +5,26 @@ import ru.liboskat.graphql.security.expression.parsing.ExpressionParser;
 import ru.liboskat.graphql.security.expression.parsing.SimpleExpressionParser;
 import ru.liboskat.graphql.security.expression.transforming.RpnExpressionConverter;
 import ru.liboskat.graphql.security.expression.transforming.ShuntingYardExpressionConverter;
+import ru.liboskat.graphql.security.storage.AccessRuleStorage;
+import ru.liboskat.graphql.security.storage.RuleDecisionDiagram;
+import ru.liboskat.graphql.security.storage.StringExpressionRule;
 import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TruthTable;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZonedDateTime;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class TokenExpressionSolverImplTests {
     private final TokenExpressionSolver tokenExpressionSolver = new TokenExpressionSolverImpl();
+    private final TokenExpressionSolverImpl partialSolver = new TokenExpressionSolverImpl();
 
     private final ExpressionParser expressionParser = new SimpleExpressionParser();
     private final RpnExpressionConverter rpnExpressionConverter = new ShuntingYardExpressionConverter();
@@ -284,6 +291,275 @@ class TokenExpressionSolverImplTests {
         assertFalse(tokenExpressionSolver.solve(tokenExpression, securityContext, arguments));
     }
 
+    @Test
+    void solve_correctEqualExpression_withContextPath_shouldReturnTrue() {
+        String expression = "user.role = 'ADMIN' & user.org = {1}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        Map<String, Object> user = new HashMap<>();
+        user.put("role", "ADMIN");
+        user.put("org", 1);
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("user", user)
+                .build();
+        assertTrue(tokenExpressionSolver.solve(tokenExpression, securityContext, new HashMap<>()));
+    }
+
+    @Test
+    void partiallySolve_contextOnlyExpression_shouldReturnConstant() {
+        String expression = "a = 'a' & (b = 'b' | c = 'c')";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .field("c", "c")
+                .build();
+        assertSame(PartiallySolvedExpression.TRUE, partialSolver.partiallySolve(tokenExpression, securityContext));
+    }
+
+    @Test
+    void partiallySolve_falseContextConjunct_shouldReturnFalseWithoutResidual() {
+        String expression = "a = 'a' & $b = 'b'";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "incorrect")
+                .build();
+        assertSame(PartiallySolvedExpression.FALSE, partialSolver.partiallySolve(tokenExpression, securityContext));
+    }
+
+    @Test
+    void partiallySolve_trueContextConjunct_shouldReturnArgumentResidual() {
+        String expression = "a = 'a' & !($b = 'b' | c = 'c')";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .build();
+        PartiallySolvedExpression solved = partialSolver.partiallySolve(tokenExpression, securityContext);
+        Map<String, String> correctArguments = new HashMap<>();
+        correctArguments.put("b", "incorrect");
+        Map<String, String> incorrectArguments = new HashMap<>();
+        incorrectArguments.put("b", "b");
+        assertAll(
+                () -> assertFalse(solved.isConstant()),
+                () -> assertEquals(2, solved.getResidual().getTokens().size()),
+                () -> assertTrue(tokenExpressionSolver.solve(solved.getResidual(), securityContext,
+                        correctArguments)),
+                () -> assertFalse(tokenExpressionSolver.solve(solved.getResidual(), securityContext,
+                        incorrectArguments)));
+    }
+
+    @Test
+    void partiallySolve_incomparableContextValue_shouldReturnFalse() {
+        String expression = "!(a > {5})";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "string")
+                .build();
+        assertSame(PartiallySolvedExpression.FALSE, partialSolver.partiallySolve(tokenExpression, securityContext));
+    }
+
+    @Test
+    void solveAll_contexts_shouldReturnSameResultsAsSolve() {
+        String expression = "role = 'ADMIN' | (role = 'USER' & level > {2})";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        List<SecurityContext> contexts = subscriberContexts(10);
+        BitSet expected = new BitSet();
+        for (int i = 0; i < contexts.size(); i++) {
+            if (tokenExpressionSolver.solve(tokenExpression, contexts.get(i), null)) {
+                expected.set(i);
+            }
+        }
+        assertEquals(expected, partialSolver.solveAll(tokenExpression, contexts, null));
+    }
+
+    @Test
+    void solveAll_parallel_shouldReturnSameResultsAsSequential() {
+        String expression = "role = 'ADMIN' | (role = 'USER' & level > {2})";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        List<SecurityContext> contexts = subscriberContexts(5000);
+        BitSet sequential = partialSolver.solveAll(tokenExpression, contexts, null, false);
+        BitSet parallel = partialSolver.solveAll(tokenExpression, contexts, null, true);
+        assertAll(
+                () -> assertEquals(sequential, parallel),
+                () -> assertTrue(parallel.cardinality() > 0),
+                () -> assertTrue(parallel.cardinality() < contexts.size()));
+    }
+
+    @Test
+    void solveAll_contextWithIncomparableValue_shouldNotSetBit() {
+        String expression = "level > {2}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        List<SecurityContext> contexts = new ArrayList<>();
+        contexts.add(SecurityContext.newSecurityContext().field("level", 5).build());
+        contexts.add(SecurityContext.newSecurityContext().field("level", "incomparable").build());
+        contexts.add(null);
+        contexts.add(SecurityContext.newSecurityContext().field("level", 3).build());
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(3);
+        assertEquals(expected, partialSolver.solveAll(tokenExpression, contexts, null));
+    }
+
+    @Test
+    void solveAll_withNow_shouldUsePassedMoment() {
+        String expression = "{now} < expiresAt";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        List<SecurityContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            contexts.add(SecurityContext.newSecurityContext()
+                    .field("expiresAt", LocalDate.of(2020, 6, 1).plusDays(i % 3))
+                    .build());
+        }
+        ZonedDateTime now = ZonedDateTime.of(2020, 6, 2, 12, 0, 0, 0, ZoneOffset.UTC);
+        BitSet expected = new BitSet();
+        for (int i = 2; i < contexts.size(); i += 3) {
+            expected.set(i);
+        }
+        assertAll(
+                () -> assertEquals(expected, partialSolver.solveAll(tokenExpression, contexts, null, now, false)),
+                () -> assertEquals(expected, partialSolver.solveAll(tokenExpression, contexts, null, now, true)));
+    }
+
+    @Test
+    void solveAll_nullContexts_shouldThrowException() {
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse("a = 'a'"));
+        assertThrows(IllegalArgumentException.class, () -> partialSolver.solveAll(tokenExpression, null, null));
+    }
+
+    @Test
+    void findTimeBoundary_withTimeOfDayContextValue_shouldReturnNextMidnight() {
+        String expression = "time > {10:00:00}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("time", LocalTime.of(12, 0))
+                .build();
+        ZonedDateTime now = ZonedDateTime.of(2020, 5, 1, 15, 30, 0, 0, ZoneOffset.UTC);
+        assertEquals(Instant.parse("2020-05-02T00:00:00Z"),
+                partialSolver.findTimeBoundary(tokenExpression, securityContext, now).orElse(null));
+    }
+
+    @Test
+    void findTimeBoundary_withoutTimeOfDayContextValue_shouldReturnEmpty() {
+        String expression = "a = 'a' & $b = 'b'";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .build();
+        assertFalse(partialSolver.findTimeBoundary(tokenExpression, securityContext, ZonedDateTime.now()).isPresent());
+    }
+
+    @Test
+    void solve_nowInsideTimeWindow_shouldReturnTrue() {
+        String expression = "{now} >= {09:00:00} & {now} < {18:00:00}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        ZonedDateTime now = ZonedDateTime.of(2020, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        assertTrue(partialSolver.solve(tokenExpression, null, null, now));
+    }
+
+    @Test
+    void solve_nowOutsideTimeWindow_shouldReturnFalse() {
+        String expression = "{now} >= {09:00:00} & {now} < {18:00:00}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        ZonedDateTime now = ZonedDateTime.of(2020, 5, 2, 20, 0, 0, 0, ZoneOffset.UTC);
+        assertFalse(partialSolver.solve(tokenExpression, null, null, now));
+    }
+
+    @Test
+    void solve_nowBeforeContextDate_shouldReturnTrue() {
+        String expression = "{now} < expiresAt";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("expiresAt", LocalDate.of(2020, 6, 1))
+                .build();
+        ZonedDateTime now = ZonedDateTime.of(2020, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        assertTrue(partialSolver.solve(tokenExpression, securityContext, null, now));
+    }
+
+    @Test
+    void findTimeBoundary_withNowComparison_shouldReturnComparedMoment() {
+        String expression = "{now} < {18:00:00}";
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse(expression));
+        ZonedDateTime now = ZonedDateTime.of(2020, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        assertEquals(Instant.parse("2020-05-01T18:00:00Z"),
+                partialSolver.findTimeBoundary(tokenExpression, null, now).orElse(null));
+    }
+
+    @Test
+    void partiallySolve_withComparisonResults_shouldReuseKnownResult() {
+        TokenExpression tokenExpression = rpnExpressionConverter.convertToRpn(expressionParser.parse("a = 'a'"));
+        tokenExpression.getTokens().set(0, ((ComparisonToken) tokenExpression.getTokens().get(0))
+                .withComparisonId(0));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .build();
+        ZonedDateTime now = ZonedDateTime.now();
+        byte[] unknownResults = new byte[1];
+        byte[] knownFalseResults = new byte[]{2};
+        assertAll(
+                () -> assertSame(PartiallySolvedExpression.TRUE,
+                        partialSolver.partiallySolve(tokenExpression, securityContext, now, unknownResults)),
+                () -> assertEquals(1, unknownResults[0]),
+                () -> assertSame(PartiallySolvedExpression.FALSE,
+                        partialSolver.partiallySolve(tokenExpression, securityContext, now, knownFalseResults)));
+    }
+
+    @Test
+    void solve_withDecisionDiagram_shouldUseContextAndArguments() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' | $b = 'b'").build(), "object")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        int root = diagram.getRoot(storage.findObjectRule("object").getReadRule());
+        ZonedDateTime now = ZonedDateTime.now();
+        SecurityContext matching = SecurityContext.newSecurityContext().field("a", "a").build();
+        SecurityContext other = SecurityContext.newSecurityContext().field("a", "c").build();
+        Map<String, String> arguments = new HashMap<>();
+        arguments.put("b", "b");
+        byte[] comparisonResults = new byte[storage.getComparisonCount()];
+        assertAll(
+                () -> assertTrue(partialSolver.solve(diagram, root, matching, null, now, null)),
+                () -> assertTrue(partialSolver.solve(diagram, root, other, arguments, now, null)),
+                () -> assertFalse(partialSolver.solve(diagram, root, other, new HashMap<>(), now,
+                        comparisonResults)));
+    }
+
+    @Test
+    void solve_withTruthTable_shouldUseMask() {
+        TokenExpression parsed = rpnExpressionConverter.convertToRpn(expressionParser.parse("a = 'a'"));
+        //таблица, инвертирующая выражение, показывает, что решение идет по ней
+        TokenExpression tokenExpression = new TokenExpression(parsed.getTokens(), TruthTable.of(
+                Collections.singletonList((ComparisonToken) parsed.getTokens().get(0)), 0b01));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .build();
+        assertAll(
+                () -> assertFalse(tokenExpressionSolver.solve(tokenExpression, securityContext, null)),
+                () -> assertSame(PartiallySolvedExpression.FALSE,
+                        partialSolver.partiallySolve(tokenExpression, securityContext)));
+    }
+
+    @Test
+    void solve_withTruthTableAndIncomparableValues_shouldThrowException() {
+        TokenExpression parsed = rpnExpressionConverter.convertToRpn(expressionParser.parse("a > {5}"));
+        TokenExpression tokenExpression = new TokenExpression(parsed.getTokens(), TruthTable.of(
+                Collections.singletonList((ComparisonToken) parsed.getTokens().get(0)), 0b10));
+        SecurityContext securityContext = SecurityContext.newSecurityContext()
+                .field("a", "a")
+                .build();
+        assertThrows(IllegalArgumentException.class,
+                () -> tokenExpressionSolver.solve(tokenExpression, securityContext, null));
+    }
+
+    private List<SecurityContext> subscriberContexts(int count) {
+        String[] roles = {"ADMIN", "USER", "GUEST"};
+        List<SecurityContext> contexts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            contexts.add(SecurityContext.newSecurityContext()
+                    .field("role", roles[i % roles.length])
+                    .field("level", i % 5)
+                    .build());
+        }
+        return contexts;
+    }
+
     private enum TestEnum {
         A
     }
@@ -33,6 +33,19 @@ class SimpleExpressionParserTests {
         assertEquals(correct, expressionParser.parse(expression));
     }
 
+    @Test
+    void parse_correctEquality_withContextPathAndContextPath_shouldBeParsedCorrectly() {
+        String expression = "user.org.id = resource.orgId";
+        TokenExpression correct = new TokenExpression();
+        correct.addToken(ComparisonToken.builder()
+                .firstValue("user.org.id", ValueType.GRAPHQL_CONTEXT_FIELD_NAME)
+                .secondValue("resource.orgId", ValueType.GRAPHQL_CONTEXT_FIELD_NAME)
+                .comparisonType(ComparisonType.EQUALS)
+                .build()
+        );
+        assertEquals(correct, expressionParser.parse(expression));
+    }
+
     @Test
     void parse_correctEquality_withGraphQLArgumentAndInteger_shouldBeParsedCorrectly() {
         String expression = "$a = {1}";
@@ -124,6 +137,19 @@ class SimpleExpressionParserTests {
         assertEquals(correct, expressionParser.parse(expression));
     }
 
+    @Test
+    void parse_correctComparison_withNowAndTime_shouldBeParsedCorrectly() {
+        String expression = "{now} < {16:30:30}";
+        TokenExpression correct = new TokenExpression();
+        correct.addToken(ComparisonToken.builder()
+                .firstValue(ComparisonToken.NowValue.INSTANCE, ValueType.NOW)
+                .secondValue(LocalTime.parse("16:30:30"), ValueType.LOCAL_TIME)
+                .comparisonType(ComparisonType.LT)
+                .build()
+        );
+        assertEquals(correct, expressionParser.parse(expression));
+    }
+
     @Test
     void parse_correctEquality_withContextVariableAndDateTime_shouldBeParsedCorrectly() {
         String expression = "a = {2020-10-10T16:30:30}";
@@ -457,6 +483,16 @@ class SimpleExpressionParserTests {
         assertThrows(InvalidExpressionException.class, () -> expressionParser.parse(expression));
     }
 
+    @Test
+    void parse_contextPathEndingWithDot_shouldThrowException() {
+        assertThrows(InvalidExpressionException.class, () -> expressionParser.parse("'a' = user."));
+    }
+
+    @Test
+    void parse_contextPathWithEmptySegment_shouldThrowException() {
+        assertThrows(InvalidExpressionException.class, () -> expressionParser.parse("user..id = 'a'"));
+    }
+
     @Test
     void parse_illegalSymbol_stateWaitingFirstOperandOrOpeningBracketOrNegation_ShouldThrowException() {
         String expression = "?";
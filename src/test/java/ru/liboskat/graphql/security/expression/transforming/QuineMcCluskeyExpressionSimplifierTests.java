@@ -8,13 +8,14 @@ import ru.liboskat.graphql.security.storage.token.ComparisonToken.ComparisonType
 import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
 import ru.liboskat.graphql.security.storage.token.OperatorToken;
 import ru.liboskat.graphql.security.storage.TokenExpression;
+import ru.liboskat.graphql.security.storage.TruthTable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class QuineMcCluskeyExpressionSimplifierTests {
     private final ExpressionSimplifier expressionSimplifier = new QuineMcCluskeyExpressionSimplifier();
@@ -58,6 +59,70 @@ class QuineMcCluskeyExpressionSimplifierTests {
         assertIterableEquals(notSimplifiedResults, simplifiedResults);
     }
 
+    @Test
+    void simplify_withFewVariables_shouldAttachTruthTable() {
+        TokenExpression expression = new TokenExpression();
+        addSimpleEquality(expression, "a");
+        addSimpleEquality(expression, "b");
+        expression.addToken(OperatorToken.AND);
+
+        TruthTable truthTable = expressionSimplifier.simplify(expression).getTruthTable()
+                .orElseThrow(IllegalStateException::new);
+
+        assertAll(
+                () -> assertEquals(2, truthTable.getVariableCount()),
+                () -> assertEquals(0b1000, truthTable.getMask()),
+                () -> assertTrue(truthTable.usesArguments()));
+    }
+
+    @Test
+    void simplify_withRedundantVariable_shouldBuildTableOfUsedVariables() {
+        TokenExpression expression = new TokenExpression();
+        addSimpleEquality(expression, "a");
+        addSimpleEquality(expression, "a");
+        addSimpleEquality(expression, "b");
+        expression.addToken(OperatorToken.AND);
+        expression.addToken(OperatorToken.OR);
+
+        TruthTable truthTable = expressionSimplifier.simplify(expression).getTruthTable()
+                .orElseThrow(IllegalStateException::new);
+
+        assertAll(
+                () -> assertEquals(1, truthTable.getVariableCount()),
+                () -> assertEquals("a", truthTable.getVariable(0).getFirstValue()),
+                () -> assertEquals(0b10, truthTable.getMask()));
+    }
+
+    @Test
+    void simplify_withTruthTable_shouldHaveEqualFunction() {
+        TokenExpression expression = new TokenExpression();
+        addSimpleEquality(expression, "a");
+        addSimpleEquality(expression, "b");
+        expression.addToken(OperatorToken.NOT);
+        expression.addToken(OperatorToken.AND);
+        addSimpleEquality(expression, "c");
+        expression.addToken(OperatorToken.OR);
+
+        TokenExpression simplified = expressionSimplifier.simplify(expression);
+
+        assertTrue(simplified.getTruthTable().isPresent());
+        generateArgumentMaps("a", "b", "c").forEach(argumentMap ->
+                assertEquals(expressionSolver.solve(expression, null, argumentMap),
+                        expressionSolver.solve(simplified, null, argumentMap)));
+    }
+
+    @Test
+    void simplify_withManyVariables_shouldNotAttachTruthTable() {
+        TokenExpression expression = new TokenExpression();
+        addSimpleEquality(expression, "a");
+        for (String value : new String[]{"b", "c", "d", "e", "f", "g"}) {
+            addSimpleEquality(expression, value);
+            expression.addToken(OperatorToken.AND);
+        }
+
+        assertFalse(expressionSimplifier.simplify(expression).getTruthTable().isPresent());
+    }
+
     private List<Map<String, String>> generateArgumentMaps(String... values) {
         int valuesSize = values.length;
         int rows = (int) Math.pow(2, valuesSize);
@@ -12,14 +12,17 @@ import ru.liboskat.graphql.security.exceptions.InvalidAuthDirectiveException;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken.ComparisonType;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+import ru.liboskat.graphql.security.storage.token.Token;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -166,6 +169,38 @@ class AccessRuleStorageTests {
                         inputObjectFieldRule.orElseThrow(IllegalArgumentException::new).getWriteRule()));
     }
 
+    @Test
+    void find_fromTypeDefinitionRegistry_shouldReturnSameRulesAsGet() throws URISyntaxException, IOException {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(loadSchema("schema.graphqls"))
+                .build();
+
+        assertAll(
+                () -> assertSame(storage.getObjectRule("OutputObjectFieldType").orElse(null),
+                        storage.findObjectRule("OutputObjectFieldType")),
+                () -> assertSame(storage.getFieldRule("OutputObjectFieldType", "field").orElse(null),
+                        storage.findFieldRule("OutputObjectFieldType", "field")),
+                () -> assertSame(storage.getArgumentRule("Mutation", "mutation", "argument").orElse(null),
+                        storage.findArgumentRule("Mutation", "mutation", "argument")),
+                () -> assertSame(storage.getInputObjectRule("InputObjectFieldType").orElse(null),
+                        storage.findInputObjectRule("InputObjectFieldType")),
+                () -> assertSame(storage.getInputFieldRule("InputObjectFieldType", "field").orElse(null),
+                        storage.findInputFieldRule("InputObjectFieldType", "field")),
+                () -> assertNotNull(storage.findFieldRule("OutputObjectFieldType", "field")));
+    }
+
+    @Test
+    void find_withoutRules_shouldReturnNull() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage().build();
+
+        assertAll(
+                () -> assertNull(storage.findObjectRule("object")),
+                () -> assertNull(storage.findFieldRule("object", "field")),
+                () -> assertNull(storage.findArgumentRule("object", "field", "argument")),
+                () -> assertNull(storage.findInputObjectRule("input")),
+                () -> assertNull(storage.findInputFieldRule("input", "field")));
+    }
+
     @Test
     void addSchemaRule_Empty_shouldThrowException() {
         assertThrows(IllegalArgumentException.class, () ->
@@ -255,6 +290,279 @@ class AccessRuleStorageTests {
                         .build());
     }
 
+    @Test
+    void rebuild_withUnchangedRules_shouldReuseCompiledRules() throws URISyntaxException, IOException {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(loadSchema("schema.graphqls"))
+                .build();
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous)
+                .fromTypeDefinitionRegistry(loadSchema("schema.graphqls"))
+                .build();
+
+        assertAll(
+                () -> assertSame(previous.getSchemaRule().orElseThrow(IllegalArgumentException::new),
+                        rebuilt.getSchemaRule().orElseThrow(IllegalArgumentException::new)),
+                () -> assertSame(previous.getFieldRule("OutputObjectFieldType", "field")
+                                .orElseThrow(IllegalArgumentException::new),
+                        rebuilt.getFieldRule("OutputObjectFieldType", "field")
+                                .orElseThrow(IllegalArgumentException::new)),
+                () -> assertSame(previous.getInputFieldRule("InputObjectFieldType", "field")
+                                .orElseThrow(IllegalArgumentException::new),
+                        rebuilt.getInputFieldRule("InputObjectFieldType", "field")
+                                .orElseThrow(IllegalArgumentException::new)));
+    }
+
+    @Test
+    void rebuild_withChangedRule_shouldRecompileOnlyChangedRule() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("rule = 'rule'")
+                        .build(), "object", "field")
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("rule = 'rule'")
+                        .build(), "object", "otherField")
+                .build();
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous)
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("changed = 'changed'")
+                        .build(), "object", "field")
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("rule = 'rule'")
+                        .build(), "object", "otherField")
+                .build();
+
+        assertAll(
+                () -> assertEquals(getOneTokenEqualityExpression("changed"),
+                        rebuilt.getFieldRule("object", "field")
+                                .orElseThrow(IllegalArgumentException::new).getReadRule()),
+                () -> assertSame(previous.getFieldRule("object", "otherField")
+                                .orElseThrow(IllegalArgumentException::new),
+                        rebuilt.getFieldRule("object", "otherField")
+                                .orElseThrow(IllegalArgumentException::new)));
+    }
+
+    @Test
+    void rebuild_withRemovedRule_shouldNotContainRule() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("rule = 'rule'")
+                        .build(), "object")
+                .build();
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous).build();
+        assertFalse(rebuilt.getObjectRule("object").isPresent());
+    }
+
+    @Test
+    void rebuild_withNullPreviousStorage_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> AccessRuleStorage.newAccessRuleStorage(null));
+    }
+
+    @Test
+    void build_withContextRules_shouldAssignContextSlots() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("b = 'b' & $argument = a")
+                        .build(), "object")
+                .build();
+        ContextKeyLayout layout = storage.getContextKeyLayout();
+        ComparisonToken comparison = (ComparisonToken) storage.getObjectRule("object")
+                .orElseThrow(IllegalArgumentException::new)
+                .getReadRule().getTokens().stream()
+                .filter(token -> token instanceof ComparisonToken &&
+                        ((ComparisonToken) token).getSecondValueType() == ValueType.GRAPHQL_CONTEXT_FIELD_NAME)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new);
+
+        assertAll(
+                () -> assertEquals(Arrays.asList("a", "b"), layout.getKeys()),
+                () -> assertEquals(-1, layout.getSlot("argument")),
+                () -> assertEquals(-1, comparison.getFirstContextSlot()),
+                () -> assertEquals(layout.getSlot("a"), comparison.getSecondContextSlot()));
+    }
+
+    @Test
+    void rebuild_withNewContextKey_shouldKeepPreviousSlots() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("b = 'b'")
+                        .build(), "object")
+                .build();
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous)
+                .objectRule(StringExpressionRule.newRule()
+                        .r("a = 'a'")
+                        .build(), "object")
+                .build();
+
+        assertEquals(Arrays.asList("b", "a"), rebuilt.getContextKeyLayout().getKeys());
+    }
+
+    @Test
+    void build_withSameComparisonInDifferentRules_shouldAssignSameComparisonId() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("tenant = 'acme' & a = 'a'")
+                        .build(), "first")
+                .objectRule(StringExpressionRule.newRule()
+                        .r("'acme' = tenant")
+                        .build(), "second")
+                .build();
+
+        ComparisonToken first = findComparison(storage.findObjectRule("first").getReadRule(), "tenant");
+        ComparisonToken second = findComparison(storage.findObjectRule("second").getReadRule(), "tenant");
+        assertAll(
+                () -> assertEquals(2, storage.getComparisonCount()),
+                () -> assertTrue(first.getComparisonId() >= 0),
+                () -> assertEquals(first.getComparisonId(), second.getComparisonId()));
+    }
+
+    @Test
+    void rebuild_withNewComparison_shouldKeepPreviousComparisonIds() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("b = 'b'")
+                        .build(), "object")
+                .build();
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous)
+                .objectRule(StringExpressionRule.newRule()
+                        .r("b = 'b'")
+                        .build(), "object")
+                .objectRule(StringExpressionRule.newRule()
+                        .r("a = 'a'")
+                        .build(), "other")
+                .build();
+
+        assertAll(
+                () -> assertEquals(0, findComparison(rebuilt.findObjectRule("object").getReadRule(), "b")
+                        .getComparisonId()),
+                () -> assertEquals(1, findComparison(rebuilt.findObjectRule("other").getReadRule(), "a")
+                        .getComparisonId()));
+    }
+
+    @Test
+    void rebuild_withRemovedComparisons_shouldReuseComparisonIds() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("kept = 'kept' & removed0 = 'removed'")
+                        .build(), "object")
+                .build();
+        for (int i = 1; i <= 5; i++) {
+            storage = AccessRuleStorage.newAccessRuleStorage(storage)
+                    .objectRule(StringExpressionRule.newRule()
+                            .r("kept = 'kept' & removed" + i + " = 'removed'")
+                            .build(), "object")
+                    .build();
+        }
+        AccessRuleStorage rebuilt = storage;
+
+        assertAll(
+                () -> assertEquals(2, rebuilt.getComparisonCount()),
+                () -> assertEquals(0, findComparison(rebuilt.findObjectRule("object").getReadRule(), "kept")
+                        .getComparisonId()),
+                () -> assertEquals(1, findComparison(rebuilt.findObjectRule("object").getReadRule(), "removed5")
+                        .getComparisonId()),
+                () -> assertThrows(IndexOutOfBoundsException.class,
+                        () -> rebuilt.getDecisionDiagram().getComparison(2)));
+    }
+
+    @Test
+    void rebuild_withRemovedEarlierComparison_shouldKeepLaterIdsAndRules() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .r("removed = 'removed'")
+                        .build(), "object")
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("kept = 'kept'")
+                        .build(), "object", "field")
+                .build();
+        AccessRuleStorage withoutComparison = AccessRuleStorage.newAccessRuleStorage(previous)
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("kept = 'kept'")
+                        .build(), "object", "field")
+                .build();
+        AccessRuleStorage withNewComparison = AccessRuleStorage.newAccessRuleStorage(withoutComparison)
+                .objectRule(StringExpressionRule.newRule()
+                        .r("added = 'added'")
+                        .build(), "object")
+                .fieldRule(StringExpressionRule.newRule()
+                        .r("kept = 'kept'")
+                        .build(), "object", "field")
+                .build();
+
+        assertAll(
+                () -> assertSame(previous.getFieldRule("object", "field").orElseThrow(IllegalArgumentException::new),
+                        withoutComparison.getFieldRule("object", "field").orElseThrow(IllegalArgumentException::new)),
+                () -> assertEquals(2, withoutComparison.getComparisonCount()),
+                () -> assertSame(previous.getFieldRule("object", "field").orElseThrow(IllegalArgumentException::new),
+                        withNewComparison.getFieldRule("object", "field").orElseThrow(IllegalArgumentException::new)),
+                () -> assertEquals(0, findComparison(withNewComparison.findObjectRule("object").getReadRule(), "added")
+                        .getComparisonId()),
+                () -> assertEquals(2, withNewComparison.getComparisonCount()));
+    }
+
+    @Test
+    void rebuild_shouldNotModifyPreviousRules() {
+        AccessRuleStorage previous = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule()
+                        .rw("b = 'b' | c = 'c'")
+                        .build(), "object")
+                .build();
+        TokenExpression previousExpression = previous.findObjectRule("object").getReadRule();
+        List<Token> previousTokens = new ArrayList<>(previousExpression.getTokens());
+        TruthTable previousTruthTable = previousExpression.getTruthTable().orElseThrow(IllegalStateException::new);
+        AccessRuleStorage rebuilt = AccessRuleStorage.newAccessRuleStorage(previous)
+                .objectRule(StringExpressionRule.newRule()
+                        .rw("b = 'b' | c = 'c'")
+                        .build(), "object")
+                .objectRule(StringExpressionRule.newRule()
+                        .r("a = 'a' & b = 'b'")
+                        .build(), "other")
+                .build();
+
+        assertAll(
+                () -> assertNotNull(rebuilt.findObjectRule("other")),
+                () -> assertEquals(previousTokens.size(), previousExpression.getTokens().size()),
+                () -> {
+                    for (int i = 0; i < previousTokens.size(); i++) {
+                        assertSame(previousTokens.get(i), previousExpression.getTokens().get(i));
+                    }
+                },
+                () -> assertSame(previousTruthTable,
+                        previousExpression.getTruthTable().orElseThrow(IllegalStateException::new)));
+    }
+
+    @Test
+    void build_withSmallRule_shouldKeepTruthTableWithAssignedComparisons() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' | b = 'b'").build(), "object")
+                .build();
+        TokenExpression expression = storage.findObjectRule("object").getReadRule();
+        TruthTable truthTable = expression.getTruthTable().orElseThrow(IllegalStateException::new);
+        assertAll(
+                () -> assertEquals(2, truthTable.getVariableCount()),
+                () -> assertEquals(0b1110, truthTable.getMask()),
+                () -> assertSame(findComparison(expression, "a"), findVariable(truthTable, "a")),
+                () -> assertTrue(findVariable(truthTable, "b").getComparisonId() >= 0));
+    }
+
+    private ComparisonToken findVariable(TruthTable truthTable, String contextFieldName) {
+        for (int i = 0; i < truthTable.getVariableCount(); i++) {
+            if (contextFieldName.equals(truthTable.getVariable(i).getFirstValue())) {
+                return truthTable.getVariable(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private ComparisonToken findComparison(TokenExpression expression, String contextFieldName) {
+        return expression.getTokens().stream()
+                .filter(ComparisonToken.class::isInstance)
+                .map(ComparisonToken.class::cast)
+                .filter(token -> contextFieldName.equals(token.getFirstValue()) ||
+                        contextFieldName.equals(token.getSecondValue()))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     private TokenExpression getOneTokenEqualityExpression(String value) {
         TokenExpression tokenExpression = new TokenExpression();
         ComparisonToken comparisonToken = ComparisonToken.builder()
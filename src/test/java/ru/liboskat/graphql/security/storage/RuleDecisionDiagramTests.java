@@ -0,0 +1,109 @@
+package ru.liboskat.graphql.security.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleDecisionDiagramTests {
+    @Test
+    void getDecisionDiagram_withEquivalentRules_shouldHaveSameRoot() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' | b = 'b'").build(), "first")
+                .objectRule(StringExpressionRule.newRule().rw("b = 'b' | (a = 'a' & b = 'b') | a = 'a'").build(),
+                        "second")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        assertTrue(diagram.isEquivalent(storage.findObjectRule("first").getReadRule(),
+                storage.findObjectRule("second").getReadRule()));
+    }
+
+    @Test
+    void getDecisionDiagram_withDifferentRules_shouldNotBeEquivalent() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' | b = 'b'").build(), "first")
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' & b = 'b'").build(), "second")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        assertFalse(diagram.isEquivalent(storage.findObjectRule("first").getReadRule(),
+                storage.findObjectRule("second").getReadRule()));
+    }
+
+    @Test
+    void getDecisionDiagram_withSameRuleOnDifferentObjects_shouldNotAddNodes() {
+        AccessRuleStorage single = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' & (b = 'b' | c = 'c')").build(), "first")
+                .build();
+        AccessRuleStorage shared = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' & (b = 'b' | c = 'c')").build(), "first")
+                .objectRule(StringExpressionRule.newRule().rw("(c = 'c' | b = 'b') & a = 'a'").build(), "second")
+                .build();
+        assertEquals(single.getDecisionDiagram().getNodeCount(), shared.getDecisionDiagram().getNodeCount());
+    }
+
+    @Test
+    void evaluate_shouldVisitOnlyComparisonsOnPath() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' & b = 'b'").build(), "object")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        int root = diagram.getRoot(storage.findObjectRule("object").getReadRule());
+        Set<String> visited = new HashSet<>();
+        boolean result = diagram.evaluate(root, id -> {
+            ComparisonToken comparison = diagram.getComparison(id);
+            visited.add((String) comparison.getFirstValue());
+            return !"a".equals(comparison.getFirstValue());
+        });
+        assertAll(
+                () -> assertFalse(result),
+                () -> assertEquals(1, visited.size()));
+    }
+
+    @Test
+    void evaluate_withAllComparisonsTrue_shouldReturnTrue() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' & (b = 'b' | c != 'c')").build(), "object")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        int root = diagram.getRoot(storage.findObjectRule("object").getReadRule());
+        assertTrue(diagram.evaluate(root, id -> true));
+    }
+
+    @Test
+    void getRoot_withEmptyExpression_shouldReturnNoNode() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().r("a = 'a'").build(), "object")
+                .build();
+        assertEquals(RuleDecisionDiagram.NO_NODE,
+                storage.getDecisionDiagram().getRoot(storage.findObjectRule("object").getWriteRule()));
+    }
+
+    @Test
+    void getNodes_shouldDescribeWholeDiagram() {
+        AccessRuleStorage storage = AccessRuleStorage.newAccessRuleStorage()
+                .objectRule(StringExpressionRule.newRule().rw("a = 'a' | b = 'b'").build(), "object")
+                .build();
+        RuleDecisionDiagram diagram = storage.getDecisionDiagram();
+        int[] variables = diagram.getVariables();
+        int[] lows = diagram.getLows();
+        int[] highs = diagram.getHighs();
+        assertAll(
+                () -> assertEquals(diagram.getNodeCount(), variables.length),
+                () -> assertEquals(diagram.getNodeCount(), lows.length),
+                () -> assertEquals(diagram.getNodeCount(), highs.length));
+        for (int node = RuleDecisionDiagram.TRUE + 1; node < variables.length; node++) {
+            //потомки вершины имеют больший номер сравнения
+            assertTrue(variables[lows[node]] > variables[node]);
+            assertTrue(variables[highs[node]] > variables[node]);
+        }
+    }
+
+    @Test
+    void evaluate_withNotExistingNode_shouldThrowException() {
+        RuleDecisionDiagram diagram = AccessRuleStorage.newAccessRuleStorage().build().getDecisionDiagram();
+        assertThrows(IllegalArgumentException.class, () -> diagram.evaluate(100, id -> true));
+    }
+}
@@ -0,0 +1,122 @@
+package ru.liboskat.graphql.security.storage;
+
+import graphql.schema.GraphQLInputObjectType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.FieldRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.InputObjectTypeRules;
+import ru.liboskat.graphql.security.storage.SchemaBoundAccessRuleStorage.ObjectTypeRules;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaBoundAccessRuleStorageTests {
+    private static AccessRuleStorage storage;
+    private static GraphQLSchema schema;
+
+    @BeforeAll
+    static void setup() throws URISyntaxException, IOException {
+        ClassLoader classLoader = SchemaBoundAccessRuleStorageTests.class.getClassLoader();
+        URL resource = classLoader.getResource("schema.graphqls");
+        if (resource == null) {
+            throw new IllegalArgumentException("Schema can't be null");
+        }
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                Files.lines(Paths.get(resource.toURI())).collect(Collectors.joining("\n")));
+        storage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        schema = new SchemaGenerator().makeExecutableSchema(registry, RuntimeWiring.newRuntimeWiring().build());
+    }
+
+    @Test
+    void bind_shouldIndexRulesByDefinitions() {
+        SchemaBoundAccessRuleStorage bound = storage.bind(schema);
+
+        GraphQLObjectType outputObject = schema.getObjectType("OutputObjectFieldType");
+        GraphQLObjectType mutation = schema.getObjectType("Mutation");
+        GraphQLInputObjectType inputObject = (GraphQLInputObjectType) schema.getType("InputObjectFieldType");
+        ObjectTypeRules outputObjectRules = bound.getObjectTypeRules(outputObject);
+        FieldRules mutationFieldRules = bound.getObjectTypeRules(mutation)
+                .getFieldRules(mutation.getFieldDefinition("mutation"));
+        InputObjectTypeRules inputObjectRules = bound.getInputObjectTypeRules(inputObject);
+
+        assertAll(
+                () -> assertSame(schema, bound.getSchema()),
+                () -> assertSame(storage.getSchemaRule().orElse(null), bound.getSchemaRule()),
+                () -> assertSame(storage.findObjectRule("OutputObjectFieldType"), outputObjectRules.getRule()),
+                () -> assertSame(storage.findFieldRule("OutputObjectFieldType", "field"),
+                        outputObjectRules.getFieldRules(outputObject.getFieldDefinition("field")).getRule()),
+                () -> assertSame(storage.findArgumentRule("Mutation", "mutation", "argument"),
+                        mutationFieldRules.getArgumentRule(mutation.getFieldDefinition("mutation")
+                                .getArgument("argument"))),
+                () -> assertSame(storage.findInputObjectRule("InputObjectFieldType"), inputObjectRules.getRule()),
+                () -> assertSame(storage.findInputFieldRule("InputObjectFieldType", "field"),
+                        inputObjectRules.getFieldRule(inputObject.getField("field"))));
+    }
+
+    @Test
+    void bind_typeWithoutRules_shouldReturnEmptyRules() {
+        SchemaBoundAccessRuleStorage bound = storage.bind(schema);
+
+        GraphQLObjectType query = schema.getObjectType("Query");
+        ObjectTypeRules queryRules = bound.getObjectTypeRules(query);
+
+        assertAll(
+                () -> assertSame(ObjectTypeRules.EMPTY, queryRules),
+                () -> assertFalse(queryRules.hasRules()),
+                () -> assertNull(queryRules.getRule()),
+                () -> assertSame(FieldRules.EMPTY, queryRules.getFieldRules(query.getFieldDefinition("query"))));
+    }
+
+    @Test
+    void bind_inputWithProtectedNestedInput_shouldHaveRules() {
+        TypeDefinitionRegistry registry = new SchemaParser().parse(
+                "directive @auth(rw : String, r : String, w : String) on OBJECT | FIELD_DEFINITION | " +
+                        "ARGUMENT_DEFINITION | INPUT_OBJECT | INPUT_FIELD_DEFINITION\n" +
+                        "type Query { protectedQuery(argument: [Outer]): String, query(argument: Plain): String }\n" +
+                        "input Outer { inner: [Inner!], self: Outer }\n" +
+                        "input Inner { field: String @auth(rw: \"field = 'field'\") }\n" +
+                        "input Plain { field: String, self: Plain }");
+        AccessRuleStorage nestedStorage = AccessRuleStorage.newAccessRuleStorage()
+                .fromTypeDefinitionRegistry(registry)
+                .build();
+        GraphQLSchema nestedSchema = new SchemaGenerator()
+                .makeExecutableSchema(registry, RuntimeWiring.newRuntimeWiring().build());
+        SchemaBoundAccessRuleStorage bound = nestedStorage.bind(nestedSchema);
+
+        GraphQLObjectType query = nestedSchema.getObjectType("Query");
+        ObjectTypeRules queryRules = bound.getObjectTypeRules(query);
+        InputObjectTypeRules outerRules =
+                bound.getInputObjectTypeRules((GraphQLInputObjectType) nestedSchema.getType("Outer"));
+
+        assertAll(
+                () -> assertTrue(queryRules.hasRules()),
+                () -> assertNull(queryRules.getRule()),
+                () -> assertTrue(queryRules.getFieldRules(query.getFieldDefinition("protectedQuery")).hasRules()),
+                () -> assertFalse(queryRules.getFieldRules(query.getFieldDefinition("query")).hasRules()),
+                () -> assertTrue(outerRules.hasRules()),
+                () -> assertNull(outerRules.getRule()),
+                () -> assertTrue(bound.getInputObjectTypeRules(
+                        (GraphQLInputObjectType) nestedSchema.getType("Inner")).hasRules()),
+                () -> assertFalse(bound.getInputObjectTypeRules(
+                        (GraphQLInputObjectType) nestedSchema.getType("Plain")).hasRules()));
+    }
+
+    @Test
+    void bind_nullSchema_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> storage.bind(null));
+    }
+}
@@ -31,6 +31,20 @@ class StringExpressionRuleTests {
         assertEquals("r", rule.getReadRule());
     }
 
+    @Test
+    void equals_withSameRules_shouldBeEqual() {
+        StringExpressionRule first = StringExpressionRule.newRule()
+                .readRule("r")
+                .writeRule("w")
+                .build();
+        StringExpressionRule second = StringExpressionRule.newRule()
+                .readRule("r")
+                .writeRule("w")
+                .build();
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
     @Test
     void addReadWriteRule_null_shouldThrowException() {
         assertThrows(IllegalArgumentException.class, () -> StringExpressionRule.newRule().readWriteRule(null));
@@ -0,0 +1,76 @@
+package ru.liboskat.graphql.security.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ComparisonType;
+import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TruthTableTests {
+    @Test
+    void get_shouldReturnBitOfMask() {
+        TruthTable truthTable = TruthTable.of(Arrays.asList(comparison("a"), comparison("b")), 0b0110);
+        assertAll(
+                () -> assertFalse(truthTable.get(0)),
+                () -> assertTrue(truthTable.get(1)),
+                () -> assertTrue(truthTable.get(2)),
+                () -> assertFalse(truthTable.get(3)));
+    }
+
+    @Test
+    void of_withExtraBits_shouldIgnoreThem() {
+        assertEquals(0b11, TruthTable.of(Collections.singletonList(comparison("a")), -1L).getMask());
+    }
+
+    @Test
+    void of_withMaxVariableCount_shouldKeepWholeMask() {
+        List<ComparisonToken> variables = new ArrayList<>();
+        for (int i = 0; i < TruthTable.MAX_VARIABLE_COUNT; i++) {
+            variables.add(comparison("v" + i));
+        }
+        assertEquals(-1L, TruthTable.of(variables, -1L).getMask());
+    }
+
+    @Test
+    void of_withTooManyVariables_shouldThrowException() {
+        List<ComparisonToken> variables = new ArrayList<>();
+        for (int i = 0; i <= TruthTable.MAX_VARIABLE_COUNT; i++) {
+            variables.add(comparison("v" + i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> TruthTable.of(variables, 0));
+    }
+
+    @Test
+    void withVariablesOf_shouldUseComparisonsOfExpression() {
+        ComparisonToken withId = comparison("a").withComparisonId(3);
+        TokenExpression expression = new TokenExpression();
+        expression.addToken(withId);
+        TruthTable truthTable = TruthTable.of(Collections.singletonList(comparison("a")), 0b10)
+                .withVariablesOf(expression.getTokens());
+        assertAll(
+                () -> assertSame(withId, truthTable.getVariable(0)),
+                () -> assertEquals(0b10, truthTable.getMask()));
+    }
+
+    @Test
+    void withVariablesOf_withMissingComparison_shouldThrowException() {
+        TokenExpression expression = new TokenExpression();
+        expression.addToken(comparison("b"));
+        TruthTable truthTable = TruthTable.of(Collections.singletonList(comparison("a")), 0b10);
+        assertThrows(IllegalArgumentException.class, () -> truthTable.withVariablesOf(expression.getTokens()));
+    }
+
+    private ComparisonToken comparison(String value) {
+        return ComparisonToken.builder()
+                .firstValue(value, ValueType.GRAPHQL_CONTEXT_FIELD_NAME)
+                .secondValue(value, ValueType.STRING)
+                .comparisonType(ComparisonType.EQUALS)
+                .build();
+    }
+}
@@ -6,7 +6,7 @@ import ru.liboskat.graphql.security.storage.token.ComparisonToken.NullValue;
 import ru.liboskat.graphql.security.storage.token.ComparisonToken.ValueType;
 
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.LocalTime;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,14 +18,33 @@ class ComparisonTokenTests {
                 .secondValue("value", ValueType.GRAPHQL_CONTEXT_FIELD_NAME)
                 .comparisonType(ComparisonType.GT)
                 .build();
-        assertAll(() -> assertEquals(comparisonToken.getFirstValue(),
-                LocalDate.parse("2018-10-10").atStartOfDay(ZoneId.systemDefault())),
+        assertAll(() -> assertEquals(comparisonToken.getFirstValue(), LocalDate.parse("2018-10-10")),
                 () -> assertEquals(comparisonToken.getFirstValueType(), ValueType.LOCAL_DATE),
                 () -> assertEquals(comparisonToken.getSecondValue(), "value"),
                 () -> assertEquals(comparisonToken.getSecondValueType(), ValueType.GRAPHQL_CONTEXT_FIELD_NAME),
                 () -> assertEquals(comparisonToken.getComparisonType(), ComparisonType.GT));
     }
 
+    @Test
+    void build_withNowAndTime_shouldKeepTimeOfDay() {
+        ComparisonToken comparisonToken = ComparisonToken.builder()
+                .firstValue(ComparisonToken.NowValue.INSTANCE, ValueType.NOW)
+                .secondValue(LocalTime.parse("10:00"), ValueType.LOCAL_TIME)
+                .comparisonType(ComparisonType.GTE)
+                .build();
+        assertAll(() -> assertEquals(ValueType.NOW, comparisonToken.getFirstValueType()),
+                () -> assertEquals(LocalTime.parse("10:00"), comparisonToken.getSecondValue()));
+    }
+
+    @Test
+    void build_withNowAndString_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> ComparisonToken.builder()
+                .firstValue(ComparisonToken.NowValue.INSTANCE, ValueType.NOW)
+                .secondValue("value", ValueType.STRING)
+                .comparisonType(ComparisonType.EQUALS)
+                .build());
+    }
+
     @Test
     void equalsSameOrder_shouldBeEqual() {
         ComparisonToken first = ComparisonToken.builder()
@@ -313,4 +332,28 @@ class ComparisonTokenTests {
     void build_addNullSecondValueType_shouldThrowException() {
         assertThrows(IllegalArgumentException.class, () -> ComparisonToken.builder().secondValueType(null));
     }
+
+    @Test
+    void canFail_shouldDependOnOperandTypes() {
+        assertAll(
+                () -> assertFalse(comparison("a", ValueType.GRAPHQL_CONTEXT_FIELD_NAME, "a", ValueType.STRING,
+                        ComparisonType.EQUALS).canFail()),
+                () -> assertTrue(comparison("user.a", ValueType.GRAPHQL_CONTEXT_FIELD_NAME, "a", ValueType.STRING,
+                        ComparisonType.EQUALS).canFail()),
+                () -> assertTrue(comparison("a", ValueType.GRAPHQL_CONTEXT_FIELD_NAME, 1L, ValueType.INTEGER,
+                        ComparisonType.GT).canFail()),
+                () -> assertTrue(comparison("a", ValueType.GRAPHQL_CONTEXT_FIELD_NAME, LocalTime.parse("10:00"),
+                        ValueType.LOCAL_TIME, ComparisonType.EQUALS).canFail()),
+                () -> assertFalse(comparison(1L, ValueType.INTEGER, 2L, ValueType.INTEGER,
+                        ComparisonType.LT).canFail()));
+    }
+
+    private ComparisonToken comparison(Object firstValue, ValueType firstValueType,
+                                       Object secondValue, ValueType secondValueType, ComparisonType comparisonType) {
+        return ComparisonToken.builder()
+                .firstValue(firstValue, firstValueType)
+                .secondValue(secondValue, secondValueType)
+                .comparisonType(comparisonType)
+                .build();
+    }
 }
@@ -39,6 +39,13 @@ class TemporalToZonedDateTimeConverterTests {
         Assertions.assertEquals(expected, TemporalToZonedDateTimeConverter.convert(localDateTime.toLocalTime()));
     }
 
+    @Test
+    void toInstant_LocalTime_shouldUseDateAndZoneOfNow() {
+        ZonedDateTime now = ZonedDateTime.of(2000, 1, 1, 12, 0, 0, 0, ZoneOffset.ofHours(3));
+        Assertions.assertEquals(Instant.parse("2000-01-01T06:30:00Z"),
+                TemporalToZonedDateTimeConverter.toInstant(LocalTime.of(9, 30), now));
+    }
+
     @Test
     void convert_IllegalType_shouldThrowException() {
         Assertions.assertThrows(IllegalArgumentException.class,